@@ -12,8 +12,34 @@ repositories {
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+// Utf8Scanner can skip whitespace and comments with the incubating Vector API. VectorSkipper is
+// written against the JDK 17 incubator API, so it is only built with -PvectorSkipper, on a Java 17
+// toolchain and with the module added; without it Utf8Scanner stays scalar.
+if (providers.gradleProperty("vectorSkipper").isPresent) {
+    val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
+    sourceSets.main {
+        java.srcDir("src/vector/java")
+    }
+
+    java {
+        toolchain {
+            languageVersion.set(JavaLanguageVersion.of(17))
+        }
+    }
+
+    tasks.withType<JavaCompile> {
+        options.compilerArgs.addAll(vectorModule)
+    }
+
+    tasks.withType<Test> {
+        jvmArgs(vectorModule)
+    }
+}
@@ -0,0 +1,208 @@
+package pl.peth;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.parser.ParallelParser;
+import pl.peth.common.parser.Parser;
+import pl.peth.common.scanner.ParallelScanner;
+import pl.peth.common.scanner.Scanner;
+import pl.peth.common.scanner.TableDrivenScanner;
+import pl.peth.common.scanner.TokenBuffer;
+import pl.peth.common.scanner.Utf8Scanner;
+
+class BenchmarkScanner {
+    private static final int WARMUP_ROUNDS = 2_000;
+    private static final int MEASURED_ROUNDS = 10_000;
+
+    private static final int LARGE_FILE_ROUNDS = 20;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            for (String filename : args) {
+                benchmarkLargeFile(filename, Files.readString(Path.of(filename)));
+            }
+            return;
+        }
+
+        String[] testFiles = {
+                "examples/add.mp",
+                "examples/multiply.mp",
+                "examples/divide.mp",
+                "examples/complex.mp",
+                "examples/condition.mp",
+                "examples/loop.mp",
+                "examples/variable.mp"
+        };
+
+        StringBuilder combined = new StringBuilder();
+        for (String filename : testFiles) {
+            String input = Files.readString(Path.of(filename));
+            combined.append(input).append('\n');
+            benchmark(filename, input);
+        }
+        benchmark("<all examples>", combined.toString());
+    }
+
+    private static void benchmark(String name, String input) {
+        Scanner scanner = new Scanner();
+        TableDrivenScanner tableScanner = new TableDrivenScanner();
+        scanner.setInput(input);
+        tableScanner.setInput(input);
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            if (!scanner.scan() || !tableScanner.scan() || !sameTokens(scanner.getTokens(), tableScanner.getTokens())) {
+                out.println("[" + name + "]: token streams differ, skipping");
+                return;
+            }
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                scanner.scan();
+                tableScanner.scan();
+                tableScanner.scanToBuffer();
+            }
+
+            long scannerNanos = time(scanner::scan);
+            long tableNanos = time(tableScanner::scan);
+            long bufferNanos = time(tableScanner::scanToBuffer);
+
+            out.printf("[%s]: %d chars, %d tokens | Scanner: %.1f ns/char | TableDrivenScanner: %.1f ns/char | speedup: %.2fx | TokenBuffer: %.1f ns/char%n",
+                    name,
+                    input.length(),
+                    tableScanner.getTokens().size(),
+                    (double) scannerNanos / MEASURED_ROUNDS / input.length(),
+                    (double) tableNanos / MEASURED_ROUNDS / input.length(),
+                    (double) scannerNanos / tableNanos,
+                    (double) bufferNanos / MEASURED_ROUNDS / input.length());
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    /**
+     * Compares sequential, parallel and byte-level scanning into a {@code TokenBuffer}. Only meaningful for large inputs.
+     * Vectorized skipping needs a build with {@code -PvectorSkipper} and {@code --add-modules jdk.incubator.vector}.
+     */
+    private static void benchmarkLargeFile(String name, String input) {
+        TableDrivenScanner tableScanner = new TableDrivenScanner();
+        ParallelScanner parallelScanner = new ParallelScanner();
+        Utf8Scanner utf8Scanner = new Utf8Scanner();
+        Utf8Scanner vectorScanner = new Utf8Scanner(new SymbolTable(), true);
+        ByteBuffer bytes = ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8));
+        tableScanner.setInput(input);
+
+        if (tableScanner.scanToBuffer() == null || parallelScanner.scan(input) == null || utf8Scanner.scan(bytes) == null) {
+            System.out.println("[" + name + "]: scanning failed, skipping");
+            return;
+        }
+
+        for (int i = 0; i < LARGE_FILE_ROUNDS; i++) {
+            tableScanner.scanToBuffer();
+            parallelScanner.scan(input);
+            utf8Scanner.scan(bytes);
+            vectorScanner.scan(bytes);
+        }
+
+        long sequentialNanos = 0;
+        long parallelNanos = 0;
+        long utf8Nanos = 0;
+        long vectorNanos = 0;
+        for (int i = 0; i < LARGE_FILE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            tableScanner.scanToBuffer();
+            long afterSequential = System.nanoTime();
+            parallelScanner.scan(input);
+            long afterParallel = System.nanoTime();
+            utf8Scanner.scan(bytes);
+            long afterUtf8 = System.nanoTime();
+            vectorScanner.scan(bytes);
+            long end = System.nanoTime();
+            sequentialNanos += afterSequential - start;
+            parallelNanos += afterParallel - afterSequential;
+            utf8Nanos += afterUtf8 - afterParallel;
+            vectorNanos += end - afterUtf8;
+        }
+
+        System.out.printf("[%s]: %d chars | sequential: %.2f ms | parallel (%d threads): %.2f ms | speedup: %.2fx | UTF-8 bytes: %.2f ms | vectorized%s: %.2f ms%n",
+                name,
+                input.length(),
+                sequentialNanos / 1e6 / LARGE_FILE_ROUNDS,
+                ForkJoinPool.commonPool().getParallelism(),
+                parallelNanos / 1e6 / LARGE_FILE_ROUNDS,
+                (double) sequentialNanos / parallelNanos,
+                utf8Nanos / 1e6 / LARGE_FILE_ROUNDS,
+                vectorScanner.isVectorized() ? "" : " (unavailable, scalar)",
+                vectorNanos / 1e6 / LARGE_FILE_ROUNDS);
+
+        benchmarkParsing(name, tableScanner.scanToBuffer());
+    }
+
+    /**
+     * Compares the sequential parser with the one that parses top-level declarations on several cores.
+     */
+    private static void benchmarkParsing(String name, TokenBuffer buffer) {
+        Parser parser = new Parser();
+        ParallelParser parallelParser = new ParallelParser();
+
+        if (parser.parse(buffer) == null || parallelParser.parse(buffer) == null) {
+            System.out.println("[" + name + "]: parsing failed, skipping");
+            return;
+        }
+
+        for (int i = 0; i < LARGE_FILE_ROUNDS; i++) {
+            parser.parse(buffer);
+            parallelParser.parse(buffer);
+        }
+
+        long sequentialNanos = 0;
+        long parallelNanos = 0;
+        for (int i = 0; i < LARGE_FILE_ROUNDS; i++) {
+            long start = System.nanoTime();
+            parser.parse(buffer);
+            long afterSequential = System.nanoTime();
+            parallelParser.parse(buffer);
+            long end = System.nanoTime();
+            sequentialNanos += afterSequential - start;
+            parallelNanos += end - afterSequential;
+        }
+
+        System.out.printf("[%s]: %d tokens | parser: %.2f ms | parallel parser (%d threads): %.2f ms | speedup: %.2fx%n",
+                name,
+                buffer.size(),
+                sequentialNanos / 1e6 / LARGE_FILE_ROUNDS,
+                ForkJoinPool.commonPool().getParallelism(),
+                parallelNanos / 1e6 / LARGE_FILE_ROUNDS,
+                (double) sequentialNanos / parallelNanos);
+    }
+
+    private static long time(Runnable scan) {
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            scan.run();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static boolean sameTokens(List<Token> expected, List<Token> actual) {
+        if (expected.size() != actual.size()) {
+            return false;
+        }
+        for (int i = 0; i < expected.size(); i++) {
+            if (!expected.get(i).toString().equals(actual.get(i).toString())) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,137 @@
+package pl.peth;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntSupplier;
+
+import pl.peth.common.parser.Parser;
+import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.scanner.TableDrivenScanner;
+import pl.peth.common.scanner.TokenBuffer;
+import pl.peth.generator.CodeGenerator;
+import pl.peth.generator.CompiledProgram;
+import pl.peth.generator.Instruction;
+import pl.peth.generator.PeepholeOptimizer;
+import pl.peth.optimizer.ConstantFolder;
+import pl.peth.optimizer.DeadFunctionEliminator;
+import pl.peth.vm.FastStackMachine;
+import pl.peth.vm.StackMachine;
+import pl.peth.vm.TieredStackMachine;
+
+/**
+ * Measures the execution engines: {@code BenchmarkVm [-O] [files...]}. With {@code -O} the programs
+ * are optimized like {@link CompileJar} does before they run.
+ */
+class BenchmarkVm {
+    private static final long WARMUP_INSTRUCTIONS = 50_000_000L;
+    private static final long MEASURED_INSTRUCTIONS = 200_000_000L;
+
+    public static void main(String[] args) {
+        boolean optimize = args.length > 0 && args[0].equals("-O");
+        if (optimize) {
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+        String[] testFiles = args.length > 0 ? args : new String[] {
+                "examples/loop.mp",
+                "examples/complex.mp",
+                "examples/condition.mp",
+                "examples/variable.mp"
+        };
+
+        for (String filename : testFiles) {
+            benchmark(filename, optimize);
+        }
+    }
+
+    /**
+     * Runs one program on the list interpreter, on {@link StackMachine} with the packed code, on
+     * {@link FastStackMachine} and on {@link TieredStackMachine}, and prints the executed instructions
+     * per second of each. Compiled instructions are counted as the interpreter would have executed them.
+     */
+    private static void benchmark(String filename, boolean optimize) {
+        TableDrivenScanner scanner = new TableDrivenScanner();
+        TokenBuffer buffer = scanner.scanFileToBuffer(filename);
+        SyntaxTree tree = buffer == null ? null : new Parser().parse(buffer);
+        if (tree == null) {
+            System.out.println("[" + filename + "]: parsing failed, skipping");
+            return;
+        }
+        if (optimize) {
+            tree = new DeadFunctionEliminator().eliminate(tree);
+            tree = new ConstantFolder().fold(tree);
+        }
+
+        CodeGenerator generator = new CodeGenerator(buffer.getSymbolTable());
+        generator.setDebugInfo(false);
+        List<Instruction> generated = generator.generate(tree);
+        if (generated == null) {
+            System.out.println("[" + filename + "]: code generation failed, skipping");
+            return;
+        }
+        List<Instruction> instructions = optimize ? new PeepholeOptimizer().optimize(generated) : generated;
+        CompiledProgram program = CompiledProgram.compile(instructions, generator.getStringTable(),
+                generator.getGlobalVariableCounter());
+
+        StackMachine listMachine = new StackMachine();
+        listMachine.setGlobalVariableCounter(generator.getGlobalVariableCounter());
+        listMachine.setStringTable(generator.getStringTable());
+        StackMachine packedMachine = new StackMachine();
+        FastStackMachine fastMachine = new FastStackMachine();
+        TieredStackMachine tieredMachine = new TieredStackMachine();
+
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            int expected = packedMachine.execute(program);
+            long executed = packedMachine.getExecutedInstructions();
+            if (listMachine.execute(instructions) != expected || fastMachine.execute(program) != expected
+                    || tieredMachine.execute(program) != expected) {
+                out.println("[" + filename + "]: results differ, skipping");
+                return;
+            }
+
+            long warmupRounds = Math.max(1, WARMUP_INSTRUCTIONS / executed);
+            long measuredRounds = Math.max(1, MEASURED_INSTRUCTIONS / executed);
+            IntSupplier list = () -> listMachine.execute(instructions);
+            IntSupplier packed = () -> packedMachine.execute(program);
+            IntSupplier fast = () -> fastMachine.execute(program);
+            IntSupplier tiered = () -> tieredMachine.execute(program);
+            time(list, warmupRounds);
+            time(packed, warmupRounds);
+            time(fast, warmupRounds);
+            time(tiered, warmupRounds);
+
+            long listNanos = time(list, measuredRounds);
+            long packedNanos = time(packed, measuredRounds);
+            long fastNanos = time(fast, measuredRounds);
+            long tieredNanos = time(tiered, measuredRounds);
+            double total = (double) executed * measuredRounds;
+
+            out.printf("[%s]: %d instructions/run | StackMachine (list): %.0f M/s | StackMachine (packed): %.0f M/s | FastStackMachine: %.0f M/s | TieredStackMachine: %.0f M/s %s%n",
+                    filename,
+                    executed,
+                    total * 1e3 / listNanos,
+                    total * 1e3 / packedNanos,
+                    total * 1e3 / fastNanos,
+                    total * 1e3 / tieredNanos,
+                    tieredMachine.getCompiledFunctions());
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static long time(IntSupplier run, long rounds) {
+        int sink = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < rounds; i++) {
+            sink += run.getAsInt();
+        }
+        long nanos = System.nanoTime() - start;
+        if (sink == 42) {
+            System.out.print("");
+        }
+        return nanos;
+    }
+}
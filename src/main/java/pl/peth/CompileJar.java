@@ -0,0 +1,55 @@
+package pl.peth;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import pl.peth.common.parser.Parser;
+import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.scanner.TableDrivenScanner;
+import pl.peth.common.scanner.TokenBuffer;
+import pl.peth.generator.CodeGenerator;
+import pl.peth.generator.CompiledProgram;
+import pl.peth.generator.Instruction;
+import pl.peth.generator.PeepholeOptimizer;
+import pl.peth.jvm.JvmCompiler;
+import pl.peth.optimizer.ConstantFolder;
+import pl.peth.optimizer.DeadFunctionEliminator;
+
+/**
+ * Compiles a program into an executable jar: {@code CompileJar <input.mp> [output.jar] [ClassName]}.
+ * The jar is run with {@code java -jar output.jar} and needs nothing from this project.
+ */
+class CompileJar {
+    public static void main(String[] args) {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println("Usage: CompileJar <input.mp> [output.jar] [ClassName]");
+            System.exit(2);
+        }
+        String input = args[0];
+        Path output = Path.of(args.length > 1 ? args[1] : input.replaceFirst("\\.mp$", "") + ".jar");
+        String className = args.length > 2 ? args[2] : JvmCompiler.DEFAULT_CLASS_NAME;
+
+        TokenBuffer buffer = new TableDrivenScanner().scanFileToBuffer(input);
+        SyntaxTree tree = buffer == null ? null : new Parser().parse(buffer);
+        if (tree == null) {
+            System.exit(1);
+        }
+        tree = new DeadFunctionEliminator().eliminate(tree);
+        tree = new ConstantFolder().fold(tree);
+
+        CodeGenerator generator = new CodeGenerator(buffer.getSymbolTable());
+        generator.setDebugInfo(false);
+        List<Instruction> instructions = generator.generate(tree);
+        if (instructions == null) {
+            System.exit(1);
+        }
+        instructions = new PeepholeOptimizer().optimize(instructions);
+        CompiledProgram program = CompiledProgram.compile(instructions, generator.getStringTable(),
+                generator.getGlobalVariableCounter());
+
+        if (!new JvmCompiler(className).writeJar(program, output)) {
+            System.exit(1);
+        }
+        System.out.println("Wrote " + output);
+    }
+}
@@ -0,0 +1,128 @@
+package pl.peth.common;
+
+import java.util.Arrays;
+
+/**
+ * Interns identifiers into dense int ids. One table is shared by the scanner, the parser and the
+ * code generator of a compilation, so later phases can resolve names through id-indexed arrays
+ * instead of hashing strings again. Lookups work on char ranges, so no {@code String} has to be
+ * built for an identifier that is already known.
+ */
+public class SymbolTable {
+    public static final int NO_SYMBOL = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] names;
+    private int[] hashes;
+    private int[] slots;
+    private int size;
+
+    public SymbolTable() {
+        this.names = new String[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.slots = new int[INITIAL_CAPACITY * 2];
+        this.size = 0;
+    }
+
+    public int intern(CharSequence name) {
+        return intern(name, 0, name.length());
+    }
+
+    /**
+     * Returns the id of {@code text[start, end)}, assigning the next free id if the name is new.
+     */
+    public int intern(CharSequence text, int start, int end) {
+        int hash = hash(text, start, end);
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                int id = add(text.subSequence(start, end).toString(), hash);
+                slots[slot] = id + 1;
+                if (size * 2 > slots.length) {
+                    rehash();
+                }
+                return id;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(names[id], text, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Returns the id of {@code name} or {@link #NO_SYMBOL} if it was never interned.
+     */
+    public int find(CharSequence name) {
+        int hash = hash(name, 0, name.length());
+        int mask = slots.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            int entry = slots[slot];
+            if (entry == 0) {
+                return NO_SYMBOL;
+            }
+            int id = entry - 1;
+            if (hashes[id] == hash && matches(names[id], name, 0, name.length())) {
+                return id;
+            }
+        }
+    }
+
+    public String getName(int id) {
+        if (id < 0 || id >= size) {
+            return null;
+        }
+        return names[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private int add(String name, int hash) {
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        names[size] = name;
+        hashes[size] = hash;
+        return size++;
+    }
+
+    private void rehash() {
+        int[] rehashed = new int[slots.length * 2];
+        int mask = rehashed.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = hashes[id] & mask;
+            while (rehashed[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            rehashed[slot] = id + 1;
+        }
+        slots = rehashed;
+    }
+
+    private static int hash(CharSequence text, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + text.charAt(i);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String name, CharSequence text, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != text.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -8,12 +8,18 @@ public class Token implements ITokenWrapper {
     String lexeme;
     int line;
     int position;
+    int symbol;
 
     public Token(byte type, String lexeme, int line, int position) {
+        this(type, lexeme, line, position, SymbolTable.NO_SYMBOL);
+    }
+
+    public Token(byte type, String lexeme, int line, int position, int symbol) {
         this.type = type;
         this.lexeme = lexeme;
         this.line = line;
         this.position = position;
+        this.symbol = symbol;
     }
 
     public Token(byte type, String lexeme) {
@@ -130,4 +136,11 @@ public String toString() {
     public int getPosition() {
         return position;
     }
+
+    /**
+     * Id of an identifier in the {@link SymbolTable} of its scanner, {@link SymbolTable#NO_SYMBOL} otherwise.
+     */
+    public int getSymbol() {
+        return symbol;
+    }
 }
\ No newline at end of file
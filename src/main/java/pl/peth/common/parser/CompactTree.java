@@ -0,0 +1,379 @@
+package pl.peth.common.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Syntax tree stored in parallel primitive arrays instead of one object per node. A node is an
+ * index; children are linked through {@code firstChild}/{@code nextSibling}, and the attributes a
+ * {@link SyntaxTree} keeps in a string map are typed columns: names are symbol ids, operators and
+ * declared types are token types, numbers are ints and string literals are indices into a pool.
+ * A node costs about 18 bytes, so large programs fit in a fraction of the heap of the object tree.
+ * <p>
+ * This is a storage format. {@link Parser#parseCompact} still parses each top-level declaration into
+ * a {@link SyntaxTree} and compacts it, and {@link pl.peth.generator.CodeGenerator} inflates one
+ * declaration at a time with {@link #toSyntaxTree(int)}, so only one declaration exists as objects at
+ * a time. Compacting and inflating walk the tree with an explicit stack, so nesting depth is limited
+ * only by the heap, as for {@link SyntaxTree}.
+ */
+public class CompactTree implements ITokenWrapper {
+    public static final int NO_NODE = -1;
+
+    private static final int ROOT = 0;
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final SymbolTable symbols;
+    private final List<String> strings;
+    private byte[] kinds;
+    private int[] firstChildren;
+    private int[] nextSiblings;
+    private int[] symbolIds;
+    private byte[] operators;
+    private byte[] declaredTypes;
+    private int[] values;
+    private int size;
+    private int lastTopLevel;
+
+    public CompactTree(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.strings = new ArrayList<>();
+        this.kinds = new byte[DEFAULT_CAPACITY];
+        this.firstChildren = new int[DEFAULT_CAPACITY];
+        this.nextSiblings = new int[DEFAULT_CAPACITY];
+        this.symbolIds = new int[DEFAULT_CAPACITY];
+        this.operators = new byte[DEFAULT_CAPACITY];
+        this.declaredTypes = new byte[DEFAULT_CAPACITY];
+        this.values = new int[DEFAULT_CAPACITY];
+        this.size = 0;
+        this.lastTopLevel = NO_NODE;
+        newNode(PROGRAM);
+    }
+
+    /**
+     * Appends a compacted copy of {@code node} as the last child of the root. Returns the new node,
+     * or {@link #NO_NODE} if the subtree holds a numeric literal that does not fit an int.
+     */
+    public int appendTopLevel(SyntaxTree node) {
+        int compacted = append(node);
+        if (compacted == NO_NODE) {
+            return NO_NODE;
+        }
+        if (lastTopLevel == NO_NODE) {
+            firstChildren[ROOT] = compacted;
+        } else {
+            nextSiblings[lastTopLevel] = compacted;
+        }
+        lastTopLevel = compacted;
+        return compacted;
+    }
+
+    /**
+     * Copies {@code root} and its subtree in pre-order, so every node gets a higher index than its parent.
+     */
+    private int append(SyntaxTree root) {
+        int rootIndex = copy(root);
+        if (rootIndex == NO_NODE) {
+            return NO_NODE;
+        }
+
+        Deque<AppendFrame> pending = new ArrayDeque<>();
+        pending.push(new AppendFrame(root, rootIndex));
+        while (!pending.isEmpty()) {
+            AppendFrame frame = pending.peek();
+            if (frame.nextChild == frame.node.getChildCount()) {
+                pending.pop();
+                continue;
+            }
+
+            SyntaxTree child = frame.node.getChild(frame.nextChild++);
+            int index = copy(child);
+            if (index == NO_NODE) {
+                return NO_NODE;
+            }
+            if (frame.lastChild == NO_NODE) {
+                firstChildren[frame.index] = index;
+            } else {
+                nextSiblings[frame.lastChild] = index;
+            }
+            frame.lastChild = index;
+            pending.push(new AppendFrame(child, index));
+        }
+        return rootIndex;
+    }
+
+    /**
+     * Adds one node with the columns of {@code node} but without children. Returns {@link #NO_NODE}
+     * for a numeric literal that does not fit an int.
+     */
+    private int copy(SyntaxTree node) {
+        byte kind = node.getType();
+        int index = newNode(kind);
+
+        switch (kind) {
+            case FUNCTION, FUNCTION_CALL, VARIABLE_DECLARATION, PARAMETER, ASSIGNMENT ->
+                    symbolIds[index] = symbolOf(node, node.getAttribute("name"));
+            case IDENTIFIER -> symbolIds[index] = symbolOf(node, node.getValue());
+            case CONDITION, EXPRESSION, TERM -> operators[index] = operatorType(node.getAttribute("operator"));
+            case NUMERIC -> {
+                try {
+                    values[index] = Integer.parseInt(node.getValue());
+                } catch (NumberFormatException ex) {
+                    return NO_NODE;
+                }
+            }
+            case STRING -> {
+                values[index] = strings.size();
+                strings.add(node.getValue());
+            }
+            default -> {
+            }
+        }
+        if (kind == FUNCTION) {
+            declaredTypes[index] = declaredType(node.getAttribute("returnType"));
+        } else if (kind == VARIABLE_DECLARATION || kind == PARAMETER) {
+            declaredTypes[index] = declaredType(node.getAttribute("type"));
+        }
+        return index;
+    }
+
+    private int newNode(byte kind) {
+        if (size == kinds.length) {
+            grow();
+        }
+        kinds[size] = kind;
+        firstChildren[size] = NO_NODE;
+        nextSiblings[size] = NO_NODE;
+        symbolIds[size] = SymbolTable.NO_SYMBOL;
+        operators[size] = NO_TYPE;
+        declaredTypes[size] = NO_TYPE;
+        values[size] = 0;
+        return size++;
+    }
+
+    private void grow() {
+        int capacity = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, capacity);
+        firstChildren = Arrays.copyOf(firstChildren, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        symbolIds = Arrays.copyOf(symbolIds, capacity);
+        operators = Arrays.copyOf(operators, capacity);
+        declaredTypes = Arrays.copyOf(declaredTypes, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    private int symbolOf(SyntaxTree node, String name) {
+        int symbol = node.getSymbol();
+        if (symbol == SymbolTable.NO_SYMBOL && name != null) {
+            symbol = symbols.intern(name);
+        }
+        return symbol;
+    }
+
+    // === Getters ===
+
+    public int getRoot() {
+        return ROOT;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public byte getKind(int node) {
+        return kinds[node];
+    }
+
+    public int getFirstChild(int node) {
+        return firstChildren[node];
+    }
+
+    public int getNextSibling(int node) {
+        return nextSiblings[node];
+    }
+
+    public int getChildCount(int node) {
+        int count = 0;
+        for (int child = firstChildren[node]; child != NO_NODE; child = nextSiblings[child]) {
+            count++;
+        }
+        return count;
+    }
+
+    public int getSymbol(int node) {
+        return symbolIds[node];
+    }
+
+    public String getName(int node) {
+        return symbols.getName(symbolIds[node]);
+    }
+
+    /**
+     * Operator token of a {@code CONDITION}, {@code EXPRESSION} or {@code TERM} node.
+     */
+    public byte getOperator(int node) {
+        return operators[node];
+    }
+
+    /**
+     * Type token of a declaration, or the return type of a function.
+     */
+    public byte getDeclaredType(int node) {
+        return declaredTypes[node];
+    }
+
+    public int getNumericValue(int node) {
+        return values[node];
+    }
+
+    public String getStringValue(int node) {
+        return strings.get(values[node]);
+    }
+
+    /**
+     * Builds the {@link SyntaxTree} the parser would have produced for the subtree at {@code node}.
+     */
+    public SyntaxTree toSyntaxTree(int node) {
+        SyntaxTree root = inflate(node);
+        Deque<InflateFrame> pending = new ArrayDeque<>();
+        pending.push(new InflateFrame(node, root));
+        while (!pending.isEmpty()) {
+            InflateFrame frame = pending.pop();
+            for (int child = firstChildren[frame.node]; child != NO_NODE; child = nextSiblings[child]) {
+                SyntaxTree tree = inflate(child);
+                frame.tree.addChild(tree);
+                pending.push(new InflateFrame(child, tree));
+            }
+        }
+        return root;
+    }
+
+    /**
+     * A {@link SyntaxTree} node with the type, value and attributes of {@code node}, without children.
+     */
+    private SyntaxTree inflate(int node) {
+        byte kind = kinds[node];
+        SyntaxTree tree = switch (kind) {
+            case NUMERIC -> new SyntaxTree(NUMERIC, Integer.toString(values[node]));
+            case STRING -> new SyntaxTree(STRING, strings.get(values[node]));
+            case IDENTIFIER -> new SyntaxTree(IDENTIFIER, getName(node)).withSymbol(symbolIds[node]);
+            default -> new SyntaxTree(kind);
+        };
+
+        switch (kind) {
+            case FUNCTION -> tree.withSymbol(symbolIds[node])
+                    .withAttribute("name", getName(node))
+                    .withAttribute("returnType", typeName(declaredTypes[node]));
+            case VARIABLE_DECLARATION, PARAMETER -> tree.withSymbol(symbolIds[node])
+                    .withAttribute("name", getName(node))
+                    .withAttribute("type", typeName(declaredTypes[node]));
+            case FUNCTION_CALL, ASSIGNMENT -> tree.withSymbol(symbolIds[node])
+                    .withAttribute("name", getName(node));
+            case CONDITION, EXPRESSION, TERM -> tree.withAttribute("operator", operatorName(operators[node]));
+            default -> {
+            }
+        }
+        return tree;
+    }
+
+    public void print() {
+        for (int child = firstChildren[ROOT]; child != NO_NODE; child = nextSiblings[child]) {
+            toSyntaxTree(child).print();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CompactTree(nodes=%d, strings=%d)", size, strings.size());
+    }
+
+    private static byte operatorType(String operator) {
+        if (operator == null) {
+            return NO_TYPE;
+        }
+        return switch (operator) {
+            case "+" -> PLUS;
+            case "-" -> MINUS;
+            case "*" -> MULTIPLY;
+            case "/" -> DIVIDE;
+            case "==" -> EQUAL;
+            case "!=" -> NOT_EQUAL;
+            case ">" -> GREATER_THAN;
+            case "<" -> LESS_THAN;
+            case ">=" -> GREATER_EQUAL;
+            case "<=" -> LESS_EQUAL;
+            default -> NO_TYPE;
+        };
+    }
+
+    private static String operatorName(byte operator) {
+        return switch (operator) {
+            case PLUS -> "+";
+            case MINUS -> "-";
+            case MULTIPLY -> "*";
+            case DIVIDE -> "/";
+            case EQUAL -> "==";
+            case NOT_EQUAL -> "!=";
+            case GREATER_THAN -> ">";
+            case LESS_THAN -> "<";
+            case GREATER_EQUAL -> ">=";
+            case LESS_EQUAL -> "<=";
+            default -> null;
+        };
+    }
+
+    private static byte declaredType(String type) {
+        if (type == null) {
+            return NO_TYPE;
+        }
+        return switch (type) {
+            case "int" -> TYPE_INT;
+            case "void" -> TYPE_VOID;
+            case "bool" -> TYPE_BOOL;
+            case "string" -> TYPE_STRING;
+            default -> NO_TYPE;
+        };
+    }
+
+    private static String typeName(byte type) {
+        return switch (type) {
+            case TYPE_INT -> "int";
+            case TYPE_VOID -> "void";
+            case TYPE_BOOL -> "bool";
+            case TYPE_STRING -> "string";
+            default -> null;
+        };
+    }
+
+    private static class AppendFrame {
+        private final SyntaxTree node;
+        private final int index;
+        private int nextChild;
+        private int lastChild;
+
+        private AppendFrame(SyntaxTree node, int index) {
+            this.node = node;
+            this.index = index;
+            this.lastChild = NO_NODE;
+        }
+    }
+
+    private static class InflateFrame {
+        private final int node;
+        private final SyntaxTree tree;
+
+        private InflateFrame(int node, SyntaxTree tree) {
+            this.node = node;
+            this.tree = tree;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package pl.peth.common.parser;
+
+import java.util.Arrays;
+
+import pl.peth.common.scanner.TokenBuffer;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Finds the top-level declarations in a token buffer without parsing it. {@code fn} and {@code var}
+ * only start statements, and a statement outside of all braces is a top-level statement, so every
+ * such keyword at brace depth 0 starts a declaration that can be parsed on its own.
+ */
+final class DeclarationSplitter implements ITokenWrapper {
+    private DeclarationSplitter() {
+    }
+
+    /**
+     * Returns the indices of all top-level {@code fn} and {@code var} tokens in ascending order, or
+     * {@code null} if the braces do not balance, in which case the input has to be parsed as a whole.
+     */
+    static int[] declarationStarts(TokenBuffer buffer) {
+        int[] starts = new int[64];
+        int count = 0;
+        int depth = 0;
+
+        for (int i = 0; i < buffer.size(); i++) {
+            byte type = buffer.getType(i);
+            if (type == OPEN_BRACE) {
+                depth++;
+            } else if (type == CLOSE_BRACE) {
+                if (--depth < 0) {
+                    return null;
+                }
+            } else if (depth == 0 && (type == FN || type == VAR)) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, count * 2);
+                }
+                starts[count++] = i;
+            }
+        }
+        return depth == 0 ? Arrays.copyOf(starts, count) : null;
+    }
+
+    /**
+     * Index of the EOF token that ends the buffer, or its size if there is none.
+     */
+    static int endOf(TokenBuffer buffer) {
+        int last = buffer.size() - 1;
+        return last >= 0 && buffer.getType(last) == EOF_TOKEN ? last : buffer.size();
+    }
+}
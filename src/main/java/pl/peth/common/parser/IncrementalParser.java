@@ -0,0 +1,169 @@
+package pl.peth.common.parser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.scanner.TokenBuffer;
+import pl.peth.common.scanner.TokenBufferSource;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Reparses a program after an edit, parsing only the top-level declarations whose tokens changed.
+ * Every declaration of the previous parse is kept under a hash of its token span: types, symbol ids
+ * of identifiers and the text of all other tokens, but not lines or offsets, so a declaration that
+ * only moved is still found. Declarations found with equal tokens are taken over by reference.
+ * <p>
+ * Symbol ids are only comparable within one {@link SymbolTable}, so all buffers have to be scanned
+ * with the same table; a buffer with another table starts over with an empty cache. The returned
+ * trees share subtrees with earlier results and must not be modified.
+ */
+public class IncrementalParser implements ITokenWrapper {
+    private Map<Long, Declaration> declarations;
+    private SymbolTable symbols;
+    private int reusedCount;
+    private int parsedCount;
+
+    public IncrementalParser() {
+        this.declarations = new HashMap<>();
+    }
+
+    /**
+     * Returns the same tree as {@link Parser#parse(TokenBuffer)}, or {@code null} if parsing failed.
+     * After a failure the declarations of the last successful parse stay available for reuse.
+     */
+    public SyntaxTree parse(TokenBuffer buffer) {
+        reusedCount = 0;
+        parsedCount = 0;
+        if (buffer == null) {
+            return new Parser().parse(buffer);
+        }
+        if (buffer.getSymbolTable() != symbols) {
+            declarations = new HashMap<>();
+            symbols = buffer.getSymbolTable();
+        }
+
+        int[] starts = DeclarationSplitter.declarationStarts(buffer);
+        int end = DeclarationSplitter.endOf(buffer);
+        if (starts == null || starts.length == 0 || starts[0] != 0) {
+            return new Parser().parse(buffer);
+        }
+
+        Map<Long, Declaration> current = new HashMap<>();
+        SyntaxTree program = new SyntaxTree(PROGRAM);
+        for (int i = 0; i < starts.length; i++) {
+            int from = starts[i];
+            int to = i + 1 < starts.length ? starts[i + 1] : end;
+            long hash = hash(buffer, from, to);
+
+            Declaration declaration = declarations.get(hash);
+            if (declaration != null && !current.containsKey(hash) && declaration.matches(buffer, from, to)) {
+                reusedCount++;
+            } else {
+                Parser parser = new Parser();
+                parser.setReportErrors(false);
+                SyntaxTree part = parser.parse(new TokenBufferSource(buffer, from, to));
+                if (part == null) {
+                    return new Parser().parse(buffer);
+                }
+                declaration = new Declaration(part.getChildren());
+                parsedCount++;
+            }
+
+            declaration.moveTo(buffer, from, to);
+            current.put(hash, declaration);
+            for (SyntaxTree tree : declaration.trees) {
+                program.addChild(tree);
+            }
+        }
+
+        declarations = current;
+        return program;
+    }
+
+    /**
+     * Number of declarations taken over from the previous parse by the last call to {@link #parse}.
+     */
+    public int getReusedCount() {
+        return reusedCount;
+    }
+
+    /**
+     * Number of declarations parsed by the last call to {@link #parse}.
+     */
+    public int getParsedCount() {
+        return parsedCount;
+    }
+
+    public void reset() {
+        declarations = new HashMap<>();
+        symbols = null;
+    }
+
+    private static long hash(TokenBuffer buffer, int from, int to) {
+        CharSequence source = buffer.getSource();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = from; i < to; i++) {
+            hash = (hash ^ buffer.getType(i)) * 0x100000001b3L;
+            int symbol = buffer.getSymbol(i);
+            if (symbol != SymbolTable.NO_SYMBOL) {
+                hash = (hash ^ symbol) * 0x100000001b3L;
+                continue;
+            }
+            for (int c = buffer.getStart(i); c < buffer.getEnd(i); c++) {
+                hash = (hash ^ source.charAt(c)) * 0x100000001b3L;
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Parsed trees of one token span, together with the buffer range they were last found in.
+     */
+    private static class Declaration {
+        private final List<SyntaxTree> trees;
+        private TokenBuffer buffer;
+        private int from;
+        private int to;
+
+        private Declaration(List<SyntaxTree> trees) {
+            this.trees = new ArrayList<>(trees);
+        }
+
+        private void moveTo(TokenBuffer buffer, int from, int to) {
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+        }
+
+        private boolean matches(TokenBuffer other, int otherFrom, int otherTo) {
+            if (to - from != otherTo - otherFrom) {
+                return false;
+            }
+            CharSequence source = buffer.getSource();
+            CharSequence otherSource = other.getSource();
+            for (int i = from, j = otherFrom; i < to; i++, j++) {
+                if (buffer.getType(i) != other.getType(j) || buffer.getSymbol(i) != other.getSymbol(j)) {
+                    return false;
+                }
+                if (buffer.getSymbol(i) != SymbolTable.NO_SYMBOL) {
+                    continue;
+                }
+                int start = buffer.getStart(i);
+                int length = buffer.getEnd(i) - start;
+                int otherStart = other.getStart(j);
+                if (other.getEnd(j) - otherStart != length) {
+                    return false;
+                }
+                for (int c = 0; c < length; c++) {
+                    if (source.charAt(start + c) != otherSource.charAt(otherStart + c)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package pl.peth.common.parser;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pl.peth.common.scanner.TokenBuffer;
+import pl.peth.common.scanner.TokenBufferSource;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Parses the top-level declarations of a program on several cores. The token buffer is cut at
+ * top-level {@code fn}/{@code var} tokens into ranges of roughly equal size, each range is parsed
+ * by its own {@link Parser} on a {@link ForkJoinPool}, and the resulting declarations are attached
+ * to one {@code PROGRAM} node in source order. The result equals {@link Parser#parse(TokenBuffer)}.
+ * <p>
+ * The parsers only read the buffer and its symbol table. If any range fails to parse, the whole
+ * buffer is parsed again sequentially, which reports the first error as the sequential parser does.
+ */
+public class ParallelParser implements ITokenWrapper {
+    public static final int DEFAULT_MINIMUM_RANGE = 8 * 1024;
+
+    private final ForkJoinPool pool;
+    private final int minimumRange;
+
+    public ParallelParser() {
+        this(ForkJoinPool.commonPool(), DEFAULT_MINIMUM_RANGE);
+    }
+
+    /**
+     * @param minimumRange minimal number of tokens parsed by one task
+     */
+    public ParallelParser(ForkJoinPool pool, int minimumRange) {
+        if (minimumRange <= 0) {
+            throw new IllegalArgumentException("Invalid range size: " + minimumRange);
+        }
+        this.pool = pool;
+        this.minimumRange = minimumRange;
+    }
+
+    public SyntaxTree parse(TokenBuffer buffer) {
+        int[] bounds = buffer == null || pool.getParallelism() < 2 ? null : split(buffer);
+        if (bounds == null || bounds.length < 3) {
+            return parseSequentially(buffer);
+        }
+
+        int rangeCount = bounds.length - 1;
+        SyntaxTree[] parts = new SyntaxTree[rangeCount];
+        pool.invoke(new ParseRanges(buffer, bounds, parts, 0, rangeCount));
+
+        SyntaxTree program = new SyntaxTree(PROGRAM);
+        for (SyntaxTree part : parts) {
+            if (part == null) {
+                return parseSequentially(buffer);
+            }
+            for (SyntaxTree declaration : part.getChildren()) {
+                program.addChild(declaration);
+            }
+        }
+        return program;
+    }
+
+    private SyntaxTree parseSequentially(TokenBuffer buffer) {
+        return new Parser().parse(buffer);
+    }
+
+    /**
+     * Returns range bounds {@code 0 = b[0] < ... < b[n] = end}, every inner bound at a top-level
+     * declaration, or {@code null} if the buffer cannot be split.
+     */
+    int[] split(TokenBuffer buffer) {
+        int[] starts = DeclarationSplitter.declarationStarts(buffer);
+        if (starts == null) {
+            return null;
+        }
+
+        int end = DeclarationSplitter.endOf(buffer);
+        int target = Math.max(minimumRange, end / (pool.getParallelism() * 4));
+        int[] bounds = new int[starts.length + 2];
+        int count = 1;
+
+        for (int start : starts) {
+            if (start - bounds[count - 1] >= target && end - start >= target / 2) {
+                bounds[count++] = start;
+            }
+        }
+        bounds[count++] = end;
+
+        int[] result = new int[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+        return result;
+    }
+
+    private static class ParseRanges extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TokenBuffer buffer;
+        private final int[] bounds;
+        private final SyntaxTree[] parts;
+        private final int from;
+        private final int to;
+
+        private ParseRanges(TokenBuffer buffer, int[] bounds, SyntaxTree[] parts, int from, int to) {
+            this.buffer = buffer;
+            this.bounds = bounds;
+            this.parts = parts;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseRanges(buffer, bounds, parts, from, middle),
+                        new ParseRanges(buffer, bounds, parts, middle, to));
+                return;
+            }
+
+            Parser parser = new Parser();
+            parser.setReportErrors(false);
+            parts[from] = parser.parse(new TokenBufferSource(buffer, bounds[from], bounds[from + 1]));
+        }
+    }
+}
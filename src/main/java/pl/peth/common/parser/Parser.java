@@ -2,40 +2,149 @@ package pl.peth.common.parser;
 
 import java.util.List;
 
+import pl.peth.common.SymbolTable;
 import pl.peth.common.Token;
 import pl.peth.common.scanner.Scanner;
+import pl.peth.common.scanner.TokenBuffer;
+import pl.peth.common.scanner.TokenBufferSource;
+import pl.peth.common.scanner.TokenListSource;
+import pl.peth.common.scanner.TokenSource;
 import pl.peth.common.tokens.ITokenWrapper;
 
 
 public class Parser implements ITokenWrapper {
-    private List<Token> tokens;
-    private int position;
-    private Token currentToken;
+    private TokenSource source;
+    private SymbolTable symbols;
+    private byte currentType;
+    private boolean reportErrors;
 
     public Parser() {
-        this.tokens = null;
-        this.position = 0;
-        this.currentToken = null;
+        this.source = null;
+        this.symbols = null;
+        this.currentType = NO_TYPE;
+        this.reportErrors = true;
+    }
+
+    /**
+     * Suppresses error messages, for callers that reparse failed input to report its errors.
+     */
+    void setReportErrors(boolean reportErrors) {
+        this.reportErrors = reportErrors;
     }
 
     public SyntaxTree parse(Scanner scanner) {
-        this.tokens = scanner.getTokens();
-        this.position = 0;
+        return parse(scanner.getTokens(), scanner.getSymbolTable());
+    }
 
-        if (this.tokens == null || this.tokens.isEmpty()) {
-            error("No tokens to parse.");
+    /**
+     * Parses tokens of unknown origin; identifiers are interned into a fresh {@link SymbolTable}.
+     */
+    public SyntaxTree parse(List<Token> tokens) {
+        if (!hasTokens(tokens == null ? 0 : tokens.size())) {
+            return null;
+        }
+        return parse(new TokenListSource(tokens, new SymbolTable(), false));
+    }
+
+    /**
+     * Parses tokens whose identifier ids were assigned by {@code symbols}.
+     */
+    public SyntaxTree parse(List<Token> tokens, SymbolTable symbols) {
+        if (!hasTokens(tokens == null ? 0 : tokens.size())) {
+            return null;
+        }
+        return parse(new TokenListSource(tokens, symbols, true));
+    }
+
+    /**
+     * Parses straight from a {@link TokenBuffer}; lexemes are only materialized for the
+     * tokens whose text ends up in the tree.
+     */
+    public SyntaxTree parse(TokenBuffer buffer) {
+        if (!hasTokens(buffer == null ? 0 : buffer.size())) {
+            return null;
+        }
+        return parse(new TokenBufferSource(buffer));
+    }
+
+    /**
+     * Parses tokens pulled from {@code source} one at a time, so a lazy source can lex while the parser runs.
+     */
+    public SyntaxTree parse(TokenSource source) {
+        begin(source);
+        SyntaxTree program = parseTokens();
+        return source.hasFailed() ? null : program;
+    }
+
+    /**
+     * Parses into a {@link CompactTree}. Every top-level declaration is compacted as soon as it has
+     * been parsed, so the object tree never exists for more than one declaration at a time.
+     */
+    public CompactTree parseCompact(TokenBuffer buffer) {
+        if (!hasTokens(buffer == null ? 0 : buffer.size())) {
             return null;
         }
+        return parseCompact(new TokenBufferSource(buffer));
+    }
+
+    public CompactTree parseCompact(List<Token> tokens, SymbolTable symbols) {
+        if (!hasTokens(tokens == null ? 0 : tokens.size())) {
+            return null;
+        }
+        return parseCompact(new TokenListSource(tokens, symbols, true));
+    }
+
+    public CompactTree parseCompact(TokenSource source) {
+        begin(source);
+        CompactTree tree = parseTokensCompact();
+        return source.hasFailed() ? null : tree;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    private boolean hasTokens(int tokenCount) {
+        if (tokenCount == 0) {
+            this.source = null;
+            error("No tokens to parse.");
+            return false;
+        }
+        return true;
+    }
+
+    private void begin(TokenSource source) {
+        this.source = source;
+        this.symbols = source.getSymbolTable();
+        this.currentType = source.getType();
+    }
+
+    private CompactTree parseTokensCompact() {
+        CompactTree tree = new CompactTree(symbols);
+        while (!check(EOF_TOKEN)) {
+            SyntaxTree statement = new SyntaxTree(PROGRAM);
+            if (!parseStatement(statement)) {
+                return null;
+            }
+            for (SyntaxTree declaration : statement.getChildren()) {
+                if (tree.appendTopLevel(declaration) == CompactTree.NO_NODE) {
+                    error("Numeric literal out of range");
+                    return null;
+                }
+            }
+        }
+        return tree;
+    }
 
-        this.currentToken = this.tokens.get(0);
+    private SyntaxTree parseTokens() {
         SyntaxTree program = new SyntaxTree(PROGRAM);
 
         if (!parseProgram(program)) {
             return null;
         }
 
-        if (currentToken.getType() != EOF_TOKEN) {
-            error("Unexpected token after program end: " + currentToken);
+        if (currentType != EOF_TOKEN) {
+            error("Unexpected token after program end: " + currentToken());
             return null;
         }
 
@@ -74,7 +183,7 @@ public class Parser implements ITokenWrapper {
             return parseReturnStatement(parent);
         }
 
-        if (check(IDENTIFIER) && lookAhead(1) == ASSIGN) {
+        if (check(IDENTIFIER) && lookAhead() == ASSIGN) {
             return parseAssignment(parent);
         }
 
@@ -107,7 +216,8 @@ public class Parser implements ITokenWrapper {
             return false;
         }
 
-        String variableName = currentToken.getLexeme();
+        int variableSymbol = currentSymbol();
+        String variableName = currentLexeme();
         advance();
 
         if (!expect(COLON)) return false;
@@ -117,10 +227,11 @@ public class Parser implements ITokenWrapper {
             return false;
         }
 
-        String variableType = currentToken.getLexeme();
+        String variableType = currentLexeme();
         advance();
 
         SyntaxTree node = parent.addChild(VARIABLE_DECLARATION)
+            .withSymbol(variableSymbol)
             .withAttribute("name", variableName)
             .withAttribute("type", variableType);
 
@@ -140,12 +251,15 @@ public class Parser implements ITokenWrapper {
             return false;
         }
 
-        String variableName = currentToken.getLexeme();
+        int variableSymbol = currentSymbol();
+        String variableName = currentLexeme();
         advance();
 
         if (!expect(ASSIGN)) return false;
 
-        SyntaxTree assignNode = parent.addChild(ASSIGNMENT).withAttribute("name", variableName);
+        SyntaxTree assignNode = parent.addChild(ASSIGNMENT)
+            .withSymbol(variableSymbol)
+            .withAttribute("name", variableName);
         SyntaxTree expressionNode = parseExpression();
 
         if(expressionNode == null) return false;
@@ -161,10 +275,12 @@ public class Parser implements ITokenWrapper {
             error("Expected function name");
             return false;
         }
-        String functionName = currentToken.getLexeme();
+        int functionSymbol = currentSymbol();
+        String functionName = currentLexeme();
         advance();
 
         SyntaxTree funcNode = parent.addChild(FUNCTION)
+            .withSymbol(functionSymbol)
             .withAttribute("name", functionName);
 
         if (!expect(OPEN_PARENTHESIS)) return false;
@@ -179,7 +295,7 @@ public class Parser implements ITokenWrapper {
             error("Expected return type");
             return false;
         }
-        funcNode.withAttribute("returnType", currentToken.getLexeme());
+        funcNode.withAttribute("returnType", currentLexeme());
         advance();
 
         SyntaxTree body = funcNode.addChild(BLOCK);
@@ -208,7 +324,8 @@ public class Parser implements ITokenWrapper {
             error("Expected parameter name");
             return false;
         }
-        String paramName = currentToken.getLexeme();
+        int paramSymbol = currentSymbol();
+        String paramName = currentLexeme();
         advance();
 
         if (!expect(COLON)) return false;
@@ -217,10 +334,11 @@ public class Parser implements ITokenWrapper {
             error("Expected parameter type");
             return false;
         }
-        String paramType = currentToken.getLexeme();
+        String paramType = currentLexeme();
         advance();
 
         parent.addChild(PARAMETER)
+            .withSymbol(paramSymbol)
             .withAttribute("name", paramName)
             .withAttribute("type", paramType);
 
@@ -319,8 +437,7 @@ public class Parser implements ITokenWrapper {
             return null;
         }
 
-        byte opType = currentToken.getType();
-        String opSymbol = currentToken.getLexeme();
+        String opSymbol = currentLexeme();
         advance();
 
         SyntaxTree right = parseExpression();
@@ -339,7 +456,7 @@ public class Parser implements ITokenWrapper {
         if (left == null) return null;
 
         while (check(PLUS) || check(MINUS)) {
-            String op = currentToken.getLexeme();
+            String op = currentLexeme();
             advance();
 
             SyntaxTree right = parseTerm();
@@ -363,7 +480,7 @@ public class Parser implements ITokenWrapper {
         if (left == null) return null;
 
         while (check(MULTIPLY) || check(DIVIDE)) {
-            String op = currentToken.getLexeme();
+            String op = currentLexeme();
             advance();
 
             SyntaxTree right = parseFactor();
@@ -392,25 +509,26 @@ public class Parser implements ITokenWrapper {
         }
 
         if (check(NUMERIC)) {
-            SyntaxTree numNode = new SyntaxTree(NUMERIC, currentToken.getLexeme());
+            SyntaxTree numNode = new SyntaxTree(NUMERIC, currentLexeme());
             advance();
             return numNode;
         }
 
         if(check(STRING)) {
-            SyntaxTree strNode = new SyntaxTree(STRING, currentToken.getLexeme());
+            SyntaxTree strNode = new SyntaxTree(STRING, currentLexeme());
             advance();
             return strNode;
         }
 
         if (check(IDENTIFIER)) {
-            String name = currentToken.getLexeme();
+            int symbol = currentSymbol();
+            String name = currentLexeme();
             advance();
 
             if (check(OPEN_PARENTHESIS)) {
-                return parseFunctionCall(name);
+                return parseFunctionCall(name, symbol);
             } else {
-                return new SyntaxTree(IDENTIFIER, name);
+                return new SyntaxTree(IDENTIFIER, name).withSymbol(symbol);
             }
         }
 
@@ -423,15 +541,16 @@ public class Parser implements ITokenWrapper {
     }
 
     private boolean isStatementStart() {
-        byte type = currentToken.getType();
+        byte type = currentType;
         return switch (type) {
             case FN, PRINT, VAR, IF, WHILE, RETURN, CLOSE_BRACE, EOF_TOKEN -> true;
             default -> false;
         };
     }
 
-    private SyntaxTree parseFunctionCall(String functionName) {
+    private SyntaxTree parseFunctionCall(String functionName, int functionSymbol) {
         SyntaxTree callNode = new SyntaxTree(FUNCTION_CALL)
+            .withSymbol(functionSymbol)
             .withAttribute("name", functionName);
 
         if (!expect(OPEN_PARENTHESIS)) return null;
@@ -454,7 +573,7 @@ public class Parser implements ITokenWrapper {
     }
 
     private boolean check(byte type) {
-        return currentToken.getType() == type;
+        return currentType == type;
     }
 
     private boolean checkType() {
@@ -462,30 +581,43 @@ public class Parser implements ITokenWrapper {
     }
 
     private boolean isComparisonOperator() {
-        byte t = currentToken.getType();
+        byte t = currentType;
         return t == EQUAL || t == NOT_EQUAL || 
                t == GREATER_THAN || t == LESS_THAN || 
                t == GREATER_EQUAL || t == LESS_EQUAL;
     }
 
-    private byte lookAhead(int offset) {
-        int index = position + offset;
-        if (index >= tokens.size()) {
-            return EOF_TOKEN;
-        }
-        return tokens.get(index).getType();
+    private byte lookAhead() {
+        return source.peekType();
     }
 
     private void advance() {
-        position++;
-        if (position < tokens.size()) {
-            currentToken = tokens.get(position);
+        source.advance();
+        currentType = source.getType();
+    }
+
+    private String currentLexeme() {
+        return source.getLexeme();
+    }
+
+    /**
+     * Symbol id of the current identifier token, interning its lexeme if the token carries no usable id.
+     */
+    private int currentSymbol() {
+        int symbol = source.getSymbol();
+        if (symbol != SymbolTable.NO_SYMBOL) {
+            return symbol;
         }
+        return symbols.intern(currentLexeme());
+    }
+
+    private Token currentToken() {
+        return source.toToken();
     }
 
     private boolean expect(byte type) {
         if (!check(type)) {
-            error("Expected " + Token.getTokenName(type) + " but got " + currentToken.getTokenName());
+            error("Expected " + Token.getTokenName(type) + " but got " + Token.getTokenName(currentType));
             return false;
         }
         advance();
@@ -493,7 +625,20 @@ public class Parser implements ITokenWrapper {
     }
 
     private void error(String message) {
+        if (!reportErrors) {
+            return;
+        }
+        if (source != null && source.hasFailed()) {
+            // The scanner has reported the real problem; the early EOF would only add noise.
+            return;
+        }
+        int line = 0;
+        int tokenPosition = 0;
+        if (source != null) {
+            line = source.getLine();
+            tokenPosition = source.getPosition();
+        }
         System.err.printf("Parser error at [line: %d, position: %d] - %s%n",
-            currentToken.getLine(), currentToken.getPosition(), message);
+            line, tokenPosition, message);
     }
 }
\ No newline at end of file
@@ -1,21 +1,27 @@
 package pl.peth.common.parser;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import pl.peth.common.SymbolTable;
 import pl.peth.common.Token;
 
 public class SyntaxTree {
     private final List<SyntaxTree> children;
     private final byte type;
     private String value;
+    private int symbol;
     private final Map<String, String> attributes;
 
     public SyntaxTree(byte type) {
         this.type = type;
         this.value = null;
+        this.symbol = SymbolTable.NO_SYMBOL;
         this.children = new ArrayList<>();
         this.attributes = new HashMap<>();
     }
@@ -57,6 +63,18 @@ public class SyntaxTree {
         return attributes.containsKey(key);
     }
 
+    /**
+     * Attaches the interned id of the name this node declares or refers to.
+     */
+    public SyntaxTree withSymbol(int symbol) {
+        this.symbol = symbol;
+        return this;
+    }
+
+    public int getSymbol() {
+        return symbol;
+    }
+
     // === Getters ===
     
     public byte getType() {
@@ -85,12 +103,70 @@ public class SyntaxTree {
     public boolean isLeaf() {
         return children.isEmpty();
     }
+
+    /**
+     * Returns a node with the same type, value, symbol and attributes, but without children.
+     */
+    public SyntaxTree copyNode() {
+        SyntaxTree copy = new SyntaxTree(type, value).withSymbol(symbol);
+        copy.attributes.putAll(attributes);
+        return copy;
+    }
     
+    /**
+     * Visits the subtree in depth-first order. Nodes waiting for their remaining children are kept on
+     * an explicit stack instead of the call stack, so arbitrarily deep trees can be walked.
+     */
+    public void walk(SyntaxTreeVisitor visitor) {
+        if (!visitor.enter(this)) {
+            return;
+        }
+
+        SyntaxTree[] path = new SyntaxTree[16];
+        int[] nextChild = new int[16];
+        path[0] = this;
+        int depth = 1;
+
+        while (depth > 0) {
+            SyntaxTree node = path[depth - 1];
+            int index = nextChild[depth - 1];
+            if (index == node.children.size()) {
+                visitor.leave(node);
+                path[--depth] = null;
+                continue;
+            }
+
+            nextChild[depth - 1] = index + 1;
+            SyntaxTree child = node.children.get(index);
+            if (visitor.enter(child)) {
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                    nextChild = Arrays.copyOf(nextChild, depth * 2);
+                }
+                path[depth] = child;
+                nextChild[depth] = 0;
+                depth++;
+            }
+        }
+    }
+
     public void print() {
-        print("", false );
+        Deque<PrintFrame> pending = new ArrayDeque<>();
+        pending.push(new PrintFrame(this, "", false));
+
+        while (!pending.isEmpty()) {
+            PrintFrame frame = pending.pop();
+            frame.node.printLine(frame.prefix, frame.isLast);
+
+            List<SyntaxTree> nodeChildren = frame.node.children;
+            String childPrefix = frame.prefix + (frame.isLast ? "    " : "│   ");
+            for (int i = nodeChildren.size() - 1; i >= 0; i--) {
+                pending.push(new PrintFrame(nodeChildren.get(i), childPrefix, i == nodeChildren.size() - 1));
+            }
+        }
     }
 
-    private void print(String prefix, boolean isLast) {
+    private void printLine(String prefix, boolean isLast) {
         System.out.print(prefix);
         System.out.print(isLast ? "└── " : "├── ");
         
@@ -112,12 +188,17 @@ public class SyntaxTree {
         }
         
         System.out.println();
+    }
+
+    private static class PrintFrame {
+        private final SyntaxTree node;
+        private final String prefix;
+        private final boolean isLast;
 
-        for (int i = 0; i < children.size(); i++) {
-            children.get(i).print(
-                prefix + (isLast ? "    " : "│   "),
-                i == children.size() - 1
-            );
+        private PrintFrame(SyntaxTree node, String prefix, boolean isLast) {
+            this.node = node;
+            this.prefix = prefix;
+            this.isLast = isLast;
         }
     }
 
@@ -0,0 +1,17 @@
+package pl.peth.common.parser;
+
+/**
+ * Callback for {@link SyntaxTree#walk(SyntaxTreeVisitor)}. {@link #enter} is called before the children
+ * of a node are visited (pre-order), {@link #leave} after all of them (post-order).
+ */
+public interface SyntaxTreeVisitor {
+    /**
+     * @return {@code false} to skip the children of {@code node}; {@link #leave} is then not called for it either
+     */
+    default boolean enter(SyntaxTree node) {
+        return true;
+    }
+
+    default void leave(SyntaxTree node) {
+    }
+}
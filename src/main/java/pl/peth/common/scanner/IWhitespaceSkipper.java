@@ -0,0 +1,20 @@
+package pl.peth.common.scanner;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fast path of {@link Utf8Scanner} for skipping runs of whitespace and comment bodies.
+ */
+interface IWhitespaceSkipper {
+    /**
+     * Skips ASCII whitespace including newlines, starting at {@code from}. Returns the offset of the first
+     * other byte in the low and the number of skipped newlines in the high half, so the caller can count lines.
+     */
+    long skipWhitespace(ByteBuffer bytes, int from, int limit);
+
+    /**
+     * Returns the offset of the first newline at or after {@code from}, or {@code limit} if there is none.
+     * Used to skip the body of a {@code //} comment.
+     */
+    int findNewline(ByteBuffer bytes, int from, int limit);
+}
@@ -0,0 +1,140 @@
+package pl.peth.common.scanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Relexes only the part of a source text that an edit can have changed. Scanning restarts at the
+ * end of the last token before the edit and stops as soon as a new token ends where an old token
+ * behind the edit ended, because from there on both texts and scanner states are identical.
+ * The work done is proportional to the size of the edit, not to the size of the file.
+ */
+public class IncrementalScanner implements ITokenWrapper {
+    private final TableDrivenScanner engine;
+
+    public IncrementalScanner() {
+        this(new SymbolTable());
+    }
+
+    public IncrementalScanner(SymbolTable symbols) {
+        this.engine = new TableDrivenScanner(symbols);
+    }
+
+    public SymbolTable getSymbolTable() {
+        return engine.getSymbolTable();
+    }
+
+    /**
+     * @param previousTokens complete token list of the text before the edit, ending with the EOF token
+     * @param source the text after the edit has been applied
+     * @param edit the applied edit
+     * @return the changed token range, or {@code null} if the edited text cannot be scanned
+     */
+    public TokenDelta relex(List<Token> previousTokens, String source, TextEdit edit) {
+        engine.setInput(source);
+
+        if (previousTokens.isEmpty()) {
+            if (!engine.scan()) {
+                return null;
+            }
+            return new TokenDelta(0, 0, new ArrayList<>(engine.getTokens()), 0, 0);
+        }
+
+        int editStart = edit.getOffset();
+        int oldEditEnd = editStart + edit.getRemovedLength();
+        int newEditEnd = editStart + edit.getInsertedText().length();
+        int positionDelta = edit.getLengthDelta();
+
+        int first = firstTokenEndingAtOrAfter(previousTokens, editStart);
+        int restartPosition = first > 0 ? previousTokens.get(first - 1).getPosition() : 0;
+        int restartLine = first > 0 ? previousTokens.get(first - 1).getLine() : 1;
+
+        List<Token> scanned = engine.getTokens();
+        scanned.clear();
+        engine.seek(restartPosition, restartLine);
+
+        int old = first;
+        int last = previousTokens.size() - 1;
+        while (true) {
+            int result = engine.scanNext(null);
+            if (result == TableDrivenScanner.STEP_ERROR) {
+                return null;
+            }
+
+            Token token = scanned.get(scanned.size() - 1);
+            int end = token.getPosition();
+
+            if (result == TableDrivenScanner.STEP_EOF) {
+                int lineDelta = token.getLine() - previousTokens.get(last).getLine();
+                return trimmed(previousTokens, first, last, scanned, positionDelta, lineDelta);
+            }
+            if (end < newEditEnd) {
+                continue;
+            }
+
+            while (old < last && shiftedEnd(previousTokens.get(old), oldEditEnd, positionDelta) < end) {
+                old++;
+            }
+
+            Token candidate = previousTokens.get(old);
+            if (candidate.getPosition() >= oldEditEnd && candidate.getPosition() + positionDelta == end
+                    && candidate.getType() != EOF_TOKEN) {
+                int lineDelta = token.getLine() - candidate.getLine();
+                return trimmed(previousTokens, first, old, scanned, positionDelta, lineDelta);
+            }
+        }
+    }
+
+    /**
+     * Builds the delta for replacing {@code previous[first..lastReplaced]} by {@code scanned}, leaving out
+     * tokens at both ends of the range that came out unchanged.
+     */
+    private TokenDelta trimmed(List<Token> previous, int first, int lastReplaced, List<Token> scanned,
+                               int positionDelta, int lineDelta) {
+        int from = 0;
+        int to = scanned.size();
+
+        while (from < to && first <= lastReplaced && sameToken(previous.get(first), scanned.get(from), 0, 0)) {
+            first++;
+            from++;
+        }
+        while (from < to && first <= lastReplaced
+                && sameToken(previous.get(lastReplaced), scanned.get(to - 1), positionDelta, lineDelta)) {
+            lastReplaced--;
+            to--;
+        }
+
+        List<Token> inserted = new ArrayList<>(scanned.subList(from, to));
+        return new TokenDelta(first, lastReplaced - first + 1, inserted, positionDelta, lineDelta);
+    }
+
+    private static boolean sameToken(Token old, Token scanned, int positionDelta, int lineDelta) {
+        return old.getType() == scanned.getType()
+                && old.getPosition() + positionDelta == scanned.getPosition()
+                && old.getLine() + lineDelta == scanned.getLine()
+                && old.getLexeme().equals(scanned.getLexeme());
+    }
+
+    private static int shiftedEnd(Token token, int oldEditEnd, int positionDelta) {
+        int end = token.getPosition();
+        return end >= oldEditEnd ? end + positionDelta : Integer.MIN_VALUE;
+    }
+
+    private static int firstTokenEndingAtOrAfter(List<Token> tokens, int offset) {
+        int low = 0;
+        int high = tokens.size() - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tokens.get(middle).getPosition() < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,245 @@
+package pl.peth.common.scanner;
+
+import java.util.Arrays;
+
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Precomputed character-class and state-transition tables of the lexer automaton.
+ * Keywords are spelled out as their own states, so a keyword is known to be a keyword
+ * as soon as its last character has been consumed.
+ */
+final class LexerTables implements ITokenWrapper {
+    // == Character classes ==
+    static final int CLASS_OTHER = 0;
+    static final int CLASS_WHITESPACE = 1;
+    static final int CLASS_NEWLINE = 2;
+    static final int CLASS_DIGIT = 3;
+    static final int CLASS_LETTER = 4;
+    static final int CLASS_QUOTE = 5;
+    static final int CLASS_SLASH = 6;
+    static final int CLASS_PLUS = 7;
+    static final int CLASS_STAR = 8;
+    static final int CLASS_MINUS = 9;
+    static final int CLASS_GREATER = 10;
+    static final int CLASS_LESS = 11;
+    static final int CLASS_EQUALS = 12;
+    static final int CLASS_BANG = 13;
+    static final int CLASS_OPEN_PARENTHESIS = 14;
+    static final int CLASS_CLOSE_PARENTHESIS = 15;
+    static final int CLASS_OPEN_BRACE = 16;
+    static final int CLASS_CLOSE_BRACE = 17;
+    static final int CLASS_COMMA = 18;
+    static final int CLASS_COLON = 19;
+    private static final int CLASS_KEYWORD_LETTER_BASE = 20;
+
+    // == States ==
+    static final int DEAD_STATE = 0;
+    static final int START_STATE = 1;
+
+    /** Accept marker for the comment state; comments produce no token. */
+    static final byte ACCEPT_COMMENT = -1;
+
+    private static final String[] KEYWORDS = {
+        "fn", "var", "int", "void", "bool", "string", "return", "if", "else", "elseif", "while", "print"
+    };
+
+    static final byte[] CHAR_CLASS = new byte[128];
+    static final int CLASS_COUNT;
+    static final short[] TRANSITIONS;
+    static final byte[] ACCEPT;
+    static final int BANG_STATE;
+
+    /** Canonical lexemes of keyword and operator tokens, indexed by token type. */
+    static final String[] FIXED_LEXEMES = new String[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            CHAR_CLASS[c] = (byte) slowClassOf(c);
+        }
+        CHAR_CLASS['"'] = CLASS_QUOTE;
+        CHAR_CLASS['/'] = CLASS_SLASH;
+        CHAR_CLASS['+'] = CLASS_PLUS;
+        CHAR_CLASS['*'] = CLASS_STAR;
+        CHAR_CLASS['-'] = CLASS_MINUS;
+        CHAR_CLASS['>'] = CLASS_GREATER;
+        CHAR_CLASS['<'] = CLASS_LESS;
+        CHAR_CLASS['='] = CLASS_EQUALS;
+        CHAR_CLASS['!'] = CLASS_BANG;
+        CHAR_CLASS['('] = CLASS_OPEN_PARENTHESIS;
+        CHAR_CLASS[')'] = CLASS_CLOSE_PARENTHESIS;
+        CHAR_CLASS['{'] = CLASS_OPEN_BRACE;
+        CHAR_CLASS['}'] = CLASS_CLOSE_BRACE;
+        CHAR_CLASS[','] = CLASS_COMMA;
+        CHAR_CLASS[':'] = CLASS_COLON;
+
+        int classCount = CLASS_KEYWORD_LETTER_BASE;
+        for (String keyword : KEYWORDS) {
+            for (char c : keyword.toCharArray()) {
+                if (CHAR_CLASS[c] == CLASS_LETTER) {
+                    CHAR_CLASS[c] = (byte) classCount++;
+                }
+            }
+        }
+        CLASS_COUNT = classCount;
+
+        StateBuilder builder = new StateBuilder();
+        int identifier = builder.newState(IDENTIFIER);
+        int number = builder.newState(NUMERIC);
+        int comment = builder.newState(ACCEPT_COMMENT);
+
+        for (int cls = 0; cls < CLASS_COUNT; cls++) {
+            if (isIdentifierPart(cls)) {
+                builder.set(identifier, cls, identifier);
+            }
+            if (cls != CLASS_NEWLINE) {
+                builder.set(comment, cls, comment);
+            }
+        }
+        builder.set(number, CLASS_DIGIT, number);
+
+        for (int cls = CLASS_LETTER; cls < CLASS_COUNT; cls++) {
+            if (cls == CLASS_LETTER || cls >= CLASS_KEYWORD_LETTER_BASE) {
+                builder.set(START_STATE, cls, identifier);
+            }
+        }
+        builder.set(START_STATE, CLASS_DIGIT, number);
+
+        for (String keyword : KEYWORDS) {
+            int state = START_STATE;
+            for (char c : keyword.toCharArray()) {
+                int next = builder.get(state, CHAR_CLASS[c]);
+                if (next == identifier) {
+                    next = builder.newState(IDENTIFIER);
+                    for (int cls = 0; cls < CLASS_COUNT; cls++) {
+                        if (isIdentifierPart(cls)) {
+                            builder.set(next, cls, identifier);
+                        }
+                    }
+                    builder.set(state, CHAR_CLASS[c], next);
+                }
+                state = next;
+            }
+            byte type = Scanner.checkKeyword(keyword);
+            builder.accept[state] = type;
+            FIXED_LEXEMES[type] = keyword;
+        }
+
+        builder.set(START_STATE, CLASS_PLUS, builder.newState(PLUS));
+        builder.set(START_STATE, CLASS_STAR, builder.newState(MULTIPLY));
+        builder.set(START_STATE, CLASS_OPEN_PARENTHESIS, builder.newState(OPEN_PARENTHESIS));
+        builder.set(START_STATE, CLASS_CLOSE_PARENTHESIS, builder.newState(CLOSE_PARENTHESIS));
+        builder.set(START_STATE, CLASS_OPEN_BRACE, builder.newState(OPEN_BRACE));
+        builder.set(START_STATE, CLASS_CLOSE_BRACE, builder.newState(CLOSE_BRACE));
+        builder.set(START_STATE, CLASS_COMMA, builder.newState(COMMA));
+        builder.set(START_STATE, CLASS_COLON, builder.newState(COLON));
+
+        int slash = builder.newState(DIVIDE);
+        builder.set(START_STATE, CLASS_SLASH, slash);
+        builder.set(slash, CLASS_SLASH, comment);
+
+        int minus = builder.newState(MINUS);
+        builder.set(START_STATE, CLASS_MINUS, minus);
+        builder.set(minus, CLASS_GREATER, builder.newState(ARROW));
+
+        int assign = builder.newState(ASSIGN);
+        builder.set(START_STATE, CLASS_EQUALS, assign);
+        builder.set(assign, CLASS_EQUALS, builder.newState(EQUAL));
+
+        int less = builder.newState(LESS_THAN);
+        builder.set(START_STATE, CLASS_LESS, less);
+        builder.set(less, CLASS_EQUALS, builder.newState(LESS_EQUAL));
+
+        int greater = builder.newState(GREATER_THAN);
+        builder.set(START_STATE, CLASS_GREATER, greater);
+        builder.set(greater, CLASS_EQUALS, builder.newState(GREATER_EQUAL));
+
+        BANG_STATE = builder.newState(NO_TYPE);
+        builder.set(START_STATE, CLASS_BANG, BANG_STATE);
+        builder.set(BANG_STATE, CLASS_EQUALS, builder.newState(NOT_EQUAL));
+
+        TRANSITIONS = builder.transitions();
+        ACCEPT = builder.accept();
+
+        FIXED_LEXEMES[PLUS] = "+";
+        FIXED_LEXEMES[MINUS] = "-";
+        FIXED_LEXEMES[MULTIPLY] = "*";
+        FIXED_LEXEMES[DIVIDE] = "/";
+        FIXED_LEXEMES[EQUAL] = "==";
+        FIXED_LEXEMES[NOT_EQUAL] = "!=";
+        FIXED_LEXEMES[GREATER_THAN] = ">";
+        FIXED_LEXEMES[LESS_THAN] = "<";
+        FIXED_LEXEMES[GREATER_EQUAL] = ">=";
+        FIXED_LEXEMES[LESS_EQUAL] = "<=";
+        FIXED_LEXEMES[COMMA] = ",";
+        FIXED_LEXEMES[COLON] = ":";
+        FIXED_LEXEMES[OPEN_PARENTHESIS] = "(";
+        FIXED_LEXEMES[CLOSE_PARENTHESIS] = ")";
+        FIXED_LEXEMES[OPEN_BRACE] = "{";
+        FIXED_LEXEMES[CLOSE_BRACE] = "}";
+        FIXED_LEXEMES[ARROW] = "->";
+        FIXED_LEXEMES[ASSIGN] = "=";
+    }
+
+    private LexerTables() {
+    }
+
+    static int classOf(char c) {
+        return c < 128 ? CHAR_CLASS[c] : slowClassOf(c);
+    }
+
+    static int next(int state, int cls) {
+        return TRANSITIONS[state * CLASS_COUNT + cls];
+    }
+
+    private static int slowClassOf(char c) {
+        if (c == '\n') {
+            return CLASS_NEWLINE;
+        }
+        if (Character.isWhitespace(c)) {
+            return CLASS_WHITESPACE;
+        }
+        if (Character.isDigit(c)) {
+            return CLASS_DIGIT;
+        }
+        if (Character.isLetter(c) || c == '_') {
+            return CLASS_LETTER;
+        }
+        return CLASS_OTHER;
+    }
+
+    private static boolean isIdentifierPart(int cls) {
+        return cls == CLASS_DIGIT || cls == CLASS_LETTER || cls >= CLASS_KEYWORD_LETTER_BASE;
+    }
+
+    private static final class StateBuilder {
+        private short[] transitions = new short[64 * CLASS_COUNT];
+        private byte[] accept = new byte[64];
+        private int stateCount = 2;
+
+        int newState(byte acceptType) {
+            if (stateCount == accept.length) {
+                accept = Arrays.copyOf(accept, accept.length * 2);
+                transitions = Arrays.copyOf(transitions, transitions.length * 2);
+            }
+            accept[stateCount] = acceptType;
+            return stateCount++;
+        }
+
+        int get(int state, int cls) {
+            return transitions[state * CLASS_COUNT + cls];
+        }
+
+        void set(int state, int cls, int target) {
+            transitions[state * CLASS_COUNT + cls] = (short) target;
+        }
+
+        short[] transitions() {
+            return Arrays.copyOf(transitions, stateCount * CLASS_COUNT);
+        }
+
+        byte[] accept() {
+            return Arrays.copyOf(accept, stateCount);
+        }
+    }
+}
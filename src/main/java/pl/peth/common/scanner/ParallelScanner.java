@@ -0,0 +1,273 @@
+package pl.peth.common.scanner;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Lexes large inputs on several cores. No token spans a line break, so the input is cut after
+ * newlines into chunks that are scanned independently, each into its own {@link TokenBuffer}
+ * with its own {@link SymbolTable}. The chunks are then stitched into one buffer: lines are moved
+ * by the newlines of all preceding chunks and symbol ids are translated into the shared table.
+ * Chunk tables are merged in input order, so ids come out the same as with a sequential scan.
+ * <p>
+ * The only way a string can continue on the next line is an escaped newline, so the input is never
+ * cut after a newline preceded by a backslash. If any chunk reports an error the whole input is
+ * rescanned sequentially, which reports the errors with the right lines.
+ */
+public class ParallelScanner implements ITokenWrapper {
+    public static final int DEFAULT_CHUNK_SIZE = 256 * 1024;
+
+    private final SymbolTable symbols;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    public ParallelScanner() {
+        this(new SymbolTable());
+    }
+
+    public ParallelScanner(SymbolTable symbols) {
+        this(symbols, ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    public ParallelScanner(SymbolTable symbols, ForkJoinPool pool, int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Invalid chunk size: " + chunkSize);
+        }
+        this.symbols = symbols;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public TokenBuffer scanFile(String fileName) {
+        String input = readFile(fileName);
+        if (input == null) {
+            return null;
+        }
+        return scan(input);
+    }
+
+    /**
+     * Returns the same tokens as {@link TableDrivenScanner#scanToBuffer()}, or {@code null} if scanning failed.
+     */
+    public TokenBuffer scan(String input) {
+        if (pool.getParallelism() < 2) {
+            return scanSequentially(input);
+        }
+
+        int[] bounds = split(input);
+        int chunkCount = bounds.length - 1;
+        if (chunkCount < 2) {
+            return scanSequentially(input);
+        }
+
+        Chunk[] chunks = new Chunk[chunkCount];
+        pool.invoke(new LexChunks(input, bounds, chunks, 0, chunkCount));
+
+        for (Chunk chunk : chunks) {
+            if (chunk.failed) {
+                return scanSequentially(input);
+            }
+        }
+        return stitch(input, chunks);
+    }
+
+    private TokenBuffer scanSequentially(String input) {
+        TableDrivenScanner scanner = new TableDrivenScanner(symbols);
+        scanner.setInput(input);
+        return scanner.scanToBuffer();
+    }
+
+    /**
+     * Returns chunk boundaries {@code 0 = b[0] < b[1] < ... < b[n] = length}. Every inner boundary
+     * directly follows a newline that does not end a string escape.
+     */
+    int[] split(String input) {
+        int length = input.length();
+        int wanted = Math.max(1, length / chunkSize);
+        int[] bounds = new int[wanted + 1];
+        int count = 1;
+
+        for (int i = 1; i < wanted; i++) {
+            int target = Math.max((int) ((long) length * i / wanted), bounds[count - 1]);
+            int bound = nextSplitPoint(input, target);
+            if (bound >= length) {
+                break;
+            }
+            if (bound > bounds[count - 1]) {
+                bounds[count++] = bound;
+            }
+        }
+        bounds[count++] = length;
+
+        int[] result = new int[count];
+        System.arraycopy(bounds, 0, result, 0, count);
+        return result;
+    }
+
+    private static int nextSplitPoint(String input, int from) {
+        int index = from;
+        while ((index = input.indexOf('\n', index)) >= 0) {
+            if (index == 0 || input.charAt(index - 1) != '\\') {
+                return index + 1;
+            }
+            index++;
+        }
+        return input.length();
+    }
+
+    private TokenBuffer stitch(String input, Chunk[] chunks) {
+        int[] destinations = new int[chunks.length];
+        int[] lineOffsets = new int[chunks.length];
+        int[][] symbolMaps = new int[chunks.length][];
+
+        int total = 0;
+        int line = 1;
+        for (int c = 0; c < chunks.length; c++) {
+            Chunk chunk = chunks[c];
+            destinations[c] = total;
+            lineOffsets[c] = line;
+            total += chunk.tokenCount();
+            line += chunk.lines;
+
+            SymbolTable local = chunk.tokens.getSymbolTable();
+            int[] map = new int[local.size()];
+            for (int id = 0; id < map.length; id++) {
+                map[id] = symbols.intern(local.getName(id));
+            }
+            symbolMaps[c] = map;
+        }
+
+        TokenBuffer result = new TokenBuffer(input, symbols, total + 1);
+        result.resize(total);
+        pool.invoke(new CopyChunks(result, chunks, destinations, lineOffsets, symbolMaps, 0, chunks.length));
+        result.add(EOF_TOKEN, input.length(), input.length(), line, SymbolTable.NO_SYMBOL);
+        return result;
+    }
+
+    private String readFile(String fileName) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            StringBuilder sb = new StringBuilder();
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append('\n');
+            }
+            return sb.toString();
+        } catch (IOException ex) {
+            System.err.println("Scanner Error: Error reading file: " + fileName);
+            return null;
+        }
+    }
+
+    /**
+     * Tokens of one chunk with lines counted from 0, the number of newlines in the chunk and whether
+     * scanning it reported any error. The trailing EOF token of {@link #tokens} is not part of the result.
+     */
+    private static class Chunk {
+        private final TokenBuffer tokens;
+        private final int lines;
+        private final boolean failed;
+
+        private Chunk(TokenBuffer tokens, int lines, boolean failed) {
+            this.tokens = tokens;
+            this.lines = lines;
+            this.failed = failed;
+        }
+
+        private int tokenCount() {
+            return tokens.size() - 1;
+        }
+    }
+
+    private static class LexChunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String input;
+        private final int[] bounds;
+        private final Chunk[] chunks;
+        private final int from;
+        private final int to;
+
+        private LexChunks(String input, int[] bounds, Chunk[] chunks, int from, int to) {
+            this.input = input;
+            this.bounds = bounds;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LexChunks(input, bounds, chunks, from, middle),
+                        new LexChunks(input, bounds, chunks, middle, to));
+                return;
+            }
+
+            int start = bounds[from];
+            int end = bounds[from + 1];
+            SymbolTable local = new SymbolTable();
+            TableDrivenScanner scanner = new TableDrivenScanner(local);
+            TokenBuffer tokens = new TokenBuffer(input, local, (end - start) / 8);
+
+            scanner.setInput(input);
+            scanner.setRange(start, end, 0);
+            scanner.setReportErrors(false);
+
+            int result;
+            do {
+                result = scanner.scanNext(tokens);
+            } while (result == TableDrivenScanner.STEP_TOKEN);
+
+            boolean failed = result == TableDrivenScanner.STEP_ERROR || scanner.getErrorCount() > 0;
+            chunks[from] = new Chunk(tokens, scanner.getLine(), failed);
+        }
+    }
+
+    private static class CopyChunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final TokenBuffer result;
+        private final Chunk[] chunks;
+        private final int[] destinations;
+        private final int[] lineOffsets;
+        private final int[][] symbolMaps;
+        private final int from;
+        private final int to;
+
+        private CopyChunks(TokenBuffer result, Chunk[] chunks, int[] destinations, int[] lineOffsets,
+                           int[][] symbolMaps, int from, int to) {
+            this.result = result;
+            this.chunks = chunks;
+            this.destinations = destinations;
+            this.lineOffsets = lineOffsets;
+            this.symbolMaps = symbolMaps;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new CopyChunks(result, chunks, destinations, lineOffsets, symbolMaps, from, middle),
+                        new CopyChunks(result, chunks, destinations, lineOffsets, symbolMaps, middle, to));
+                return;
+            }
+
+            Chunk chunk = chunks[from];
+            result.copyFrom(chunk.tokens, chunk.tokenCount(), destinations[from], lineOffsets[from], symbolMaps[from]);
+        }
+    }
+}
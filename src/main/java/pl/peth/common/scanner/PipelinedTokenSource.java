@@ -0,0 +1,181 @@
+package pl.peth.common.scanner;
+
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * {@link TokenSource} that runs another source on a producer thread, so lexing overlaps with
+ * parsing on a second core. Tokens are handed over in batches through a bounded queue, which keeps
+ * synchronization off the per-token path and stops the producer when the parser falls behind.
+ * <p>
+ * The producer interns identifiers while the parser runs. Everything it interned is visible once the
+ * EOF token has been consumed; a caller that stops earlier has to {@link #close()} the source before
+ * using the symbol table. A closed source still hands out the batches already queued and then ends
+ * with an EOF token, as a failed source.
+ */
+public class PipelinedTokenSource implements TokenSource, ITokenWrapper, Closeable {
+    public static final int DEFAULT_BATCH_SIZE = 256;
+    public static final int DEFAULT_CAPACITY = 16;
+
+    private final TokenSource upstream;
+    private final BlockingQueue<Token[]> queue;
+    private final int batchSize;
+    private final Thread producer;
+    private volatile boolean failed;
+    private boolean closed;
+
+    private Token[] batch;
+    private int batchIndex;
+    private Token current;
+    private Token next;
+
+    public PipelinedTokenSource(TokenSource upstream) {
+        this(upstream, DEFAULT_BATCH_SIZE, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param batchSize tokens per hand-over
+     * @param capacity number of batches the producer may run ahead of the parser
+     */
+    public PipelinedTokenSource(TokenSource upstream, int batchSize, int capacity) {
+        if (batchSize < 1 || capacity < 1) {
+            throw new IllegalArgumentException("Invalid pipeline size: batchSize=" + batchSize + ", capacity=" + capacity);
+        }
+        this.upstream = upstream;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.failed = false;
+        this.producer = new Thread(this::produce, "token-producer");
+        this.producer.setDaemon(true);
+        this.producer.start();
+
+        this.current = take();
+        this.next = current.getType() == EOF_TOKEN ? current : take();
+    }
+
+    private void produce() {
+        try {
+            while (true) {
+                Token[] tokens = new Token[batchSize];
+                int count = 0;
+                boolean end = false;
+                while (count < batchSize && !end) {
+                    Token token = upstream.toToken();
+                    tokens[count++] = token;
+                    end = token.getType() == EOF_TOKEN;
+                    upstream.advance();
+                }
+                if (end && upstream.hasFailed()) {
+                    failed = true;
+                }
+                queue.put(count == batchSize ? tokens : Arrays.copyOf(tokens, count));
+                if (end) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException ex) {
+            System.err.println("Scanner Error: token producer failed: " + ex);
+            failed = true;
+            try {
+                queue.put(new Token[] { new Token(EOF_TOKEN, "EOF", 0, 0) });
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private Token take() {
+        if (batch == null || batchIndex == batch.length) {
+            try {
+                batch = closed ? queue.poll() : queue.take();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                batch = null;
+            }
+            if (batch == null) {
+                failed = true;
+                return new Token(EOF_TOKEN, "EOF", current == null ? 0 : current.getLine(), current == null ? 0 : current.getPosition());
+            }
+            batchIndex = 0;
+        }
+        return batch[batchIndex++];
+    }
+
+    @Override
+    public byte getType() {
+        return current.getType();
+    }
+
+    @Override
+    public String getLexeme() {
+        return current.getLexeme();
+    }
+
+    @Override
+    public int getSymbol() {
+        return current.getSymbol();
+    }
+
+    @Override
+    public int getLine() {
+        return current.getLine();
+    }
+
+    @Override
+    public int getPosition() {
+        return current.getPosition();
+    }
+
+    @Override
+    public byte peekType() {
+        return next.getType();
+    }
+
+    @Override
+    public void advance() {
+        if (current.getType() == EOF_TOKEN) {
+            return;
+        }
+        current = next;
+        if (next.getType() != EOF_TOKEN) {
+            next = take();
+        }
+    }
+
+    @Override
+    public SymbolTable getSymbolTable() {
+        return upstream.getSymbolTable();
+    }
+
+    @Override
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    @Override
+    public Token toToken() {
+        return current;
+    }
+
+    /**
+     * Stops the producer and waits for it, after which the symbol table can be used safely.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        producer.interrupt();
+        try {
+            producer.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -6,6 +6,7 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import pl.peth.common.SymbolTable;
 import pl.peth.common.Token;
 import pl.peth.common.tokens.ITokenWrapper;
 
@@ -14,12 +15,18 @@ public class Scanner implements ITokenWrapper {
     private int position;
     private int line;
     private final List<Token> tokens;
+    private final SymbolTable symbols;
 
     public Scanner() {
+        this(new SymbolTable());
+    }
+
+    public Scanner(SymbolTable symbols) {
         this.input = "";
         this.position = 0;
         this.line = 1;
         this.tokens = new ArrayList<>();
+        this.symbols = symbols;
     }
 
     public boolean scanFile(String fileName) {
@@ -135,6 +142,10 @@ public class Scanner implements ITokenWrapper {
         return tokens;
     }
 
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
     public void printTokens() {
         System.out.println("=== Scanner::Tokens ===");
         for (Token token : tokens) {
@@ -167,6 +178,9 @@ public class Scanner implements ITokenWrapper {
 
         byte type = checkKeyword(lexeme);
 
+        if (type == IDENTIFIER) {
+            return new Token(type, lexeme, startLine, position, symbols.intern(lexeme));
+        }
         return new Token(type, lexeme, startLine, position);
     }
 
@@ -244,7 +258,7 @@ public class Scanner implements ITokenWrapper {
         }
     }
 
-    private byte checkKeyword(String lexeme) {
+    static byte checkKeyword(String lexeme) {
         return switch(lexeme) {
             case "fn" -> FN;
             case "var" -> VAR;
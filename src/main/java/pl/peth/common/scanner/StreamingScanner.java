@@ -0,0 +1,367 @@
+package pl.peth.common.scanner;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Scanner variant that reads its input from a {@link ReadableByteChannel} in fixed-size windows
+ * and hands out tokens one at a time. Only the current window is kept in memory, so the footprint
+ * does not depend on the size of the source file and there is no iteration limit.
+ */
+public class StreamingScanner implements ITokenWrapper, Closeable {
+    public static final int DEFAULT_WINDOW_SIZE = 64 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer byteWindow;
+    private final CharBuffer charWindow;
+    private final CharsetDecoder decoder;
+    private final SymbolTable symbols;
+
+    private boolean channelExhausted;
+    private boolean endOfInput;
+    private boolean finished;
+    private boolean failed;
+    private int position;
+    private int line;
+
+    public StreamingScanner(ReadableByteChannel channel) {
+        this(channel, DEFAULT_WINDOW_SIZE);
+    }
+
+    public StreamingScanner(ReadableByteChannel channel, int windowSize) {
+        this(channel, windowSize, new SymbolTable());
+    }
+
+    public StreamingScanner(ReadableByteChannel channel, int windowSize, SymbolTable symbols) {
+        if (windowSize < 2) {
+            throw new IllegalArgumentException("Window size must be at least 2, got " + windowSize);
+        }
+        this.channel = channel;
+        this.byteWindow = ByteBuffer.allocateDirect(windowSize);
+        this.charWindow = CharBuffer.allocate(windowSize);
+        this.charWindow.flip();
+        this.decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.symbols = symbols;
+        this.channelExhausted = false;
+        this.endOfInput = false;
+        this.finished = false;
+        this.failed = false;
+        this.position = 0;
+        this.line = 1;
+    }
+
+    public static StreamingScanner open(Path path) throws IOException {
+        return new StreamingScanner(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    public static StreamingScanner open(Path path, int windowSize) throws IOException {
+        return new StreamingScanner(FileChannel.open(path, StandardOpenOption.READ), windowSize);
+    }
+
+    /**
+     * Scans the whole input and passes every token, including the final EOF token, to the consumer.
+     */
+    public boolean scan(Consumer<Token> consumer) {
+        Token token;
+        do {
+            token = nextToken();
+            if (token == null) {
+                return false;
+            }
+            consumer.accept(token);
+        } while (token.getType() != EOF_TOKEN);
+        return true;
+    }
+
+    /**
+     * Returns the next token of the input, an EOF token once the input is exhausted,
+     * or {@code null} if scanning failed.
+     */
+    public Token nextToken() {
+        if (failed) {
+            return null;
+        }
+        if (finished) {
+            return new Token(EOF_TOKEN, "EOF", line, position);
+        }
+
+        try {
+            while (true) {
+                char currentChar = charAtPosition();
+
+                if (currentChar == '\0' && atEnd()) {
+                    finished = true;
+                    return new Token(EOF_TOKEN, "EOF", line, position);
+                }
+
+                if (Character.isWhitespace(currentChar)) {
+                    if (currentChar == '\n') {
+                        line++;
+                    }
+                    advance();
+                    continue;
+                }
+
+                if (currentChar == '/' && charAtOneAfterPosition() == '/') {
+                    skipComment();
+                    continue;
+                }
+
+                if (currentChar == '"') {
+                    return scanString();
+                }
+
+                if (Character.isDigit(currentChar)) {
+                    return scanNumber();
+                }
+
+                if (Character.isLetter(currentChar) || currentChar == '_') {
+                    return scanIdentifierOrKeyword();
+                }
+
+                Token token = scanOperatorOrDelimiter();
+                if (token == null) {
+                    error("Unrecognized character: " + currentChar);
+                    failed = true;
+                }
+                return token;
+            }
+        } catch (IOException ex) {
+            error("Scanning failed: " + ex.getMessage());
+            failed = true;
+            return null;
+        }
+    }
+
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public int getLine() {
+        return line;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private Token scanString() throws IOException {
+        int startLine = line;
+        advance();
+        StringBuilder sb = new StringBuilder();
+
+        while (!atEnd() && charAtPosition() != '"') {
+            char c = charAtPosition();
+            if (c == '\\' && !atEnd(1)) {
+                advance();
+                char next = charAtPosition();
+                switch (next) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case '"' -> sb.append('"');
+                    case '\\' -> sb.append('\\');
+                    default -> sb.append(next);
+                }
+            } else if (c == '\n') {
+                error("Unterminated string literal");
+                return new Token(STRING, sb.toString(), startLine, position);
+            } else {
+                sb.append(c);
+            }
+            advance();
+        }
+
+        if (atEnd()) {
+            error("Unterminated string literal");
+        } else {
+            advance();
+        }
+
+        return new Token(STRING, sb.toString(), startLine, position);
+    }
+
+    private Token scanNumber() throws IOException {
+        int startLine = line;
+        StringBuilder sb = new StringBuilder();
+
+        while (!atEnd() && Character.isDigit(charAtPosition())) {
+            sb.append(charAtPosition());
+            advance();
+        }
+
+        return new Token(NUMERIC, sb.toString(), startLine, position);
+    }
+
+    private Token scanIdentifierOrKeyword() throws IOException {
+        int startLine = line;
+        StringBuilder sb = new StringBuilder();
+
+        while (!atEnd() && (Character.isLetterOrDigit(charAtPosition()) || charAtPosition() == '_')) {
+            sb.append(charAtPosition());
+            advance();
+        }
+
+        String lexeme = sb.toString();
+        byte type = Scanner.checkKeyword(lexeme);
+
+        if (type == IDENTIFIER) {
+            return new Token(type, lexeme, startLine, position, symbols.intern(lexeme));
+        }
+        return new Token(type, lexeme, startLine, position);
+    }
+
+    private Token scanOperatorOrDelimiter() throws IOException {
+        int startLine = line;
+        char currentChar = charAtPosition();
+        advance();
+
+        switch (currentChar) {
+            case '+':
+                return new Token(PLUS, "+", startLine, position);
+            case '*':
+                return new Token(MULTIPLY, "*", startLine, position);
+            case '/':
+                return new Token(DIVIDE, "/", startLine, position);
+            case '-':
+                if (charAtPosition() == '>') {
+                    advance();
+                    return new Token(ARROW, "->", startLine, position);
+                }
+                return new Token(MINUS, "-", startLine, position);
+            case '(':
+                return new Token(OPEN_PARENTHESIS, "(", startLine, position);
+            case ')':
+                return new Token(CLOSE_PARENTHESIS, ")", startLine, position);
+            case '{':
+                return new Token(OPEN_BRACE, "{", startLine, position);
+            case '}':
+                return new Token(CLOSE_BRACE, "}", startLine, position);
+            case ',':
+                return new Token(COMMA, ",", startLine, position);
+            case ':':
+                return new Token(COLON, ":", startLine, position);
+            case '=':
+                if (charAtPosition() == '=') {
+                    advance();
+                    return new Token(EQUAL, "==", startLine, position);
+                }
+                return new Token(ASSIGN, "=", startLine, position);
+            case '!':
+                if (charAtPosition() == '=') {
+                    advance();
+                    return new Token(NOT_EQUAL, "!=", startLine, position);
+                }
+                error("Unexpected '!' - did you mean '!='?");
+                return null;
+            case '<':
+                if (charAtPosition() == '=') {
+                    advance();
+                    return new Token(LESS_EQUAL, "<=", startLine, position);
+                }
+                return new Token(LESS_THAN, "<", startLine, position);
+            case '>':
+                if (charAtPosition() == '=') {
+                    advance();
+                    return new Token(GREATER_EQUAL, ">=", startLine, position);
+                }
+                return new Token(GREATER_THAN, ">", startLine, position);
+            default:
+                return null;
+        }
+    }
+
+    private void skipComment() throws IOException {
+        while (!atEnd() && charAtPosition() != '\n') {
+            advance();
+        }
+    }
+
+    private void advance() {
+        charWindow.position(charWindow.position() + 1);
+        position++;
+    }
+
+    private boolean atEnd() throws IOException {
+        return atEnd(0);
+    }
+
+    private boolean atEnd(int offset) throws IOException {
+        ensureAvailable(offset + 1);
+        return charWindow.remaining() <= offset;
+    }
+
+    private char charAtPosition() throws IOException {
+        ensureAvailable(1);
+        if (!charWindow.hasRemaining()) {
+            return '\0';
+        }
+        return charWindow.get(charWindow.position());
+    }
+
+    private char charAtOneAfterPosition() throws IOException {
+        ensureAvailable(2);
+        if (charWindow.remaining() < 2) {
+            return '\0';
+        }
+        return charWindow.get(charWindow.position() + 1);
+    }
+
+    /**
+     * Refills the char window until at least {@code count} chars are buffered or the channel is exhausted.
+     */
+    private void ensureAvailable(int count) throws IOException {
+        while (charWindow.remaining() < count && !endOfInput) {
+            charWindow.compact();
+
+            if (!channelExhausted && channel.read(byteWindow) < 0) {
+                channelExhausted = true;
+            }
+
+            byteWindow.flip();
+            CoderResult result = decoder.decode(byteWindow, charWindow, channelExhausted);
+            if (result.isError()) {
+                result.throwException();
+            }
+            boolean drained = !byteWindow.hasRemaining();
+            byteWindow.compact();
+
+            if (channelExhausted && drained) {
+                decoder.flush(charWindow);
+                endOfInput = true;
+            }
+
+            charWindow.flip();
+        }
+    }
+
+    private void error(String message) {
+        String errorMessage = String.format("Scanner Error (line %d): %s", line, message);
+        System.err.println(errorMessage);
+    }
+}
@@ -0,0 +1,89 @@
+package pl.peth.common.scanner;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * {@link TokenSource} that pulls tokens from a {@link StreamingScanner} as the parser advances.
+ * Only the current and the next token are held, so lexing and parsing interleave and token memory
+ * does not grow with the input.
+ */
+public class StreamingTokenSource implements TokenSource, ITokenWrapper {
+    private final StreamingScanner scanner;
+    private Token current;
+    private Token next;
+    private boolean failed;
+
+    public StreamingTokenSource(StreamingScanner scanner) {
+        this.scanner = scanner;
+        this.failed = false;
+        this.current = pull();
+        this.next = current.getType() == EOF_TOKEN ? current : pull();
+    }
+
+    private Token pull() {
+        Token token = scanner.nextToken();
+        if (token == null) {
+            failed = true;
+            return new Token(EOF_TOKEN, "EOF", scanner.getLine(), scanner.getPosition());
+        }
+        return token;
+    }
+
+    @Override
+    public byte getType() {
+        return current.getType();
+    }
+
+    @Override
+    public String getLexeme() {
+        return current.getLexeme();
+    }
+
+    @Override
+    public int getSymbol() {
+        return current.getSymbol();
+    }
+
+    @Override
+    public int getLine() {
+        return current.getLine();
+    }
+
+    @Override
+    public int getPosition() {
+        return current.getPosition();
+    }
+
+    @Override
+    public byte peekType() {
+        return next.getType();
+    }
+
+    @Override
+    public void advance() {
+        if (current.getType() == EOF_TOKEN) {
+            return;
+        }
+        current = next;
+        if (next.getType() != EOF_TOKEN) {
+            next = pull();
+        }
+    }
+
+    @Override
+    public SymbolTable getSymbolTable() {
+        return scanner.getSymbolTable();
+    }
+
+    @Override
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    @Override
+    public Token toToken() {
+        return current;
+    }
+}
@@ -0,0 +1,311 @@
+package pl.peth.common.scanner;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.tokens.ITokenWrapper;
+
+import static pl.peth.common.scanner.LexerTables.*;
+
+/**
+ * Lexer engine driven by the precomputed tables of {@link LexerTables}. Produces the same
+ * token stream as {@link Scanner}, but classifies every char with a single array lookup and
+ * recognizes keywords inside the automaton instead of switching over the finished lexeme.
+ */
+public class TableDrivenScanner implements ITokenWrapper {
+    static final int STEP_TOKEN = 0;
+    static final int STEP_EOF = 1;
+    static final int STEP_ERROR = 2;
+
+    private String input;
+    private int limit;
+    private int position;
+    private int line;
+    private int errorCount;
+    private boolean reportErrors;
+    private final List<Token> tokens;
+    private final SymbolTable symbols;
+
+    public TableDrivenScanner() {
+        this(new SymbolTable());
+    }
+
+    public TableDrivenScanner(SymbolTable symbols) {
+        this.input = "";
+        this.limit = 0;
+        this.position = 0;
+        this.line = 1;
+        this.tokens = new ArrayList<>();
+        this.symbols = symbols;
+        this.reportErrors = true;
+    }
+
+    public boolean scanFile(String fileName) {
+        if (!readFile(fileName)) {
+            return false;
+        }
+        return scan();
+    }
+
+    public boolean scan() {
+        tokens.clear();
+        return run(null);
+    }
+
+    /**
+     * Scans the input into a {@link TokenBuffer} without building a {@code Token} or a lexeme
+     * {@code String} per token. Returns {@code null} if scanning failed.
+     */
+    public TokenBuffer scanToBuffer() {
+        TokenBuffer buffer = new TokenBuffer(input, symbols, Math.max(16, input.length() / 8));
+        return run(buffer) ? buffer : null;
+    }
+
+    public TokenBuffer scanFileToBuffer(String fileName) {
+        if (!readFile(fileName)) {
+            return null;
+        }
+        return scanToBuffer();
+    }
+
+    private boolean run(TokenBuffer buffer) {
+        setRange(0, input.length(), 1);
+
+        int result;
+        do {
+            result = scanNext(buffer);
+        } while (result == STEP_TOKEN);
+
+        return result == STEP_EOF;
+    }
+
+    /**
+     * Moves the scanner to {@code position}, which must be a token boundary on {@code line}.
+     */
+    void seek(int position, int line) {
+        this.position = position;
+        this.line = line;
+    }
+
+    int getPosition() {
+        return position;
+    }
+
+    int getLine() {
+        return line;
+    }
+
+    /**
+     * Restricts scanning to {@code input[start, end)}, starting on {@code line}. Offsets of the
+     * produced tokens stay relative to the whole input.
+     */
+    void setRange(int start, int end, int line) {
+        this.position = start;
+        this.limit = end;
+        this.line = line;
+    }
+
+    /**
+     * Counts errors without printing them. Used when a caller rescans the input anyway to report them.
+     */
+    void setReportErrors(boolean reportErrors) {
+        this.reportErrors = reportErrors;
+    }
+
+    int getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Skips whitespace and comments and emits exactly one token, or the EOF token once the input is exhausted.
+     */
+    int scanNext(TokenBuffer buffer) {
+        final String input = this.input;
+        final int length = limit;
+
+        while (position < length) {
+            char currentChar = input.charAt(position);
+            int cls = classOf(currentChar);
+
+            if (cls == CLASS_WHITESPACE) {
+                position++;
+                continue;
+            }
+            if (cls == CLASS_NEWLINE) {
+                line++;
+                position++;
+                continue;
+            }
+            if (cls == CLASS_QUOTE) {
+                if (buffer != null) {
+                    skipString(buffer);
+                } else {
+                    tokens.add(scanString());
+                }
+                return STEP_TOKEN;
+            }
+
+            int start = position;
+            int state = START_STATE;
+            while (position < length) {
+                int next = next(state, classOf(input.charAt(position)));
+                if (next == DEAD_STATE) {
+                    break;
+                }
+                state = next;
+                position++;
+            }
+
+            byte type = ACCEPT[state];
+            if (type == ACCEPT_COMMENT) {
+                continue;
+            }
+            if (type == NO_TYPE) {
+                if (state == BANG_STATE) {
+                    error("Unexpected '!' - did you mean '!='?");
+                }
+                error("Unrecognized character: " + currentChar);
+                return STEP_ERROR;
+            }
+
+            int symbol = type == IDENTIFIER ? symbols.intern(input, start, position) : SymbolTable.NO_SYMBOL;
+
+            if (buffer != null) {
+                buffer.add(type, start, position, line, symbol);
+                return STEP_TOKEN;
+            }
+
+            String lexeme = FIXED_LEXEMES[type];
+            if (symbol != SymbolTable.NO_SYMBOL) {
+                lexeme = symbols.getName(symbol);
+            } else if (lexeme == null) {
+                lexeme = input.substring(start, position);
+            }
+            tokens.add(new Token(type, lexeme, line, position, symbol));
+            return STEP_TOKEN;
+        }
+
+        if (buffer != null) {
+            buffer.add(EOF_TOKEN, position, position, line, SymbolTable.NO_SYMBOL);
+        } else {
+            tokens.add(new Token(EOF_TOKEN, "EOF", line, position));
+        }
+        return STEP_EOF;
+    }
+
+    /**
+     * Buffer counterpart of {@link #scanString()}: records the raw content slice and leaves
+     * escape processing to {@link TokenBuffer#getLexeme(int)}.
+     */
+    private void skipString(TokenBuffer buffer) {
+        int startLine = line;
+        position++;
+        int start = position;
+
+        while (position < limit && input.charAt(position) != '"') {
+            char c = input.charAt(position);
+            if (c == '\\' && position + 1 < limit) {
+                position++;
+            } else if (c == '\n') {
+                error("Unterminated string literal");
+                buffer.add(STRING, start, position, startLine, SymbolTable.NO_SYMBOL);
+                return;
+            }
+            position++;
+        }
+
+        if (position >= limit) {
+            error("Unterminated string literal");
+        }
+        buffer.add(STRING, start, position, startLine, SymbolTable.NO_SYMBOL);
+        if (position < limit) {
+            position++;
+        }
+    }
+
+    private Token scanString() {
+        int startLine = line;
+        position++;
+        StringBuilder sb = new StringBuilder();
+
+        while (position < limit && input.charAt(position) != '"') {
+            char c = input.charAt(position);
+            if (c == '\\' && position + 1 < limit) {
+                position++;
+                char next = input.charAt(position);
+                switch (next) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    case '"' -> sb.append('"');
+                    case '\\' -> sb.append('\\');
+                    default -> sb.append(next);
+                }
+            } else if (c == '\n') {
+                error("Unterminated string literal");
+                return new Token(STRING, sb.toString(), startLine, position);
+            } else {
+                sb.append(c);
+            }
+            position++;
+        }
+
+        if (position >= limit) {
+            error("Unterminated string literal");
+        } else {
+            position++;
+        }
+
+        return new Token(STRING, sb.toString(), startLine, position);
+    }
+
+    public List<Token> getTokens() {
+        return tokens;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public void printTokens() {
+        System.out.println("=== TableDrivenScanner::Tokens ===");
+        for (Token token : tokens) {
+            System.out.println(token);
+        }
+    }
+
+    private boolean readFile(String fileName) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(fileName))) {
+            StringBuilder sb = new StringBuilder();
+            String line;
+
+            while ((line = reader.readLine()) != null) {
+                sb.append(line).append('\n');
+            }
+
+            setInput(sb.toString());
+            return true;
+        } catch (IOException ex) {
+            error("Error reading file: " + fileName);
+            return false;
+        }
+    }
+
+    public void setInput(String input) {
+        this.input = input;
+        this.limit = input.length();
+    }
+
+    private void error(String message) {
+        errorCount++;
+        if (!reportErrors) {
+            return;
+        }
+        String errorMessage = String.format("Scanner Error (line %d): %s", line, message);
+        System.err.println(errorMessage);
+    }
+}
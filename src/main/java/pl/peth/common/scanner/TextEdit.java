@@ -0,0 +1,48 @@
+package pl.peth.common.scanner;
+
+/**
+ * A single replacement in a source text: {@code removedLength} chars at {@code offset}
+ * are replaced by {@code insertedText}.
+ */
+public class TextEdit {
+    private final int offset;
+    private final int removedLength;
+    private final String insertedText;
+
+    public TextEdit(int offset, int removedLength, String insertedText) {
+        if (offset < 0 || removedLength < 0) {
+            throw new IllegalArgumentException("Invalid edit: offset=" + offset + ", removedLength=" + removedLength);
+        }
+        this.offset = offset;
+        this.removedLength = removedLength;
+        this.insertedText = insertedText == null ? "" : insertedText;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getRemovedLength() {
+        return removedLength;
+    }
+
+    public String getInsertedText() {
+        return insertedText;
+    }
+
+    /**
+     * Difference between the length of the text after and before the edit.
+     */
+    public int getLengthDelta() {
+        return insertedText.length() - removedLength;
+    }
+
+    public String applyTo(String source) {
+        return source.substring(0, offset) + insertedText + source.substring(offset + removedLength);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TextEdit(offset=%d, removed=%d, inserted='%s')", offset, removedLength, insertedText);
+    }
+}
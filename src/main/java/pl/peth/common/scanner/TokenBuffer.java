@@ -0,0 +1,193 @@
+package pl.peth.common.scanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Struct-of-arrays token storage. Types, source offsets and lines are kept in primitive arrays,
+ * lexemes are slices of the source and only turned into {@code String}s when asked for.
+ * For string literals the slice covers the raw content between the quotes. Buffers filled by
+ * {@link Utf8Scanner} use byte offsets into the encoded source instead of char offsets.
+ */
+public class TokenBuffer implements ITokenWrapper {
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final CharSequence source;
+    private final SymbolTable symbols;
+    private byte[] types;
+    private int[] starts;
+    private int[] ends;
+    private int[] lines;
+    private int[] symbolIds;
+    private int size;
+
+    public TokenBuffer(CharSequence source, SymbolTable symbols) {
+        this(source, symbols, DEFAULT_CAPACITY);
+    }
+
+    public TokenBuffer(CharSequence source, SymbolTable symbols, int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        this.source = source;
+        this.symbols = symbols;
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.lines = new int[capacity];
+        this.symbolIds = new int[capacity];
+        this.size = 0;
+    }
+
+    void add(byte type, int start, int end, int line, int symbol) {
+        if (size == types.length) {
+            grow();
+        }
+        types[size] = type;
+        starts[size] = start;
+        ends[size] = end;
+        lines[size] = line;
+        symbolIds[size] = symbol;
+        size++;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Sets the size to {@code newSize}, so that slots below it can be filled by {@link #copyFrom}.
+     */
+    void resize(int newSize) {
+        while (types.length < newSize) {
+            grow();
+        }
+        size = newSize;
+    }
+
+    /**
+     * Copies the first {@code count} tokens of {@code chunk} to {@code destination}, moving their lines
+     * by {@code lineOffset} and translating symbol ids of the chunk's table through {@code symbolMap}.
+     * Copies into disjoint ranges may run concurrently.
+     */
+    void copyFrom(TokenBuffer chunk, int count, int destination, int lineOffset, int[] symbolMap) {
+        System.arraycopy(chunk.types, 0, types, destination, count);
+        System.arraycopy(chunk.starts, 0, starts, destination, count);
+        System.arraycopy(chunk.ends, 0, ends, destination, count);
+        for (int i = 0; i < count; i++) {
+            lines[destination + i] = chunk.lines[i] + lineOffset;
+            int symbol = chunk.symbolIds[i];
+            symbolIds[destination + i] = symbol == SymbolTable.NO_SYMBOL ? symbol : symbolMap[symbol];
+        }
+    }
+
+    private void grow() {
+        int capacity = types.length * 2;
+        types = Arrays.copyOf(types, capacity);
+        starts = Arrays.copyOf(starts, capacity);
+        ends = Arrays.copyOf(ends, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        symbolIds = Arrays.copyOf(symbolIds, capacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public byte getType(int index) {
+        return types[index];
+    }
+
+    public int getStart(int index) {
+        return starts[index];
+    }
+
+    public int getEnd(int index) {
+        return ends[index];
+    }
+
+    public int getLine(int index) {
+        return lines[index];
+    }
+
+    public int getSymbol(int index) {
+        return symbolIds[index];
+    }
+
+    /**
+     * Source offset just behind the token, matching {@link Token#getPosition()} of the {@link Scanner}.
+     */
+    public int getPosition(int index) {
+        int end = ends[index];
+        if (types[index] == STRING && end < source.length() && source.charAt(end) == '"') {
+            return end + 1;
+        }
+        return end;
+    }
+
+    public String getLexeme(int index) {
+        byte type = types[index];
+        if (type == EOF_TOKEN) {
+            return "EOF";
+        }
+        if (type > 0 && LexerTables.FIXED_LEXEMES[type] != null) {
+            return LexerTables.FIXED_LEXEMES[type];
+        }
+        if (type == STRING) {
+            if (source instanceof Utf8Source utf8) {
+                String raw = utf8.decode(starts[index], ends[index]);
+                return unescape(raw, 0, raw.length());
+            }
+            return unescape(source, starts[index], ends[index]);
+        }
+        if (symbolIds[index] != SymbolTable.NO_SYMBOL) {
+            return symbols.getName(symbolIds[index]);
+        }
+        return source.subSequence(starts[index], ends[index]).toString();
+    }
+
+    public Token toToken(int index) {
+        return new Token(types[index], getLexeme(index), lines[index], getPosition(index), symbolIds[index]);
+    }
+
+    public List<Token> toTokens() {
+        List<Token> tokens = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            tokens.add(toToken(i));
+        }
+        return tokens;
+    }
+
+    private static String unescape(CharSequence source, int start, int end) {
+        StringBuilder sb = null;
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                if (sb == null) {
+                    sb = new StringBuilder(end - start);
+                    sb.append(source, start, i);
+                }
+                char next = source.charAt(++i);
+                switch (next) {
+                    case 'n' -> sb.append('\n');
+                    case 't' -> sb.append('\t');
+                    default -> sb.append(next);
+                }
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb == null ? source.subSequence(start, end).toString() : sb.toString();
+    }
+}
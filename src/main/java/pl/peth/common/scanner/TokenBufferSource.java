@@ -0,0 +1,75 @@
+package pl.peth.common.scanner;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * {@link TokenSource} over a {@link TokenBuffer} or a range of it. Lexemes are only materialized
+ * when asked for. A range ends with an EOF token in place of the first token behind it.
+ */
+public class TokenBufferSource implements TokenSource, ITokenWrapper {
+    private final TokenBuffer buffer;
+    private final int end;
+    private int index;
+
+    public TokenBufferSource(TokenBuffer buffer) {
+        this(buffer, 0, Math.max(0, buffer.size() - 1));
+    }
+
+    /**
+     * Source over the tokens {@code [from, to)}; the token at {@code to} reads as EOF.
+     */
+    public TokenBufferSource(TokenBuffer buffer, int from, int to) {
+        this.buffer = buffer;
+        this.end = to;
+        this.index = from;
+    }
+
+    @Override
+    public byte getType() {
+        return index < end ? buffer.getType(index) : EOF_TOKEN;
+    }
+
+    @Override
+    public String getLexeme() {
+        return index < end ? buffer.getLexeme(index) : "EOF";
+    }
+
+    @Override
+    public int getSymbol() {
+        return index < end ? buffer.getSymbol(index) : SymbolTable.NO_SYMBOL;
+    }
+
+    @Override
+    public int getLine() {
+        return index < buffer.size() ? buffer.getLine(index) : 0;
+    }
+
+    @Override
+    public int getPosition() {
+        return index < buffer.size() ? buffer.getPosition(index) : 0;
+    }
+
+    @Override
+    public byte peekType() {
+        return index + 1 < end ? buffer.getType(index + 1) : EOF_TOKEN;
+    }
+
+    @Override
+    public void advance() {
+        if (index < end) {
+            index++;
+        }
+    }
+
+    @Override
+    public SymbolTable getSymbolTable() {
+        return buffer.getSymbolTable();
+    }
+
+    @Override
+    public Token toToken() {
+        return index < end ? buffer.toToken(index) : TokenSource.super.toToken();
+    }
+}
@@ -0,0 +1,74 @@
+package pl.peth.common.scanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.peth.common.Token;
+
+/**
+ * Result of relexing an edit: the old tokens {@code [startIndex, startIndex + removedCount)} are
+ * replaced by {@code insertedTokens}. All old tokens behind the replaced range are unchanged except
+ * that their positions move by {@code positionDelta} and their lines by {@code lineDelta}.
+ */
+public class TokenDelta {
+    private final int startIndex;
+    private final int removedCount;
+    private final List<Token> insertedTokens;
+    private final int positionDelta;
+    private final int lineDelta;
+
+    public TokenDelta(int startIndex, int removedCount, List<Token> insertedTokens, int positionDelta, int lineDelta) {
+        this.startIndex = startIndex;
+        this.removedCount = removedCount;
+        this.insertedTokens = insertedTokens;
+        this.positionDelta = positionDelta;
+        this.lineDelta = lineDelta;
+    }
+
+    public int getStartIndex() {
+        return startIndex;
+    }
+
+    public int getRemovedCount() {
+        return removedCount;
+    }
+
+    public List<Token> getInsertedTokens() {
+        return insertedTokens;
+    }
+
+    public int getPositionDelta() {
+        return positionDelta;
+    }
+
+    public int getLineDelta() {
+        return lineDelta;
+    }
+
+    /**
+     * Builds the complete token list after the edit. Unlike the delta itself this is linear in the
+     * number of tokens, because every token behind the edit gets its position shifted.
+     */
+    public List<Token> applyTo(List<Token> previousTokens) {
+        List<Token> tokens = new ArrayList<>(previousTokens.size() - removedCount + insertedTokens.size());
+        tokens.addAll(previousTokens.subList(0, startIndex));
+        tokens.addAll(insertedTokens);
+
+        for (int i = startIndex + removedCount; i < previousTokens.size(); i++) {
+            Token token = previousTokens.get(i);
+            if (positionDelta == 0 && lineDelta == 0) {
+                tokens.add(token);
+            } else {
+                tokens.add(new Token(token.getType(), token.getLexeme(), token.getLine() + lineDelta,
+                        token.getPosition() + positionDelta, token.getSymbol()));
+            }
+        }
+        return tokens;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TokenDelta(start=%d, removed=%d, inserted=%d, positionDelta=%d, lineDelta=%d)",
+                startIndex, removedCount, insertedTokens.size(), positionDelta, lineDelta);
+    }
+}
@@ -0,0 +1,85 @@
+package pl.peth.common.scanner;
+
+import java.util.List;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * {@link TokenSource} over an already scanned token list.
+ */
+public class TokenListSource implements TokenSource, ITokenWrapper {
+    private final List<Token> tokens;
+    private final SymbolTable symbols;
+    private final boolean symbolsValid;
+    private int index;
+
+    /**
+     * @param symbolsValid whether the symbol ids of the tokens were assigned by {@code symbols};
+     *                     if not, the source reports no ids and names have to be interned again
+     */
+    public TokenListSource(List<Token> tokens, SymbolTable symbols, boolean symbolsValid) {
+        this.tokens = tokens;
+        this.symbols = symbols;
+        this.symbolsValid = symbolsValid;
+        this.index = 0;
+    }
+
+    @Override
+    public byte getType() {
+        return index < tokens.size() ? tokens.get(index).getType() : EOF_TOKEN;
+    }
+
+    @Override
+    public String getLexeme() {
+        return index < tokens.size() ? tokens.get(index).getLexeme() : "EOF";
+    }
+
+    @Override
+    public int getSymbol() {
+        return symbolsValid && index < tokens.size() ? tokens.get(index).getSymbol() : SymbolTable.NO_SYMBOL;
+    }
+
+    @Override
+    public int getLine() {
+        return index < tokens.size() ? tokens.get(index).getLine() : 0;
+    }
+
+    @Override
+    public int getPosition() {
+        return index < tokens.size() ? tokens.get(index).getPosition() : 0;
+    }
+
+    @Override
+    public byte peekType() {
+        return index + 1 < tokens.size() ? tokens.get(index + 1).getType() : EOF_TOKEN;
+    }
+
+    @Override
+    public void advance() {
+        if (index + 1 < tokens.size()) {
+            index++;
+        }
+    }
+
+    @Override
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * The current token, without its symbol id unless the ids are valid.
+     */
+    @Override
+    public Token toToken() {
+        if (index >= tokens.size()) {
+            return TokenSource.super.toToken();
+        }
+        Token token = tokens.get(index);
+        if (symbolsValid || token.getSymbol() == SymbolTable.NO_SYMBOL) {
+            return token;
+        }
+        return new Token(token.getType(), token.getLexeme(), token.getLine(), token.getPosition(), SymbolTable.NO_SYMBOL);
+    }
+}
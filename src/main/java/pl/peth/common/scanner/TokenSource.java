@@ -0,0 +1,47 @@
+package pl.peth.common.scanner;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+
+/**
+ * Cursor over a token stream that a parser pulls tokens from. Only the current token and the type
+ * of the one after it are visible, so an implementation can produce tokens on demand and hold a
+ * constant number of them. Once the EOF token is current, {@link #advance()} leaves it current.
+ */
+public interface TokenSource {
+    byte getType();
+
+    /**
+     * Lexeme of the current token; for identifiers the name they were interned under.
+     */
+    String getLexeme();
+
+    /**
+     * Symbol id of the current identifier, or {@link SymbolTable#NO_SYMBOL} if the token carries none.
+     */
+    int getSymbol();
+
+    int getLine();
+
+    int getPosition();
+
+    /**
+     * Type of the token after the current one.
+     */
+    byte peekType();
+
+    void advance();
+
+    SymbolTable getSymbolTable();
+
+    /**
+     * Whether producing the tokens failed. A failed source ends with an EOF token.
+     */
+    default boolean hasFailed() {
+        return false;
+    }
+
+    default Token toToken() {
+        return new Token(getType(), getLexeme(), getLine(), getPosition(), getSymbol());
+    }
+}
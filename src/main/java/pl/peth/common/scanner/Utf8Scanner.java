@@ -0,0 +1,255 @@
+package pl.peth.common.scanner;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.tokens.ITokenWrapper;
+
+import static pl.peth.common.scanner.LexerTables.*;
+
+/**
+ * Lexer engine that works directly on UTF-8 encoded bytes, so a source file can be scanned from a
+ * memory-mapped buffer without decoding it into a {@code String} first. ASCII bytes are classified
+ * with the tables of {@link LexerTables}; a multi-byte sequence is decoded only to classify it,
+ * which in practice happens inside identifiers and string literals. Identifiers made of ASCII only
+ * are interned straight from the bytes.
+ * <p>
+ * Produces the same tokens as {@link TableDrivenScanner#scanToBuffer()}, except that offsets are
+ * byte offsets and that line endings and the final newline are taken as they are in the file.
+ * <p>
+ * When vectorized, runs of whitespace and comment bodies are skipped a vector of bytes at a time by
+ * {@code VectorSkipper}. That class needs the incubating Vector API and is only part of builds made
+ * with {@code -PvectorSkipper}; without it, or without the module at run time, the scanner stays on
+ * the scalar path.
+ */
+public class Utf8Scanner implements ITokenWrapper {
+    private static final char REPLACEMENT = '\uFFFD';
+    private static final String VECTOR_SKIPPER = "pl.peth.common.scanner.VectorSkipper";
+    private static final IWhitespaceSkipper VECTOR_SKIPPING = loadVectorSkipping();
+
+    private final SymbolTable symbols;
+    private final IWhitespaceSkipper skipper;
+    private ByteBuffer bytes;
+    private Utf8Source source;
+    private int length;
+    private int position;
+    private int line;
+    private int width;
+
+    public Utf8Scanner() {
+        this(new SymbolTable());
+    }
+
+    public Utf8Scanner(SymbolTable symbols) {
+        this(symbols, false);
+    }
+
+    /**
+     * @param vectorized whether to skip whitespace and comments with the Vector API if it is available
+     */
+    public Utf8Scanner(SymbolTable symbols, boolean vectorized) {
+        this.symbols = symbols;
+        this.skipper = vectorized ? VECTOR_SKIPPING : null;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public boolean isVectorized() {
+        return skipper != null;
+    }
+
+    public static boolean isVectorSkippingAvailable() {
+        return VECTOR_SKIPPING != null;
+    }
+
+    private static IWhitespaceSkipper loadVectorSkipping() {
+        try {
+            return (IWhitespaceSkipper) Class.forName(VECTOR_SKIPPER).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Maps the file into memory and scans it. Returns {@code null} if the file cannot be read or scanning failed.
+     */
+    public TokenBuffer scanFile(String fileName) {
+        try (FileChannel channel = FileChannel.open(Path.of(fileName), StandardOpenOption.READ)) {
+            return scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException ex) {
+            System.err.println("Scanner Error: Error reading file: " + fileName);
+            return null;
+        }
+    }
+
+    /**
+     * Scans the remaining bytes of {@code input}. The returned buffer keeps a view of them, so they
+     * must not change while its lexemes are used. Returns {@code null} if scanning failed.
+     */
+    public TokenBuffer scan(ByteBuffer input) {
+        bytes = input.slice();
+        source = new Utf8Source(bytes);
+        length = bytes.limit();
+        position = 0;
+        line = 1;
+
+        TokenBuffer buffer = new TokenBuffer(source, symbols, Math.max(16, length / 8));
+        while (position < length) {
+            int start = position;
+            int cls = classAt(position);
+
+            // A single separating space is cheaper to step over than to hand to the vector path.
+            if (skipper != null && width == 1) {
+                if ((cls == CLASS_WHITESPACE || cls == CLASS_NEWLINE) && position + 1 < length
+                        && bytes.get(position + 1) <= ' ') {
+                    long skipped = skipper.skipWhitespace(bytes, position, length);
+                    position = (int) skipped;
+                    line += (int) (skipped >>> 32);
+                    continue;
+                }
+                if (cls == CLASS_SLASH && position + 1 < length && bytes.get(position + 1) == '/') {
+                    position = skipper.findNewline(bytes, position + 2, length);
+                    continue;
+                }
+            }
+
+            if (cls == CLASS_WHITESPACE) {
+                position += width;
+                continue;
+            }
+            if (cls == CLASS_NEWLINE) {
+                line++;
+                position++;
+                continue;
+            }
+            if (cls == CLASS_QUOTE) {
+                skipString(buffer);
+                continue;
+            }
+
+            int firstWidth = width;
+            boolean ascii = true;
+            int state = START_STATE;
+            while (position < length) {
+                byte b = bytes.get(position);
+                int next;
+                int step = 1;
+                if (b >= 0) {
+                    next = next(state, CHAR_CLASS[b]);
+                } else {
+                    next = next(state, classAt(position));
+                    step = width;
+                }
+                if (next == DEAD_STATE) {
+                    break;
+                }
+                state = next;
+                ascii &= step == 1;
+                position += step;
+            }
+
+            byte type = ACCEPT[state];
+            if (type == ACCEPT_COMMENT) {
+                continue;
+            }
+            if (type == NO_TYPE) {
+                if (state == BANG_STATE) {
+                    error("Unexpected '!' - did you mean '!='?");
+                }
+                error("Unrecognized character: " + source.decode(start, start + firstWidth));
+                return null;
+            }
+
+            int symbol = SymbolTable.NO_SYMBOL;
+            if (type == IDENTIFIER) {
+                symbol = ascii ? symbols.intern(source, start, position) : symbols.intern(source.decode(start, position));
+            }
+            buffer.add(type, start, position, line, symbol);
+        }
+
+        buffer.add(EOF_TOKEN, position, position, line, SymbolTable.NO_SYMBOL);
+        return buffer;
+    }
+
+    /**
+     * Records the raw content of a string literal. Quote, backslash and newline are ASCII and UTF-8
+     * continuation bytes never look like ASCII, so the literal can be delimited without decoding it.
+     */
+    private void skipString(TokenBuffer buffer) {
+        int startLine = line;
+        position++;
+        int start = position;
+
+        while (position < length && bytes.get(position) != '"') {
+            byte b = bytes.get(position);
+            if (b == '\\' && position + 1 < length) {
+                position++;
+            } else if (b == '\n') {
+                error("Unterminated string literal");
+                buffer.add(STRING, start, position, startLine, SymbolTable.NO_SYMBOL);
+                return;
+            }
+            position++;
+        }
+
+        if (position >= length) {
+            error("Unterminated string literal");
+        }
+        buffer.add(STRING, start, position, startLine, SymbolTable.NO_SYMBOL);
+        if (position < length) {
+            position++;
+        }
+    }
+
+    /**
+     * Returns the char class of the character starting at {@code index} and stores its length in bytes in {@link #width}.
+     */
+    private int classAt(int index) {
+        byte lead = bytes.get(index);
+        if (lead >= 0) {
+            width = 1;
+            return CHAR_CLASS[lead];
+        }
+        return classOf(decodeAt(index, lead & 0xFF));
+    }
+
+    /**
+     * Decodes a multi-byte sequence. Characters outside the BMP are surrogate pairs for the char based
+     * scanners and never valid in a token, so they decode to {@link #REPLACEMENT} like malformed input.
+     */
+    private char decodeAt(int index, int lead) {
+        if (lead >= 0xC2 && lead <= 0xDF && isContinuation(index + 1)) {
+            width = 2;
+            return (char) (((lead & 0x1F) << 6) | (bytes.get(index + 1) & 0x3F));
+        }
+        if (lead >= 0xE0 && lead <= 0xEF && isContinuation(index + 1) && isContinuation(index + 2)) {
+            char c = (char) (((lead & 0x0F) << 12) | ((bytes.get(index + 1) & 0x3F) << 6) | (bytes.get(index + 2) & 0x3F));
+            if (c >= 0x800 && !Character.isSurrogate(c)) {
+                width = 3;
+                return c;
+            }
+        }
+        if (lead >= 0xF0 && lead <= 0xF4 && isContinuation(index + 1) && isContinuation(index + 2)
+                && isContinuation(index + 3)) {
+            width = 4;
+            return REPLACEMENT;
+        }
+        width = 1;
+        return REPLACEMENT;
+    }
+
+    private boolean isContinuation(int index) {
+        return index < length && (bytes.get(index) & 0xC0) == 0x80;
+    }
+
+    private void error(String message) {
+        String errorMessage = String.format("Scanner Error (line %d): %s", line, message);
+        System.err.println(errorMessage);
+    }
+}
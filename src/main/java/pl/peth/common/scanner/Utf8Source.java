@@ -0,0 +1,51 @@
+package pl.peth.common.scanner;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * UTF-8 encoded source text seen as a {@link CharSequence} of bytes. Indices are byte offsets and
+ * {@link #charAt(int)} returns each byte as one char, which is exact for ASCII only.
+ * {@link #subSequence(int, int)} decodes the range, so its length can differ from {@code end - start}.
+ */
+final class Utf8Source implements CharSequence {
+    private final ByteBuffer bytes;
+
+    Utf8Source(ByteBuffer bytes) {
+        this.bytes = bytes;
+    }
+
+    ByteBuffer getBytes() {
+        return bytes;
+    }
+
+    @Override
+    public int length() {
+        return bytes.limit();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes.get(index) & 0xFF);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return decode(start, end);
+    }
+
+    String decode(int start, int end) {
+        return new String(copy(start, end), StandardCharsets.UTF_8);
+    }
+
+    private byte[] copy(int start, int end) {
+        byte[] copy = new byte[end - start];
+        bytes.get(start, copy);
+        return copy;
+    }
+
+    @Override
+    public String toString() {
+        return decode(0, length());
+    }
+}
@@ -0,0 +1,57 @@
+package pl.peth.generator;
+
+import java.util.List;
+
+/**
+ * Code of one function generated on its own, as if the function started at address 0. Jump targets
+ * are relative to the chunk, string literals index the chunk's own strings and calls are left to
+ * {@link #getRelocations() relocations}, so the chunk can be placed anywhere in a program.
+ */
+final class CodeChunk {
+    private final List<Instruction> instructions;
+    private final List<Relocation> relocations;
+    private final List<String> strings;
+    private final int[] stringPushes;
+    private final int functionSymbol;
+    private final String functionName;
+
+    CodeChunk(List<Instruction> instructions, List<Relocation> relocations, List<String> strings,
+              int[] stringPushes, int functionSymbol, String functionName) {
+        this.instructions = instructions;
+        this.relocations = relocations;
+        this.strings = strings;
+        this.stringPushes = stringPushes;
+        this.functionSymbol = functionSymbol;
+        this.functionName = functionName;
+    }
+
+    List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    List<Relocation> getRelocations() {
+        return relocations;
+    }
+
+    List<String> getStrings() {
+        return strings;
+    }
+
+    /**
+     * Ascending indices of the {@code PUSH} instructions whose operand is an index into {@link #getStrings()}.
+     */
+    int[] getStringPushes() {
+        return stringPushes;
+    }
+
+    /**
+     * Symbol id of the generated function, or {@code NO_SYMBOL} if no code was generated.
+     */
+    int getFunctionSymbol() {
+        return functionSymbol;
+    }
+
+    String getFunctionName() {
+        return functionName;
+    }
+}
@@ -1,19 +1,40 @@
 package pl.peth.generator;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import pl.peth.common.SymbolTable;
+import pl.peth.common.parser.CompactTree;
 import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.parser.SyntaxTreeVisitor;
 import pl.peth.common.tokens.ITokenWrapper;
 
 public class CodeGenerator implements ITokenWrapper {
     private final List<Instruction> instructions;
-    private final Map<String, Integer> functionTable;
-    private final Map<String, Integer> localVariableOffsets;
-    private final Map<String, Integer> globalVariableOffsets;
     private final List<String> stringTable;
+    private final List<Integer> stringPushes;
+    private final SymbolTable symbols;
+    private final ExpressionEmitter expressionEmitter;
+    private final Linker linker;
+
+    // Name resolution is indexed by symbol id. An entry is only valid while its stamp
+    // equals the current epoch, so switching functions does not need to clear anything.
+    private int[] functionAddresses;
+    private int[] functionStamps;
+    private int[] globalVariableOffsets;
+    private int[] globalStamps;
+    private int[] localVariableOffsets;
+    private int[] localStamps;
+    private int generationEpoch;
+    private int functionEpoch;
+
+    private int[] definedFunctions;
+    private String[] definedFunctionNames;
+    private int functionCount;
+    private int mainAddress;
 
     private int currentOffset;
     private int labelCounter;
@@ -22,13 +43,35 @@ public class CodeGenerator implements ITokenWrapper {
     private int localVariableCounter;
     private int globalVariableCounter;
     private boolean inScope;
+    private boolean debugInfo;
 
     public CodeGenerator() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * @param symbols the table the syntax tree was interned with; only consulted for nodes that carry no symbol id
+     */
+    public CodeGenerator(SymbolTable symbols) {
         this.instructions = new ArrayList<>();
-        this.functionTable = new HashMap<>();
-        this.localVariableOffsets = new HashMap<>();
-        this.globalVariableOffsets = new HashMap<>();
         this.stringTable = new ArrayList<>();
+        this.stringPushes = new ArrayList<>();
+        this.symbols = symbols;
+        this.expressionEmitter = new ExpressionEmitter();
+        this.linker = new Linker();
+        int capacity = Math.max(16, symbols.size());
+        this.functionAddresses = new int[capacity];
+        this.functionStamps = new int[capacity];
+        this.globalVariableOffsets = new int[capacity];
+        this.globalStamps = new int[capacity];
+        this.localVariableOffsets = new int[capacity];
+        this.localStamps = new int[capacity];
+        this.generationEpoch = 0;
+        this.functionEpoch = 0;
+        this.definedFunctions = new int[16];
+        this.definedFunctionNames = new String[16];
+        this.functionCount = 0;
+        this.mainAddress = -1;
         this.currentOffset = 0;
         this.labelCounter = 0;
         this.currentFunction = null;
@@ -36,40 +79,181 @@ public class CodeGenerator implements ITokenWrapper {
         this.localVariableCounter = 0;
         this.globalVariableCounter = 0;
         this.inScope = false;
+        this.debugInfo = true;
     }
 
+    /**
+     * Returns the code of the whole program, or {@code null} if it calls functions that are not
+     * defined; {@link #getUnresolvedSymbols()} then lists those calls.
+     */
     public List<Instruction> generate(SyntaxTree syntaxTree) {
-        instructions.clear();
-        functionTable.clear();
-        globalVariableOffsets.clear();
-        globalVariableCounter = 0;
+        int mainCallIndex = generatePrologue(syntaxTree);
 
-        collectGlobalVariables(syntaxTree);
+        for (SyntaxTree child : syntaxTree.getChildren()) {
+            if (child.getType() == FUNCTION) {
+                generateFunction(child);
+            }
+        }
 
-        if(globalVariableCounter > 0) {
-            emit(OperationCode.ENTER, globalVariableCounter).withComment("enter::global_variables::" + globalVariableCounter);
+        return finishGeneration(mainCallIndex);
+    }
+
+    /**
+     * Generates code for a {@link CompactTree}. Globals are collected from the compact nodes directly;
+     * every other top-level declaration is inflated into a {@link SyntaxTree} only while its code is
+     * generated, so at most one declaration exists as objects at a time. Returns {@code null} like
+     * {@link #generate(SyntaxTree)} if a called function is not defined.
+     */
+    public List<Instruction> generate(CompactTree tree) {
+        beginGeneration();
+
+        int root = tree.getRoot();
+        for (int declaration = tree.getFirstChild(root); declaration != CompactTree.NO_NODE; declaration = tree.getNextSibling(declaration)) {
+            if (tree.getKind(declaration) == VARIABLE_DECLARATION && tree.getSymbol(declaration) != SymbolTable.NO_SYMBOL) {
+                declareGlobal(ensureSymbolCapacity(tree.getSymbol(declaration)));
+            }
         }
+        emitGlobalFrame();
 
-        generateGlobalInitializations(syntaxTree);
+        for (int declaration = tree.getFirstChild(root); declaration != CompactTree.NO_NODE; declaration = tree.getNextSibling(declaration)) {
+            if (tree.getKind(declaration) == VARIABLE_DECLARATION) {
+                generateGlobalInitialization(tree.toSyntaxTree(declaration));
+            }
+        }
 
-        emit(OperationCode.CALL, 0).withComment("call::main");
-        int mainCallIndex = instructions.size() - 1;
-        emit(OperationCode.HALT).withComment("call::halt");
+        int mainCallIndex = emitMainCall();
 
-        for (SyntaxTree child : syntaxTree.getChildren()) {
-            if (child.getType() == FUNCTION) {
-                generateFunction(child);
+        for (int declaration = tree.getFirstChild(root); declaration != CompactTree.NO_NODE; declaration = tree.getNextSibling(declaration)) {
+            if (tree.getKind(declaration) == FUNCTION) {
+                generateFunction(tree.toSyntaxTree(declaration));
+            }
+        }
+
+        return finishGeneration(mainCallIndex);
+    }
+
+    /**
+     * Starts a new program with the global variables, their initialization and the call of {@code main}.
+     * Returns the index of that call, which {@link #finishGeneration(int)} patches.
+     */
+    int generatePrologue(SyntaxTree syntaxTree) {
+        beginGeneration();
+
+        collectGlobalVariables(syntaxTree);
+        emitGlobalFrame();
+        generateGlobalInitializations(syntaxTree);
+
+        return emitMainCall();
+    }
+
+    /**
+     * Returns a generator for compiling functions of the current program into {@link CodeChunk}s on
+     * another thread. It shares the symbol table and starts with a copy of the global variables.
+     */
+    CodeGenerator forkForFunctions() {
+        CodeGenerator fork = new CodeGenerator(symbols);
+        fork.ensureSymbolCapacity(globalStamps.length - 1);
+        System.arraycopy(globalVariableOffsets, 0, fork.globalVariableOffsets, 0, globalVariableOffsets.length);
+        System.arraycopy(globalStamps, 0, fork.globalStamps, 0, globalStamps.length);
+        fork.generationEpoch = generationEpoch;
+        fork.functionEpoch = functionEpoch;
+        fork.globalVariableCounter = globalVariableCounter;
+        fork.debugInfo = debugInfo;
+        return fork;
+    }
+
+    /**
+     * Generates {@code function} on its own, as if it started at address 0.
+     */
+    CodeChunk generateChunk(SyntaxTree function) {
+        instructions.clear();
+        stringTable.clear();
+        stringPushes.clear();
+        linker.clear();
+
+        generateFunction(function);
+
+        int symbol = SymbolTable.NO_SYMBOL;
+        String functionName = function.getAttribute("name");
+        if (!instructions.isEmpty()) {
+            symbol = symbolOf(function, functionName);
+        }
+        int[] pushes = new int[stringPushes.size()];
+        for (int i = 0; i < pushes.length; i++) {
+            pushes[i] = stringPushes.get(i);
+        }
+        return new CodeChunk(new ArrayList<>(instructions), new ArrayList<>(linker.getRelocations()),
+                new ArrayList<>(stringTable), pushes, symbol, functionName);
+    }
+
+    /**
+     * Appends a chunk to the current program, moving its jumps, string indices and call sites behind
+     * the code and strings generated so far.
+     */
+    void appendChunk(CodeChunk chunk) {
+        int base = instructions.size();
+        int stringBase = stringTable.size();
+
+        if (chunk.getFunctionSymbol() != SymbolTable.NO_SYMBOL) {
+            defineFunction(ensureSymbolCapacity(chunk.getFunctionSymbol()), chunk.getFunctionName(), base);
+        }
+
+        List<Instruction> code = chunk.getInstructions();
+        int[] pushes = chunk.getStringPushes();
+        int nextPush = 0;
+        for (int i = 0; i < code.size(); i++) {
+            Instruction instruction = code.get(i);
+            OperationCode opCode = instruction.getOpCode();
+            if (opCode == OperationCode.JMP || opCode == OperationCode.JZ || opCode == OperationCode.JNZ) {
+                instruction = withOperand(instruction, instruction.getOperand() + base);
+            } else if (nextPush < pushes.length && pushes[nextPush] == i) {
+                instruction = withStringIndex(instruction, instruction.getOperand() + stringBase);
+                nextPush++;
             }
+            instructions.add(instruction);
+        }
+
+        stringTable.addAll(chunk.getStrings());
+        for (Relocation relocation : chunk.getRelocations()) {
+            ensureSymbolCapacity(relocation.getSymbol());
+        }
+        linker.addRelocations(chunk.getRelocations(), base);
+    }
+
+    private void beginGeneration() {
+        instructions.clear();
+        stringPushes.clear();
+        linker.clear();
+        generationEpoch++;
+        functionEpoch++;
+        functionCount = 0;
+        mainAddress = -1;
+        globalVariableCounter = 0;
+    }
+
+    private void emitGlobalFrame() {
+        if(globalVariableCounter > 0) {
+            emit(OperationCode.ENTER, globalVariableCounter, DebugKind.ENTER_GLOBALS);
         }
+    }
+
+    private int emitMainCall() {
+        emit(OperationCode.CALL, 0, DebugKind.CALL_MAIN);
+        int mainCallIndex = instructions.size() - 1;
+        emit(OperationCode.HALT, DebugKind.CALL_HALT);
+        return mainCallIndex;
+    }
+
+    List<Instruction> finishGeneration(int mainCallIndex) {
+        boolean linked = linker.link(instructions, symbol -> functionStamps[symbol] == generationEpoch ? functionAddresses[symbol] : Linker.UNDEFINED);
 
-        if (functionTable.containsKey("main")) {
-            int mainAddress = functionTable.get("main");
-            instructions.set(mainCallIndex, new Instruction(OperationCode.CALL, mainAddress).withComment("call::main"));
+        if (mainAddress >= 0) {
+            instructions.set(mainCallIndex, withOperand(instructions.get(mainCallIndex), mainAddress));
         } else {
             error("No main function found!");
         }
 
-        return instructions;
+        return linked ? instructions : null;
     }
 
     private void collectGlobalVariables(SyntaxTree node) {
@@ -79,33 +263,44 @@ public class CodeGenerator implements ITokenWrapper {
             for(SyntaxTree child: node.getChildren()){
                 if(child.getType() == VARIABLE_DECLARATION) {
                     String globalVariableName = child.getAttribute("name");
-                    if(globalVariableName != null && !globalVariableOffsets.containsKey(globalVariableName)) {
-                        globalVariableOffsets.put(globalVariableName, globalVariableCounter);
-                        globalVariableCounter++;
+                    if(globalVariableName != null) {
+                        declareGlobal(symbolOf(child, globalVariableName));
                     }
                 }
             }
         } 
     }
 
+    private void declareGlobal(int symbol) {
+        if(globalStamps[symbol] != generationEpoch) {
+            globalStamps[symbol] = generationEpoch;
+            globalVariableOffsets[symbol] = globalVariableCounter;
+            globalVariableCounter++;
+        }
+    }
+
     public void generateGlobalInitializations(SyntaxTree node) {
         if(node == null || node.getType() != PROGRAM) return;
 
         for(SyntaxTree child: node.getChildren()){
             if(child.getType() == VARIABLE_DECLARATION) {
-                String globalVariableName = child.getAttribute("name");
-                int offset = globalVariableOffsets.get(globalVariableName);
-
-                if(child.getChildCount() > 0) {
-                    generateNode(child.getChild(0));
-                } else {
-                    emit(OperationCode.PUSH, 0).withComment("global::default::" + globalVariableName);
-                }
-                emit(OperationCode.GSTORE, offset).withComment("gstore::init::" + globalVariableName);
+                generateGlobalInitialization(child);
             }
         }
     }
 
+    private void generateGlobalInitialization(SyntaxTree node) {
+        String globalVariableName = node.getAttribute("name");
+        int offset = globalVariableOffsets[symbolOf(node, globalVariableName)];
+
+        if(node.getChildCount() > 0) {
+            generateNode(node.getChild(0));
+        } else {
+            emit(OperationCode.PUSH, 0, DebugKind.GLOBAL_DEFAULT, globalVariableName);
+        }
+        emit(OperationCode.GSTORE, offset, DebugKind.GSTORE_INIT, globalVariableName);
+    }
+
     public void generateNode(SyntaxTree node) {
         if (node == null) return;
 
@@ -118,34 +313,8 @@ public class CodeGenerator implements ITokenWrapper {
             case RETURN -> generateReturn(node);
             case IF -> generateIf(node);
             case WHILE -> generateWhile(node);
-            case EXPRESSION -> generateExpression(node);
-            case STRING -> {
-                String strValue = node.getValue();
-                int strIndex = stringTable.size();
-                stringTable.add(strValue);
-                emit(OperationCode.PUSH, strIndex).withComment("push::string::index::" + strIndex);
-            }
-            case TERM -> generateTerm(node);
-            case FACTOR -> generateFactor(node);
-            case FUNCTION_CALL -> generateFunctionCall(node);
-            case CONDITION -> generateCondition(node);
-            case NUMERIC -> {
-                int value = Integer.parseInt(node.getValue());
-                emit(OperationCode.PUSH, value).withComment("push::numeric::" + value);
-            }
-            case IDENTIFIER -> {
-                String identifierName = node.getValue();
-                if(localVariableOffsets.containsKey(identifierName)) {
-                    int offset = localVariableOffsets.get(identifierName);
-                    emit(OperationCode.LOAD, offset).withComment("load::local::" + identifierName);
-                } else if(globalVariableOffsets.containsKey(identifierName)) {
-                    int offset = globalVariableOffsets.get(identifierName);
-                    emit(OperationCode.GLOAD, offset).withComment("gload::global::" + identifierName);
-                } else {
-                    error("Undefined identifier: " + identifierName);
-                    emit(OperationCode.PUSH, 0).withComment("undefined::" + identifierName);
-                }
-            }
+            case EXPRESSION, TERM, FACTOR, CONDITION, FUNCTION_CALL, NUMERIC, STRING, IDENTIFIER ->
+                    node.walk(expressionEmitter);
             case VARIABLE_DECLARATION -> {
                 if(this.inScope) {
                     generateVariableDeclaration(node);
@@ -158,12 +327,14 @@ public class CodeGenerator implements ITokenWrapper {
                     String value = child.getValue();
                     int index = stringTable.size();
                     stringTable.add(value);
-                    emit(OperationCode.PUSH, index).withComment("push::string_index::" + index);
-                    emit(OperationCode.PRINT_STR).withComment("print_str");
+                    stringPushes.add(instructions.size());
+                    emit(OperationCode.PUSH, index, DebugKind.PUSH_STRING_INDEX);
+                    emit(OperationCode.PRINT_STR, DebugKind.PRINT_STR);
                 } else {
                     // Numerischer Ausdruck
                     generateNode(child);
-                    emit(OperationCode.PRINT).withComment("print");
+                    emit(OperationCode.PRINT, DebugKind.PRINT);
+                    emit(OperationCode.POP, DebugKind.DISCARD);
                 }
             }
             default -> {
@@ -202,14 +373,14 @@ public class CodeGenerator implements ITokenWrapper {
         }
 
         this.currentFunction = functionName;
-        this.functionTable.put(functionName, this.instructions.size());
+        defineFunction(symbolOf(node, functionName), functionName, this.instructions.size());
         this.inScope = true;
         
-        this.localVariableOffsets.clear();
+        this.functionEpoch++;
         this.currentOffset = 0;
         this.localVariableCounter = 0;
 
-        List<String> functionParameters = new ArrayList<>();
+        List<SyntaxTree> functionParameters = new ArrayList<>();
         if (parameterNodes != null) {
             extractParameters(parameterNodes, functionParameters);
         }
@@ -217,19 +388,19 @@ public class CodeGenerator implements ITokenWrapper {
         int parameterCount = functionParameters.size();
         this.currentParameterCounter = parameterCount;
         for(int i = 0; i < parameterCount; i++) {
-            String parameterName = functionParameters.get(i);
+            SyntaxTree parameter = functionParameters.get(i);
             int offset = -(parameterCount - i + 2);
-            this.localVariableOffsets.put(parameterName, offset);
+            defineLocal(symbolOf(parameter, parameter.getAttribute("name")), offset);
         }
 
         countLocalVariables(blockNode);
 
-        emit(OperationCode.ENTER, this.localVariableCounter).withLabel(functionName).withComment(String.format("enter::%s::locals::%d", functionName, this.localVariableCounter));
+        emit(OperationCode.ENTER, this.localVariableCounter, DebugKind.ENTER_FUNCTION, functionName).withLabel(functionName);
         
         generateBlock(blockNode);
 
-        emit(OperationCode.PUSH, 0).withComment("push::default_return_value");
-        emit(OperationCode.RET, currentParameterCounter).withComment("exit::"+functionName);
+        emit(OperationCode.PUSH, 0, DebugKind.DEFAULT_RETURN_VALUE);
+        emit(OperationCode.RET, currentParameterCounter, DebugKind.EXIT, functionName);
 
         this.inScope = false;
         currentFunction = null;
@@ -239,22 +410,24 @@ public class CodeGenerator implements ITokenWrapper {
 
     private void countLocalVariables(SyntaxTree node) {
         if (node == null) return;
-        
-        if (node.getType() == VARIABLE_DECLARATION) {
-            this.localVariableCounter++;
-        }
-        
-        for (SyntaxTree child : node.getChildren()) {
-            countLocalVariables(child);
-        }
+
+        node.walk(new SyntaxTreeVisitor() {
+            @Override
+            public boolean enter(SyntaxTree child) {
+                if (child.getType() == VARIABLE_DECLARATION) {
+                    localVariableCounter++;
+                }
+                return true;
+            }
+        });
     }
 
-    private void extractParameters(SyntaxTree node, List<String> parameters) {
+    private void extractParameters(SyntaxTree node, List<SyntaxTree> parameters) {
         for(SyntaxTree parameterChild : node.getChildren()) {
             if(parameterChild.getType() == PARAMETER) {
                 String parameterName = parameterChild.getAttribute("name");
                 if(parameterName != null) {
-                    parameters.add(parameterName);
+                    parameters.add(parameterChild);
                 }
             }
         }
@@ -269,15 +442,15 @@ public class CodeGenerator implements ITokenWrapper {
         }
 
         int offset = this.currentOffset;
-        this.localVariableOffsets.put(variableName, offset);
+        defineLocal(symbolOf(node, variableName), offset);
         currentOffset++;
 
         if(node.getChildCount() > 0) {
             generateNode(node.getChild(0));
-            emit(OperationCode.STORE, offset).withComment("store::init::" + variableName);
+            emit(OperationCode.STORE, offset, DebugKind.STORE_INIT, variableName);
         } else {
-            emit(OperationCode.PUSH, 0).withComment("variable::default::" + variableName);
-            emit(OperationCode.STORE, offset).withComment("store::default::" + variableName);
+            emit(OperationCode.PUSH, 0, DebugKind.VARIABLE_DEFAULT, variableName);
+            emit(OperationCode.STORE, offset, DebugKind.STORE_DEFAULT, variableName);
         }
     }
 
@@ -295,12 +468,13 @@ public class CodeGenerator implements ITokenWrapper {
             emit(OperationCode.PUSH, 0);
         }
 
-        if(localVariableOffsets.containsKey(variableName)) {
-            int offset = localVariableOffsets.get(variableName);
-            emit(OperationCode.STORE, offset).withComment("store::local::" + variableName);
-        } else if(globalVariableOffsets.containsKey(variableName)) {
-            int offset = globalVariableOffsets.get(variableName);
-            emit(OperationCode.GSTORE, offset).withComment("gstore::global::" + variableName);
+        int symbol = symbolOf(node, variableName);
+        if(localStamps[symbol] == functionEpoch) {
+            int offset = localVariableOffsets[symbol];
+            emit(OperationCode.STORE, offset, DebugKind.STORE_LOCAL, variableName);
+        } else if(globalStamps[symbol] == generationEpoch) {
+            int offset = globalVariableOffsets[symbol];
+            emit(OperationCode.GSTORE, offset, DebugKind.GSTORE_GLOBAL, variableName);
         } else {
             error("Undefined variable in assigntment: " + variableName);
         }
@@ -311,18 +485,29 @@ public class CodeGenerator implements ITokenWrapper {
             byte type = child.getType();
             if(type != OPEN_BRACE && type != CLOSE_BRACE) {
                 generateNode(child);
+                if(isExpression(type)) {
+                    // Statements leave the stack as they found it
+                    emit(OperationCode.POP, DebugKind.DISCARD);
+                }
             }
         }
     }
 
+    private static boolean isExpression(byte type) {
+        return switch(type) {
+            case EXPRESSION, TERM, FACTOR, CONDITION, FUNCTION_CALL, NUMERIC, STRING, IDENTIFIER -> true;
+            default -> false;
+        };
+    }
+
     private void generateReturn(SyntaxTree node) {
        if(node.getChildCount() > 0){
             generateNode(node.getChild(0));
         } else {
-            emit(OperationCode.PUSH, 0).withComment("return::default_value");
+            emit(OperationCode.PUSH, 0, DebugKind.RETURN_DEFAULT_VALUE);
         }
 
-        emit(OperationCode.RET, currentParameterCounter).withComment("return::" + currentFunction);
+        emit(OperationCode.RET, currentParameterCounter, DebugKind.RETURN, currentFunction);
     }
 
     private void generateIf(SyntaxTree node) {
@@ -356,11 +541,11 @@ public class CodeGenerator implements ITokenWrapper {
 
         generateCondition(conditionNode);
         int jumpToElseIndex = this.instructions.size();
-        emit(OperationCode.JZ, 0).withComment("if_false::jump_to_else");
+        emit(OperationCode.JZ, 0, DebugKind.IF_FALSE);
 
         generateBlock(thenBlockNode);
         endJumps.add(instructions.size());
-        emit(OperationCode.JMP, 0).withComment("if_end::jump_to_end");
+        emit(OperationCode.JMP, 0, DebugKind.IF_END);
 
         patchJump(jumpToElseIndex, instructions.size());
 
@@ -379,13 +564,13 @@ public class CodeGenerator implements ITokenWrapper {
             if (elseIfCondition != null) {
                 generateCondition(elseIfCondition);
                 int elseIfJumpIndex = instructions.size();
-                emit(OperationCode.JZ, 0).withComment("elseif_false::jump_to_next");
+                emit(OperationCode.JZ, 0, DebugKind.ELSEIF_FALSE);
 
                 if (elseIfBlock != null) {
                     generateBlock(elseIfBlock);
                 }
                 endJumps.add(instructions.size());
-                emit(OperationCode.JMP, 0).withComment("elseif_end::jump_to_end");
+                emit(OperationCode.JMP, 0, DebugKind.ELSEIF_END);
 
                 patchJump(elseIfJumpIndex, instructions.size());
             }
@@ -431,10 +616,10 @@ public class CodeGenerator implements ITokenWrapper {
 
         generateCondition(conditionNode);
         int exitJumpIndex = this.instructions.size();
-        emit(OperationCode.JZ, 0).withComment("while_exit::jump");
+        emit(OperationCode.JZ, 0, DebugKind.WHILE_EXIT);
 
         generateBlock(blockNode);
-        emit(OperationCode.JMP, loopStart).withComment("while_loop::jump_back");
+        emit(OperationCode.JMP, loopStart, DebugKind.WHILE_LOOP);
 
         patchJump(exitJumpIndex, instructions.size());
     }
@@ -454,7 +639,7 @@ public class CodeGenerator implements ITokenWrapper {
 
         generateCondition(children.get(i));
         int jumpToNextIndex = this.instructions.size();
-        emit(OperationCode.JZ, 0).withComment("elseif_false::jump_to_next");
+        emit(OperationCode.JZ, 0, DebugKind.ELSEIF_FALSE);
         i++;
 
         while(i < children.size() && children.get(i).getType() != BLOCK){
@@ -466,7 +651,7 @@ public class CodeGenerator implements ITokenWrapper {
         }
 
         int jumpToEndIndex = this.instructions.size();
-        emit(OperationCode.JMP, 0).withComment("elseif_end::jump_to_end");
+        emit(OperationCode.JMP, 0, DebugKind.ELSEIF_END);
         endJumps.add(jumpToEndIndex);
 
         patchJump(jumpToEndIndex, instructions.size());
@@ -482,48 +667,7 @@ public class CodeGenerator implements ITokenWrapper {
     }
 
     private void generateCondition(SyntaxTree node) {
-        List<SyntaxTree> children = node.getChildren();
-        String operator = node.getAttribute("operator");
-       
-        if (children.size() < 2) {
-            error("Condition requires two operands");
-            return;
-        }
-
-        generateNode(children.get(0));
-        generateNode(children.get(1));
-
-         if (operator != null) {
-            switch (operator) {
-                case "==" -> emit(OperationCode.CMP_EQ).withComment("condition::equals");
-                case "!=" -> emit(OperationCode.CMP_NEQ).withComment("condition::not_equals");
-                case "<" -> emit(OperationCode.CMP_LT).withComment("condition::less_than");
-                case "<=" -> emit(OperationCode.CMP_LTE).withComment("condition::less_equal");
-                case ">" -> emit(OperationCode.CMP_GT).withComment("condition::greater_than");
-                case ">=" -> emit(OperationCode.CMP_GTE).withComment("condition::greater_equal");
-                default -> error("Unknown comparison operator: " + operator);
-            }
-        }
-    }
-
-    private void generateExpression(SyntaxTree node) {
-        List<SyntaxTree> children = node.getChildren();
-        String operator = node.getAttribute("operator");
-        
-        if (children.size() >= 2 && operator != null) {
-            generateNode(children.get(0));
-            generateNode(children.get(1));
-            
-            switch (operator) {
-                case "+" -> emit(OperationCode.ADD).withComment("expression::add");
-                case "-" -> emit(OperationCode.SUB).withComment("expression::sub");
-                default -> error("Unknown expression operator: " + operator);
-            }
-        } else {
-            for (SyntaxTree child : children) {
-                generateNode(child);
-            }
-        }
+        node.walk(expressionEmitter);
     }
 
     private void generateRightExpression(SyntaxTree node) {
@@ -538,9 +682,9 @@ public class CodeGenerator implements ITokenWrapper {
             } else if(type == MINUS) {
                 pendingOperation = OperationCode.SUB;
             } else if(type == TERM) {
-                generateTerm(child);
+                generateNode(child);
                 if(pendingOperation != null) {
-                    emit(pendingOperation).withComment("expression::" + pendingOperation.name().toLowerCase());
+                    emit(pendingOperation, pendingOperation == OperationCode.ADD ? DebugKind.EXPRESSION_ADD : DebugKind.EXPRESSION_SUB);
                     pendingOperation = null;
                 }
             } else if (type == RIGHT_EXPRESSION){
@@ -549,27 +693,6 @@ public class CodeGenerator implements ITokenWrapper {
         }
     }
 
-    private void generateTerm(SyntaxTree node) {
-        List<SyntaxTree> children = node.getChildren();
-        String operator = node.getAttribute("operator");
-
-
-        if (children.size() >= 2 && operator != null) {
-            generateNode(children.get(0));
-            generateNode(children.get(1));
-            
-            switch (operator) {
-                case "*" -> emit(OperationCode.MUL).withComment("term::mul");
-                case "/" -> emit(OperationCode.DIV).withComment("term::div");
-                default -> error("Unknown term operator: " + operator);
-            }
-        } else {
-            for (SyntaxTree child : children) {
-                generateNode(child);
-            }
-        }
-    }
-
     private void generateRightTerm(SyntaxTree node) {
         List<SyntaxTree> children = node.getChildren();
         OperationCode pendingOperation = null;
@@ -582,9 +705,9 @@ public class CodeGenerator implements ITokenWrapper {
             } else if(type == DIVIDE) {
                 pendingOperation = OperationCode.DIV;
             } else if(type == FACTOR) {
-                generateFactor(child);
+                generateNode(child);
                 if(pendingOperation != null) {
-                    emit(pendingOperation).withComment("term::" + pendingOperation.name().toLowerCase());
+                    emit(pendingOperation, pendingOperation == OperationCode.MUL ? DebugKind.TERM_MUL : DebugKind.TERM_DIV);
                     pendingOperation = null;
                 }
             } else if (type == RIGHT_TERM){
@@ -593,28 +716,178 @@ public class CodeGenerator implements ITokenWrapper {
         }
     }
 
-    private void generateFactor(SyntaxTree node) {
-        for (SyntaxTree child : node.getChildren()) {
-            generateNode(child);
+    /**
+     * Emits the code of an expression in post-order: the operands of a node first, then its operator.
+     * The tree is walked with an explicit stack, so long operator chains do not grow the call stack.
+     * Anything that is not part of an expression is handed back to {@link #generateNode}.
+     */
+    private class ExpressionEmitter implements SyntaxTreeVisitor {
+        @Override
+        public boolean enter(SyntaxTree node) {
+            switch (node.getType()) {
+                case EXPRESSION, TERM, FACTOR, NUMERIC, STRING, IDENTIFIER -> {
+                    return true;
+                }
+                case CONDITION -> {
+                    if (node.getChildCount() < 2) {
+                        error("Condition requires two operands");
+                        return false;
+                    }
+                    return true;
+                }
+                case FUNCTION_CALL -> {
+                    if (node.getAttribute("name") == null) {
+                        error("Function call missing function name.");
+                        return false;
+                    }
+                    return true;
+                }
+                default -> {
+                    generateNode(node);
+                    return false;
+                }
+            }
+        }
+
+        @Override
+        public void leave(SyntaxTree node) {
+            switch (node.getType()) {
+                case EXPRESSION -> emitExpressionOperator(node);
+                case TERM -> emitTermOperator(node);
+                case CONDITION -> emitConditionOperator(node);
+                case FUNCTION_CALL -> emitFunctionCall(node);
+                case STRING -> {
+                    String strValue = node.getValue();
+                    int strIndex = stringTable.size();
+                    stringTable.add(strValue);
+                    stringPushes.add(instructions.size());
+                    emit(OperationCode.PUSH, strIndex, DebugKind.PUSH_STRING);
+                }
+                case NUMERIC -> {
+                    int value = Integer.parseInt(node.getValue());
+                    emit(OperationCode.PUSH, value, DebugKind.PUSH_NUMERIC);
+                }
+                case IDENTIFIER -> {
+                    String identifierName = node.getValue();
+                    int symbol = symbolOf(node, identifierName);
+                    if(localStamps[symbol] == functionEpoch) {
+                        int offset = localVariableOffsets[symbol];
+                        emit(OperationCode.LOAD, offset, DebugKind.LOAD_LOCAL, identifierName);
+                    } else if(globalStamps[symbol] == generationEpoch) {
+                        int offset = globalVariableOffsets[symbol];
+                        emit(OperationCode.GLOAD, offset, DebugKind.GLOAD_GLOBAL, identifierName);
+                    } else {
+                        error("Undefined identifier: " + identifierName);
+                        emit(OperationCode.PUSH, 0, DebugKind.UNDEFINED, identifierName);
+                    }
+                }
+                default -> {
+                }
+            }
         }
     }
 
-    private void generateFunctionCall(SyntaxTree node) {
-        String functionName = node.getAttribute("name");
+    private void emitConditionOperator(SyntaxTree node) {
+        String operator = node.getAttribute("operator");
 
-        if (functionName == null) {
-            error("Function call missing function name.");
-            return;
+        if (operator != null) {
+            switch (operator) {
+                case "==" -> emit(OperationCode.CMP_EQ, DebugKind.CONDITION_EQUALS);
+                case "!=" -> emit(OperationCode.CMP_NEQ, DebugKind.CONDITION_NOT_EQUALS);
+                case "<" -> emit(OperationCode.CMP_LT, DebugKind.CONDITION_LESS_THAN);
+                case "<=" -> emit(OperationCode.CMP_LTE, DebugKind.CONDITION_LESS_EQUAL);
+                case ">" -> emit(OperationCode.CMP_GT, DebugKind.CONDITION_GREATER_THAN);
+                case ">=" -> emit(OperationCode.CMP_GTE, DebugKind.CONDITION_GREATER_EQUAL);
+                default -> error("Unknown comparison operator: " + operator);
+            }
         }
+    }
+
+    private void emitExpressionOperator(SyntaxTree node) {
+        String operator = node.getAttribute("operator");
 
-        int argumentCount = 0;
-        for (SyntaxTree child : node.getChildren()) {
-            generateNode(child);
-            argumentCount++;
+        if (node.getChildCount() >= 2 && operator != null) {
+            switch (operator) {
+                case "+" -> emit(OperationCode.ADD, DebugKind.EXPRESSION_ADD);
+                case "-" -> emit(OperationCode.SUB, DebugKind.EXPRESSION_SUB);
+                default -> error("Unknown expression operator: " + operator);
+            }
         }
+    }
 
-        int callAddress = functionTable.getOrDefault(functionName, 0);
-        emit(OperationCode.CALL, callAddress).withComment("call::" + functionName + "::args::" + argumentCount);
+    private void emitTermOperator(SyntaxTree node) {
+        String operator = node.getAttribute("operator");
+
+        if (node.getChildCount() >= 2 && operator != null) {
+            switch (operator) {
+                case "*" -> emit(OperationCode.MUL, DebugKind.TERM_MUL);
+                case "/" -> emit(OperationCode.DIV, DebugKind.TERM_DIV);
+                default -> error("Unknown term operator: " + operator);
+            }
+        }
+    }
+
+    private void emitFunctionCall(SyntaxTree node) {
+        String functionName = node.getAttribute("name");
+        int argumentCount = node.getChildCount();
+
+        int symbol = symbolOf(node, functionName);
+        linker.addRelocation(new Relocation(instructions.size(), symbol, functionName));
+        emit(OperationCode.CALL, 0, DebugKind.CALL, functionName, argumentCount);
+    }
+
+    /**
+     * Symbol id of the name a node declares or refers to. Nodes built without the parser carry
+     * no id; their names are interned here so they end up in the same id space.
+     */
+    private int symbolOf(SyntaxTree node, String name) {
+        int symbol = node.getSymbol();
+        if (symbol == SymbolTable.NO_SYMBOL) {
+            // Generators forked for parallel code generation share the table.
+            synchronized (symbols) {
+                symbol = symbols.intern(name);
+            }
+        }
+        return ensureSymbolCapacity(symbol);
+    }
+
+    private int ensureSymbolCapacity(int symbol) {
+        if (symbol >= localStamps.length) {
+            growSymbolTables(symbol + 1);
+        }
+        return symbol;
+    }
+
+    private void growSymbolTables(int minimumCapacity) {
+        int capacity = Math.max(minimumCapacity, localStamps.length * 2);
+        functionAddresses = Arrays.copyOf(functionAddresses, capacity);
+        functionStamps = Arrays.copyOf(functionStamps, capacity);
+        globalVariableOffsets = Arrays.copyOf(globalVariableOffsets, capacity);
+        globalStamps = Arrays.copyOf(globalStamps, capacity);
+        localVariableOffsets = Arrays.copyOf(localVariableOffsets, capacity);
+        localStamps = Arrays.copyOf(localStamps, capacity);
+    }
+
+    private void defineLocal(int symbol, int offset) {
+        localStamps[symbol] = functionEpoch;
+        localVariableOffsets[symbol] = offset;
+    }
+
+    private void defineFunction(int symbol, String functionName, int address) {
+        if (functionStamps[symbol] != generationEpoch) {
+            if (functionCount == definedFunctions.length) {
+                definedFunctions = Arrays.copyOf(definedFunctions, functionCount * 2);
+                definedFunctionNames = Arrays.copyOf(definedFunctionNames, functionCount * 2);
+            }
+            definedFunctions[functionCount] = symbol;
+            definedFunctionNames[functionCount] = functionName;
+            functionCount++;
+        }
+        functionStamps[symbol] = generationEpoch;
+        functionAddresses[symbol] = address;
+        if (functionName.equals("main")) {
+            mainAddress = address;
+        }
     }
 
     private Instruction emit(OperationCode opCode) {
@@ -629,16 +902,54 @@ public class CodeGenerator implements ITokenWrapper {
         return instruction;
     }
 
+    private Instruction emit(OperationCode opCode, DebugKind kind) {
+        return emit(opCode, 0, kind, null, 0);
+    }
+
+    private Instruction emit(OperationCode opCode, int operand, DebugKind kind) {
+        return emit(opCode, operand, kind, null, operand);
+    }
+
+    private Instruction emit(OperationCode opCode, int operand, DebugKind kind, String name) {
+        return emit(opCode, operand, kind, name, operand);
+    }
+
+    /**
+     * Emits an instruction with a comment of the given kind; in release builds the comment is left out.
+     */
+    private Instruction emit(OperationCode opCode, int operand, DebugKind kind, String name, int value) {
+        Instruction instruction = emit(opCode, operand);
+        if (debugInfo) {
+            instruction.withComment(kind, name, value);
+        }
+        return instruction;
+    }
+
     private String newLabel(String prefix) {
         return prefix + "_" + (labelCounter++);
     }
 
     private void patchJump(int instructionIndex, int targetAddress) {
         Instruction old = instructions.get(instructionIndex);
-        Instruction patched = new Instruction(old.getOpCode(), targetAddress).withComment(old.getComment());
+        Instruction patched = new Instruction(old.getOpCode(), targetAddress).withCommentOf(old);
         instructions.set(instructionIndex, patched);
     }
 
+    private static Instruction withOperand(Instruction instruction, int operand) {
+        return new Instruction(instruction.getOpCode(), operand)
+                .withLabel(instruction.getLabel())
+                .withCommentOf(instruction);
+    }
+
+    /**
+     * Moves a string push to {@code index}; its comment shows the index, so it moves along.
+     */
+    private static Instruction withStringIndex(Instruction instruction, int index) {
+        Instruction moved = withOperand(instruction, index);
+        return instruction.getDebugKind() == null ? moved
+                : moved.withComment(instruction.getDebugKind(), instruction.getDebugName(), index);
+    }
+
     public void printCode() {
         System.out.println("Generated Instructions:");
         for(int i = 0; i < instructions.size(); i++) {
@@ -652,10 +963,47 @@ public class CodeGenerator implements ITokenWrapper {
         return instructions;
     }
 
+    /**
+     * Packs the last generated program for execution.
+     */
+    public CompiledProgram compile() {
+        return CompiledProgram.compile(instructions, stringTable, globalVariableCounter);
+    }
+
     public Map<String, Integer> getFunctionTable() {
+        Map<String, Integer> functionTable = new LinkedHashMap<>();
+        for (int i = 0; i < functionCount; i++) {
+            functionTable.put(definedFunctionNames[i], functionAddresses[definedFunctions[i]]);
+        }
         return functionTable;
     }
 
+    /**
+     * Call sites of the last generated program; their targets have already been patched.
+     */
+    public List<Relocation> getRelocations() {
+        return linker.getRelocations();
+    }
+
+    /**
+     * Calls of the last generated program to functions that are not defined; empty if it linked.
+     */
+    public List<Relocation> getUnresolvedSymbols() {
+        return linker.getUnresolved();
+    }
+
+    /**
+     * Release builds pass {@code false}: instructions then carry no comments and listings show only the code.
+     * Labels of functions are kept. Enabled by default.
+     */
+    public void setDebugInfo(boolean debugInfo) {
+        this.debugInfo = debugInfo;
+    }
+
+    public boolean isDebugInfo() {
+        return debugInfo;
+    }
+
     public int getGlobalVariableCounter() {
         return globalVariableCounter;
     }
@@ -0,0 +1,181 @@
+package pl.peth.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Executable form of a program: every instruction takes two consecutive ints of one flat array, its
+ * operation code from {@link IOperationCodes} and its operand. Addresses stay instruction indices, so
+ * the instruction at address {@code a} starts at {@code code[2 * a]}. Labels are only needed for
+ * listings and kept in a side table, together with the strings and the number of globals the program
+ * needs at run time. Comments form an optional debug section of (kind, name, number) records, which
+ * is left out entirely when no instruction has a comment, as in release builds.
+ */
+public class CompiledProgram implements IOperationCodes {
+    private static final OperationCode[] OPERATION_CODES = decodeTable();
+
+    private final int[] code;
+    private final String[] labels;
+    private final DebugKind[] debugKinds;
+    private final String[] debugNames;
+    private final int[] debugValues;
+    private final List<String> stringTable;
+    private final int globalVariableCount;
+
+    private CompiledProgram(int[] code, String[] labels, DebugKind[] debugKinds, String[] debugNames,
+                            int[] debugValues, List<String> stringTable, int globalVariableCount) {
+        this.code = code;
+        this.labels = labels;
+        this.debugKinds = debugKinds;
+        this.debugNames = debugNames;
+        this.debugValues = debugValues;
+        this.stringTable = stringTable;
+        this.globalVariableCount = globalVariableCount;
+    }
+
+    public static CompiledProgram compile(List<Instruction> instructions, List<String> stringTable,
+                                          int globalVariableCount) {
+        int size = instructions.size();
+        int[] code = new int[size * 2];
+        String[] labels = new String[size];
+        DebugKind[] debugKinds = null;
+        String[] debugNames = null;
+        int[] debugValues = null;
+
+        for (int i = 0; i < size; i++) {
+            Instruction instruction = instructions.get(i);
+            code[2 * i] = encode(instruction.getOpCode());
+            code[2 * i + 1] = instruction.getOperand();
+            labels[i] = instruction.getLabel();
+            if (instruction.hasComment()) {
+                if (debugKinds == null) {
+                    debugKinds = new DebugKind[size];
+                    debugNames = new String[size];
+                    debugValues = new int[size];
+                }
+                debugKinds[i] = instruction.getDebugKind();
+                debugNames[i] = instruction.getDebugName();
+                debugValues[i] = instruction.getDebugValue();
+            }
+        }
+        return new CompiledProgram(code, labels, debugKinds, debugNames, debugValues,
+                new ArrayList<>(stringTable), globalVariableCount);
+    }
+
+    /**
+     * Number of instructions.
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * The packed instructions; must not be modified.
+     */
+    public int[] getCode() {
+        return code;
+    }
+
+    public OperationCode getOpCode(int address) {
+        return decode(code[2 * address]);
+    }
+
+    public int getOperand(int address) {
+        return code[2 * address + 1];
+    }
+
+    public String getLabel(int address) {
+        return labels[address];
+    }
+
+    public String getComment(int address) {
+        return debugKinds == null || debugKinds[address] == null ? null
+                : debugKinds[address].format(debugNames[address], debugValues[address]);
+    }
+
+    /**
+     * Whether the program carries a debug section.
+     */
+    public boolean hasDebugInfo() {
+        return debugKinds != null;
+    }
+
+    public List<String> getStringTable() {
+        return stringTable;
+    }
+
+    public int getGlobalVariableCount() {
+        return globalVariableCount;
+    }
+
+    public Instruction getInstruction(int address) {
+        Instruction instruction = new Instruction(getOpCode(address), getOperand(address))
+                .withLabel(labels[address]);
+        if (debugKinds != null) {
+            instruction.withComment(debugKinds[address], debugNames[address], debugValues[address]);
+        }
+        return instruction;
+    }
+
+    public List<Instruction> toInstructions() {
+        List<Instruction> instructions = new ArrayList<>(size());
+        for (int i = 0; i < size(); i++) {
+            instructions.add(getInstruction(i));
+        }
+        return instructions;
+    }
+
+    public void printCode() {
+        System.out.println("Compiled Program:");
+        for (int i = 0; i < size(); i++) {
+            System.out.printf("%04d: %s%n", i, getInstruction(i).toByteString(i));
+        }
+        System.out.println("--------------------------");
+    }
+
+    public static int encode(OperationCode opCode) {
+        return switch (opCode) {
+            case PUSH -> OP_PUSH;
+            case LOAD -> OP_LOAD;
+            case STORE -> OP_STORE;
+            case GLOAD -> OP_GLOAD;
+            case GSTORE -> OP_GSTORE;
+            case POP -> OP_POP;
+            case DUP -> OP_DUP;
+            case ADD -> OP_ADD;
+            case SUB -> OP_SUB;
+            case MUL -> OP_MUL;
+            case DIV -> OP_DIV;
+            case NEG -> OP_NEG;
+            case CMP_EQ -> OP_CMP_EQ;
+            case CMP_NEQ -> OP_CMP_NEQ;
+            case CMP_GT -> OP_CMP_GT;
+            case CMP_LT -> OP_CMP_LT;
+            case CMP_GTE -> OP_CMP_GTE;
+            case CMP_LTE -> OP_CMP_LTE;
+            case JMP -> OP_JMP;
+            case JZ -> OP_JZ;
+            case JNZ -> OP_JNZ;
+            case CALL -> OP_CALL;
+            case RET -> OP_RET;
+            case ENTER -> OP_ENTER;
+            case LEAVE -> OP_LEAVE;
+            case NOP -> OP_NOP;
+            case HALT -> OP_HALT;
+            case PRINT -> OP_PRINT;
+            case PRINT_STR -> OP_PRINT_STR;
+        };
+    }
+
+    public static OperationCode decode(int code) {
+        return code >= 0 && code < OPERATION_CODES.length ? OPERATION_CODES[code] : null;
+    }
+
+    private static OperationCode[] decodeTable() {
+        OperationCode[] table = new OperationCode[OperationCode.values().length];
+        for (OperationCode opCode : OperationCode.values()) {
+            table[encode(opCode)] = opCode;
+        }
+        return table;
+    }
+}
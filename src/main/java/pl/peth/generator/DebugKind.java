@@ -0,0 +1,74 @@
+package pl.peth.generator;
+
+/**
+ * Comments of generated instructions. An instruction only records its kind together with a name and
+ * a number; the text is formatted when a listing asks for it, so code generation builds no strings.
+ * The patterns refer to the name as {@code %1$s} and to the number as {@code %2$d}.
+ */
+public enum DebugKind {
+    TEXT("%1$s"),                                    // Free comment, the name is the whole text
+
+    // == Program ==
+    ENTER_GLOBALS("enter::global_variables::%2$d"),
+    CALL_MAIN("call::main"),
+    CALL_HALT("call::halt"),
+    GLOBAL_DEFAULT("global::default::%1$s"),
+    GSTORE_INIT("gstore::init::%1$s"),
+
+    // == Functions ==
+    ENTER_FUNCTION("enter::%1$s::locals::%2$d"),
+    DEFAULT_RETURN_VALUE("push::default_return_value"),
+    EXIT("exit::%1$s"),
+    RETURN_DEFAULT_VALUE("return::default_value"),
+    RETURN("return::%1$s"),
+    CALL("call::%1$s::args::%2$d"),
+
+    // == Variables ==
+    STORE_INIT("store::init::%1$s"),
+    VARIABLE_DEFAULT("variable::default::%1$s"),
+    STORE_DEFAULT("store::default::%1$s"),
+    STORE_LOCAL("store::local::%1$s"),
+    GSTORE_GLOBAL("gstore::global::%1$s"),
+    LOAD_LOCAL("load::local::%1$s"),
+    GLOAD_GLOBAL("gload::global::%1$s"),
+    UNDEFINED("undefined::%1$s"),
+    DUP_FORWARD("dup::forward"),
+    DISCARD("pop::statement_value"),
+
+    // == Values ==
+    PUSH_NUMERIC("push::numeric::%2$d"),
+    PUSH_STRING("push::string::index::%2$d"),
+    PUSH_STRING_INDEX("push::string_index::%2$d"),
+    PRINT("print"),
+    PRINT_STR("print_str"),
+
+    // == Operators ==
+    EXPRESSION_ADD("expression::add"),
+    EXPRESSION_SUB("expression::sub"),
+    TERM_MUL("term::mul"),
+    TERM_DIV("term::div"),
+    CONDITION_EQUALS("condition::equals"),
+    CONDITION_NOT_EQUALS("condition::not_equals"),
+    CONDITION_LESS_THAN("condition::less_than"),
+    CONDITION_LESS_EQUAL("condition::less_equal"),
+    CONDITION_GREATER_THAN("condition::greater_than"),
+    CONDITION_GREATER_EQUAL("condition::greater_equal"),
+
+    // == Control Flow ==
+    IF_FALSE("if_false::jump_to_else"),
+    IF_END("if_end::jump_to_end"),
+    ELSEIF_FALSE("elseif_false::jump_to_next"),
+    ELSEIF_END("elseif_end::jump_to_end"),
+    WHILE_EXIT("while_exit::jump"),
+    WHILE_LOOP("while_loop::jump_back");
+
+    private final String pattern;
+
+    DebugKind(String pattern) {
+        this.pattern = pattern;
+    }
+
+    public String format(String name, int value) {
+        return String.format(pattern, name, value);
+    }
+}
@@ -0,0 +1,145 @@
+package pl.peth.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Instruction range and frame of one function of a packed program. Every call target starts a
+ * function, which extends to the next one; the code before the first function is the prologue that
+ * initializes the globals and calls {@code main}.
+ */
+public final class FunctionLayout implements IOperationCodes {
+    private final int entry;
+    private final int bodyStart;
+    private final int end;
+    private final int parameterCount;
+    private final int localCount;
+    private final String name;
+    private final boolean prologue;
+
+    private FunctionLayout(int entry, int bodyStart, int end, int parameterCount, int localCount, String name,
+                           boolean prologue) {
+        this.entry = entry;
+        this.bodyStart = bodyStart;
+        this.end = end;
+        this.parameterCount = parameterCount;
+        this.localCount = localCount;
+        this.name = name;
+        this.prologue = prologue;
+    }
+
+    /**
+     * Functions of {@code program} in address order.
+     */
+    public static List<FunctionLayout> findAll(CompiledProgram program) {
+        int size = program.size();
+        int[] code = program.getCode();
+        boolean[] entries = new boolean[size + 1];
+        for (int address = 0; address < size; address++) {
+            int target = code[(address << 1) + 1];
+            if (code[address << 1] == OP_CALL && target >= 0 && target < size) {
+                entries[target] = true;
+            }
+        }
+
+        List<FunctionLayout> functions = new ArrayList<>();
+        for (int entry = 0; entry < size; entry++) {
+            if (!entries[entry]) {
+                continue;
+            }
+            int end = entry + 1;
+            while (end < size && !entries[end]) {
+                end++;
+            }
+            functions.add(of(program, entry, end, false));
+        }
+        return functions;
+    }
+
+    /**
+     * The code before the first of {@code functions}, or {@code null} if the program starts with a function.
+     */
+    public static FunctionLayout prologue(CompiledProgram program, List<FunctionLayout> functions) {
+        int end = functions.isEmpty() ? program.size() : functions.get(0).entry;
+        return end > 0 ? of(program, 0, end, true) : null;
+    }
+
+    private static FunctionLayout of(CompiledProgram program, int entry, int end, boolean prologue) {
+        int[] code = program.getCode();
+        boolean enters = code[entry << 1] == OP_ENTER;
+        if (prologue) {
+            return new FunctionLayout(entry, enters ? entry + 1 : entry, end, 0, 0, "<prologue>", true);
+        }
+
+        int parameterCount = -1;
+        for (int address = entry; address < end && parameterCount < 0; address++) {
+            if (code[address << 1] == OP_RET) {
+                parameterCount = code[(address << 1) + 1];
+            }
+        }
+        int localCount = enters ? code[(entry << 1) + 1] : -1;
+        String name = program.getLabel(entry) != null ? program.getLabel(entry) : String.format("@%04d", entry);
+        return new FunctionLayout(entry, entry + 1, end, parameterCount, localCount, name, false);
+    }
+
+    public int getEntry() {
+        return entry;
+    }
+
+    /**
+     * First instruction after the {@code ENTER} that builds the frame.
+     */
+    public int getBodyStart() {
+        return bodyStart;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * Operand of the function's {@code RET}, or -1 if it never returns.
+     */
+    public int getParameterCount() {
+        return parameterCount;
+    }
+
+    /**
+     * Operand of the {@code ENTER} at the entry, or -1 if the function does not start with one.
+     */
+    public int getLocalCount() {
+        return localCount;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Whether this is the prologue, whose {@code ENTER} reserves the globals and which may {@code HALT}.
+     */
+    public boolean isPrologue() {
+        return prologue;
+    }
+
+    /**
+     * Index of the parameter or local at a frame offset, counting the parameters first, or -1 for any
+     * other offset. Parameters lie below the return address and saved frame pointer, locals start at
+     * the frame pointer.
+     */
+    public int variableIndex(int offset) {
+        if (offset >= -(parameterCount + 2) && offset <= -3) {
+            return parameterCount + 2 + offset;
+        }
+        if (offset >= 0 && offset < localCount) {
+            return parameterCount + offset;
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[%04d-%04d, params=%d, locals=%d]", name, entry, end, parameterCount, localCount);
+    }
+}
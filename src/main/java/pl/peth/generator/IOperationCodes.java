@@ -0,0 +1,42 @@
+package pl.peth.generator;
+
+/**
+ * Numeric operation codes of the packed {@link CompiledProgram} format, one per {@link OperationCode}.
+ * Being compile-time constants, they can be dispatched on with a plain {@code int} switch.
+ */
+public interface IOperationCodes {
+    int OP_PUSH = 0;
+    int OP_LOAD = 1;
+    int OP_STORE = 2;
+    int OP_GLOAD = 3;
+    int OP_GSTORE = 4;
+    int OP_POP = 5;
+    int OP_DUP = 6;
+
+    int OP_ADD = 7;
+    int OP_SUB = 8;
+    int OP_MUL = 9;
+    int OP_DIV = 10;
+    int OP_NEG = 11;
+
+    int OP_CMP_EQ = 12;
+    int OP_CMP_NEQ = 13;
+    int OP_CMP_GT = 14;
+    int OP_CMP_LT = 15;
+    int OP_CMP_GTE = 16;
+    int OP_CMP_LTE = 17;
+
+    int OP_JMP = 18;
+    int OP_JZ = 19;
+    int OP_JNZ = 20;
+
+    int OP_CALL = 21;
+    int OP_RET = 22;
+    int OP_ENTER = 23;
+    int OP_LEAVE = 24;
+
+    int OP_NOP = 25;
+    int OP_HALT = 26;
+    int OP_PRINT = 27;
+    int OP_PRINT_STR = 28;
+}
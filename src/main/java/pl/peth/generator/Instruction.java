@@ -4,13 +4,15 @@ public class Instruction {
     private final OperationCode opCode;
     private final int operand;
     private String label;
-    private String comment;
+    private DebugKind debugKind;
+    private String debugName;
+    private int debugValue;
 
     public Instruction(OperationCode opCode, int operand) {
         this.opCode = opCode;
         this.operand = operand;
         this.label = null;
-        this.comment = null;
+        this.debugKind = null;
     }
     
     public Instruction(OperationCode opCode) {
@@ -29,8 +31,27 @@ public class Instruction {
         return label;
     }
 
+    /**
+     * The comment text, formatted from the debug record on every call; {@code null} without one.
+     */
     public String getComment() {
-        return comment;
+        return debugKind == null ? null : debugKind.format(debugName, debugValue);
+    }
+
+    public boolean hasComment() {
+        return debugKind != null;
+    }
+
+    public DebugKind getDebugKind() {
+        return debugKind;
+    }
+
+    public String getDebugName() {
+        return debugName;
+    }
+
+    public int getDebugValue() {
+        return debugValue;
     }
 
     public Instruction withLabel(String label) {
@@ -39,10 +60,23 @@ public class Instruction {
     }
 
     public Instruction withComment(String comment) {
-        this.comment = comment;
+        return comment == null ? withComment(null, null, 0) : withComment(DebugKind.TEXT, comment, 0);
+    }
+
+    public Instruction withComment(DebugKind kind, String name, int value) {
+        this.debugKind = kind;
+        this.debugName = name;
+        this.debugValue = value;
         return this;
     }
 
+    /**
+     * Takes over the comment of {@code other} without formatting it.
+     */
+    public Instruction withCommentOf(Instruction other) {
+        return withComment(other.debugKind, other.debugName, other.debugValue);
+    }
+
     public boolean hasOperand() {
         return switch(opCode) {
             case PUSH, LOAD, STORE, GLOAD, GSTORE, JMP, JZ, JNZ, CALL, ENTER, RET -> true;
@@ -64,8 +98,8 @@ public class Instruction {
             sb.append(" ").append(operand);
         }
 
-        if(comment != null) {
-            sb.append(" ; ").append(comment);
+        if(debugKind != null) {
+            sb.append(" ; ").append(getComment());
         }
 
         return sb.toString();
@@ -0,0 +1,83 @@
+package pl.peth.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Patches call targets once all function addresses are known. Code is generated with placeholder
+ * operands and one {@link Relocation} per call site, so a call does not depend on whether its callee
+ * has been generated before it, and code can be generated in any order.
+ */
+public class Linker {
+    public static final int UNDEFINED = -1;
+
+    private final List<Relocation> relocations;
+    private final List<Relocation> unresolved;
+
+    public Linker() {
+        this.relocations = new ArrayList<>();
+        this.unresolved = new ArrayList<>();
+    }
+
+    public void addRelocation(Relocation relocation) {
+        relocations.add(relocation);
+    }
+
+    /**
+     * Adds the relocations of code that starts at instruction {@code offset} of the linked program.
+     */
+    public void addRelocations(List<Relocation> chunkRelocations, int offset) {
+        for (Relocation relocation : chunkRelocations) {
+            relocations.add(relocation.movedBy(offset));
+        }
+    }
+
+    public List<Relocation> getRelocations() {
+        return relocations;
+    }
+
+    /**
+     * Relocations left unresolved by the last {@link #link}.
+     */
+    public List<Relocation> getUnresolved() {
+        return unresolved;
+    }
+
+    public void clear() {
+        relocations.clear();
+        unresolved.clear();
+    }
+
+    /**
+     * Sets the operand of every relocated instruction to the address of its symbol. Undefined symbols
+     * are reported and their calls left pointing to address 0.
+     *
+     * @param addresses maps a symbol id to the address of its function, or to {@link #UNDEFINED}
+     * @return {@code true} if every symbol was defined
+     */
+    public boolean link(List<Instruction> instructions, IntUnaryOperator addresses) {
+        unresolved.clear();
+
+        for (Relocation relocation : relocations) {
+            int index = relocation.getInstructionIndex();
+            int address = addresses.applyAsInt(relocation.getSymbol());
+            if (address == UNDEFINED) {
+                unresolved.add(relocation);
+                error(String.format("Undefined function: %s (called at %04d)", relocation.getName(), index));
+                address = 0;
+            }
+
+            Instruction old = instructions.get(index);
+            Instruction patched = new Instruction(old.getOpCode(), address)
+                    .withLabel(old.getLabel())
+                    .withCommentOf(old);
+            instructions.set(index, patched);
+        }
+        return unresolved.isEmpty();
+    }
+
+    private void error(String message) {
+        System.err.println("Linker Error: " + message);
+    }
+}
@@ -8,6 +8,7 @@ public enum OperationCode {
     GLOAD,                   // Load a value from a global variable onto the stack
     GSTORE,                  // Store a value from the stack into a global variable
     POP,                     // Remove the top value from the stack
+    DUP,                     // Push a copy of the top value of the stack
 
     // == Arithmetic Operations ==
     ADD,                     // Addition: pop b, pop a, push (a + b)
@@ -0,0 +1,138 @@
+package pl.peth.generator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import pl.peth.common.SymbolTable;
+import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Generates the functions of a program on several cores. The globals and the call of {@code main} are
+ * generated first; then every function is compiled by a forked {@link CodeGenerator} into a
+ * position-independent {@link CodeChunk}. The chunks are appended in source order, which moves their
+ * jumps and string indices into place, and the {@link Linker} finally resolves all calls. The result
+ * equals {@link CodeGenerator#generate(SyntaxTree)}.
+ */
+public class ParallelCodeGenerator implements ITokenWrapper {
+    public static final int DEFAULT_MINIMUM_FUNCTIONS = 64;
+
+    private final CodeGenerator generator;
+    private final ForkJoinPool pool;
+    private final int minimumFunctions;
+
+    public ParallelCodeGenerator(SymbolTable symbols) {
+        this(symbols, ForkJoinPool.commonPool(), DEFAULT_MINIMUM_FUNCTIONS);
+    }
+
+    /**
+     * @param minimumFunctions minimal number of functions compiled by one task
+     */
+    public ParallelCodeGenerator(SymbolTable symbols, ForkJoinPool pool, int minimumFunctions) {
+        if (minimumFunctions <= 0) {
+            throw new IllegalArgumentException("Invalid function count: " + minimumFunctions);
+        }
+        this.generator = new CodeGenerator(symbols);
+        this.pool = pool;
+        this.minimumFunctions = minimumFunctions;
+    }
+
+    public List<Instruction> generate(SyntaxTree syntaxTree) {
+        if (syntaxTree == null || syntaxTree.getType() != PROGRAM || pool.getParallelism() < 2) {
+            return generator.generate(syntaxTree);
+        }
+
+        List<SyntaxTree> functions = new ArrayList<>();
+        for (SyntaxTree child : syntaxTree.getChildren()) {
+            if (child.getType() == FUNCTION) {
+                functions.add(child);
+            }
+        }
+
+        int mainCallIndex = generator.generatePrologue(syntaxTree);
+
+        CodeChunk[] chunks = new CodeChunk[functions.size()];
+        int taskSize = Math.max(minimumFunctions, functions.size() / (pool.getParallelism() * 4));
+        pool.invoke(new GenerateChunks(generator, functions, chunks, 0, functions.size(), taskSize));
+
+        for (CodeChunk chunk : chunks) {
+            generator.appendChunk(chunk);
+        }
+        return generator.finishGeneration(mainCallIndex);
+    }
+
+    public void printCode() {
+        generator.printCode();
+    }
+
+    public List<Instruction> getInstructions() {
+        return generator.getInstructions();
+    }
+
+    public Map<String, Integer> getFunctionTable() {
+        return generator.getFunctionTable();
+    }
+
+    public List<Relocation> getRelocations() {
+        return generator.getRelocations();
+    }
+
+    public List<Relocation> getUnresolvedSymbols() {
+        return generator.getUnresolvedSymbols();
+    }
+
+    public void setDebugInfo(boolean debugInfo) {
+        generator.setDebugInfo(debugInfo);
+    }
+
+    public boolean isDebugInfo() {
+        return generator.isDebugInfo();
+    }
+
+    public int getGlobalVariableCounter() {
+        return generator.getGlobalVariableCounter();
+    }
+
+    public List<String> getStringTable() {
+        return generator.getStringTable();
+    }
+
+    private static class GenerateChunks extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final CodeGenerator generator;
+        private final List<SyntaxTree> functions;
+        private final CodeChunk[] chunks;
+        private final int from;
+        private final int to;
+        private final int taskSize;
+
+        private GenerateChunks(CodeGenerator generator, List<SyntaxTree> functions, CodeChunk[] chunks,
+                               int from, int to, int taskSize) {
+            this.generator = generator;
+            this.functions = functions;
+            this.chunks = chunks;
+            this.from = from;
+            this.to = to;
+            this.taskSize = taskSize;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > taskSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new GenerateChunks(generator, functions, chunks, from, middle, taskSize),
+                        new GenerateChunks(generator, functions, chunks, middle, to, taskSize));
+                return;
+            }
+
+            CodeGenerator fork = generator.forkForFunctions();
+            for (int i = from; i < to; i++) {
+                chunks[i] = fork.generateChunk(functions.get(i));
+            }
+        }
+    }
+}
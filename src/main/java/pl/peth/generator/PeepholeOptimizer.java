@@ -0,0 +1,271 @@
+package pl.peth.generator;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Rewrites short instruction sequences of a linked program into cheaper ones. Each enabled {@link Rule}
+ * is tried at every instruction, looking at it and the instruction after it, until no rule applies
+ * any more. Removed instructions are only marked during the passes; at the end the program is compacted
+ * and all jump and call targets are moved to the new addresses, which {@link #mapAddress(int)} also
+ * provides for addresses held elsewhere, like the function table of the generator.
+ * <p>
+ * An instruction that is the target of a jump or call, or that carries a label, starts a new block:
+ * rules never combine it with the instruction before it, since it can be reached without passing there.
+ */
+public class PeepholeOptimizer {
+    private static final int MAX_PASSES = 16;
+
+    public enum Rule {
+        /** Jumps to a {@code JMP} go to its target directly; jumps to the next instruction are removed. */
+        JUMP_THREADING,
+        /** {@code STORE x; LOAD x} becomes {@code DUP; STORE x}, likewise for globals. */
+        STORE_LOAD_FORWARDING,
+        /** Instructions after {@code RET}, {@code JMP} or {@code HALT} that nothing jumps to are removed. */
+        DEAD_CODE,
+        /** A value pushed and popped right away is not pushed at all. */
+        PUSH_POP
+    }
+
+    private final Set<Rule> rules;
+    private final Map<Rule, Integer> hits;
+    private Instruction[] code;
+    private boolean[] removed;
+    private boolean[] blockStarts;
+    private int[] addressMap;
+
+    public PeepholeOptimizer() {
+        this(EnumSet.allOf(Rule.class));
+    }
+
+    public PeepholeOptimizer(Set<Rule> rules) {
+        this.rules = rules.isEmpty() ? EnumSet.noneOf(Rule.class) : EnumSet.copyOf(rules);
+        this.hits = new EnumMap<>(Rule.class);
+        this.addressMap = new int[0];
+    }
+
+    public List<Instruction> optimize(List<Instruction> instructions) {
+        hits.clear();
+        for (Rule rule : Rule.values()) {
+            hits.put(rule, 0);
+        }
+        code = instructions.toArray(new Instruction[0]);
+        removed = new boolean[code.length];
+
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            markBlockStarts();
+            boolean changed = false;
+            for (int i = nextLive(0); i < code.length; i = nextLive(i + 1)) {
+                for (Rule rule : rules) {
+                    if (!removed[i] && apply(rule, i)) {
+                        changed = true;
+                    }
+                }
+            }
+            if (!changed) {
+                break;
+            }
+        }
+        return compact();
+    }
+
+    public int getHits(Rule rule) {
+        return hits.getOrDefault(rule, 0);
+    }
+
+    public Map<Rule, Integer> getHitCounts() {
+        return hits;
+    }
+
+    /**
+     * Address in the optimized program of the instruction that was at {@code address}. A removed
+     * instruction maps to the first instruction behind it that was kept.
+     */
+    public int mapAddress(int address) {
+        return address >= 0 && address < addressMap.length ? addressMap[address] : address;
+    }
+
+    public void printStatistics() {
+        System.out.println("Peephole optimizer:");
+        for (Map.Entry<Rule, Integer> entry : hits.entrySet()) {
+            System.out.printf("  %-22s %d%n", entry.getKey(), entry.getValue());
+        }
+    }
+
+    private boolean apply(Rule rule, int index) {
+        return switch (rule) {
+            case JUMP_THREADING -> threadJump(index);
+            case STORE_LOAD_FORWARDING -> forwardStore(index);
+            case DEAD_CODE -> removeDeadCode(index);
+            case PUSH_POP -> removePushPop(index);
+        };
+    }
+
+    private boolean threadJump(int index) {
+        Instruction instruction = code[index];
+        OperationCode opCode = instruction.getOpCode();
+        if (!isJump(opCode)) {
+            return false;
+        }
+
+        int target = finalTarget(instruction.getOperand());
+        if (target == nextLive(index + 1)) {
+            if (opCode == OperationCode.JMP) {
+                removed[index] = true;
+            } else {
+                // The condition still has to be taken off the stack.
+                code[index] = new Instruction(OperationCode.POP).withLabel(instruction.getLabel()).withCommentOf(instruction);
+            }
+            hit(Rule.JUMP_THREADING);
+            return true;
+        }
+        if (target != instruction.getOperand()) {
+            code[index] = withOperand(instruction, target);
+            hit(Rule.JUMP_THREADING);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Follows a chain of unconditional jumps. A chain that loops is left where it entered the loop.
+     */
+    private int finalTarget(int address) {
+        int target = nextLive(address);
+        for (int steps = 0; steps < code.length && target < code.length && code[target].getOpCode() == OperationCode.JMP; steps++) {
+            int next = nextLive(code[target].getOperand());
+            if (next == target) {
+                break;
+            }
+            target = next;
+        }
+        return target;
+    }
+
+    private boolean forwardStore(int index) {
+        OperationCode opCode = code[index].getOpCode();
+        OperationCode load = opCode == OperationCode.STORE ? OperationCode.LOAD
+                : opCode == OperationCode.GSTORE ? OperationCode.GLOAD : null;
+        int next = nextLive(index + 1);
+        if (load == null || next >= code.length || blockStarts[next]
+                || code[next].getOpCode() != load || code[next].getOperand() != code[index].getOperand()) {
+            return false;
+        }
+
+        Instruction store = code[index];
+        code[index] = new Instruction(OperationCode.DUP).withLabel(store.getLabel());
+        code[next] = new Instruction(store.getOpCode(), store.getOperand()).withCommentOf(store);
+        if (store.hasComment()) {
+            code[index].withComment(DebugKind.DUP_FORWARD, null, 0);
+        }
+        hit(Rule.STORE_LOAD_FORWARDING);
+        return true;
+    }
+
+    private boolean removeDeadCode(int index) {
+        OperationCode opCode = code[index].getOpCode();
+        if (opCode != OperationCode.RET && opCode != OperationCode.JMP && opCode != OperationCode.HALT) {
+            return false;
+        }
+
+        boolean changed = false;
+        for (int next = nextLive(index + 1); next < code.length && !blockStarts[next]; next = nextLive(next + 1)) {
+            removed[next] = true;
+            hit(Rule.DEAD_CODE);
+            changed = true;
+        }
+        return changed;
+    }
+
+    private boolean removePushPop(int index) {
+        OperationCode opCode = code[index].getOpCode();
+        if (opCode != OperationCode.PUSH && opCode != OperationCode.LOAD && opCode != OperationCode.GLOAD
+                && opCode != OperationCode.DUP) {
+            return false;
+        }
+        int next = nextLive(index + 1);
+        if (next >= code.length || blockStarts[next] || code[next].getOpCode() != OperationCode.POP
+                || code[index].getLabel() != null) {
+            return false;
+        }
+
+        removed[index] = true;
+        removed[next] = true;
+        hit(Rule.PUSH_POP);
+        return true;
+    }
+
+    private void markBlockStarts() {
+        blockStarts = new boolean[code.length];
+        for (int i = 0; i < code.length; i++) {
+            if (removed[i]) {
+                continue;
+            }
+            if (code[i].getLabel() != null) {
+                blockStarts[i] = true;
+            }
+            OperationCode opCode = code[i].getOpCode();
+            if (isJump(opCode) || opCode == OperationCode.CALL) {
+                int target = nextLive(code[i].getOperand());
+                if (target < code.length) {
+                    blockStarts[target] = true;
+                }
+            }
+        }
+    }
+
+    private List<Instruction> compact() {
+        addressMap = new int[code.length + 1];
+        int size = 0;
+        for (int i = 0; i < code.length; i++) {
+            addressMap[i] = size;
+            if (!removed[i]) {
+                size++;
+            }
+        }
+        addressMap[code.length] = size;
+
+        List<Instruction> result = new ArrayList<>(size);
+        for (int i = 0; i < code.length; i++) {
+            if (removed[i]) {
+                continue;
+            }
+            Instruction instruction = code[i];
+            OperationCode opCode = instruction.getOpCode();
+            if (isJump(opCode) || opCode == OperationCode.CALL) {
+                instruction = withOperand(instruction, mapAddress(instruction.getOperand()));
+            }
+            result.add(instruction);
+        }
+        code = null;
+        removed = null;
+        blockStarts = null;
+        return result;
+    }
+
+    private int nextLive(int index) {
+        int i = Math.max(index, 0);
+        while (i < code.length && removed[i]) {
+            i++;
+        }
+        return i;
+    }
+
+    private void hit(Rule rule) {
+        hits.merge(rule, 1, Integer::sum);
+    }
+
+    private static boolean isJump(OperationCode opCode) {
+        return opCode == OperationCode.JMP || opCode == OperationCode.JZ || opCode == OperationCode.JNZ;
+    }
+
+    private static Instruction withOperand(Instruction instruction, int operand) {
+        return new Instruction(instruction.getOpCode(), operand)
+                .withLabel(instruction.getLabel())
+                .withCommentOf(instruction);
+    }
+}
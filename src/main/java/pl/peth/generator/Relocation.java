@@ -0,0 +1,41 @@
+package pl.peth.generator;
+
+/**
+ * A {@code CALL} whose target address is filled in by the {@link Linker}: the index of the instruction
+ * and the symbol id and name of the called function.
+ */
+public class Relocation {
+    private final int instructionIndex;
+    private final int symbol;
+    private final String name;
+
+    public Relocation(int instructionIndex, int symbol, String name) {
+        this.instructionIndex = instructionIndex;
+        this.symbol = symbol;
+        this.name = name;
+    }
+
+    public int getInstructionIndex() {
+        return instructionIndex;
+    }
+
+    public int getSymbol() {
+        return symbol;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * The same relocation for code that has been moved by {@code offset} instructions.
+     */
+    public Relocation movedBy(int offset) {
+        return new Relocation(instructionIndex + offset, symbol, name);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%04d -> %s", instructionIndex, name);
+    }
+}
@@ -0,0 +1,182 @@
+package pl.peth.generator;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+
+/**
+ * Abstract interpretation of the expression stack of packed functions. Starting with an empty stack
+ * after the {@code ENTER}, every reachable instruction gets the stack height it runs with. A function
+ * is accepted if that height is the same on every path to an instruction, never drops below what an
+ * instruction pops, every jump stays inside the function, every call targets a function whose number
+ * of parameters is known and every {@code LOAD}/{@code STORE} addresses a parameter or local.
+ * <p>
+ * {@code LEAVE} sets the stack pointer back to the frame pointer, so the expression stack is empty
+ * after it. Values pushed after it take the place of the locals; the frame does not grow by that.
+ */
+public final class StackAnalyzer implements IOperationCodes {
+    public static final int NO_ADDRESS = -1;
+
+    private final int[] code;
+    private final FunctionLayout[] functionAt;
+    private int failedAddress;
+
+    /**
+     * @param code      packed code, two ints per instruction
+     * @param functions the functions calls may target
+     */
+    public StackAnalyzer(int[] code, List<FunctionLayout> functions) {
+        this.code = code;
+        this.functionAt = new FunctionLayout[code.length / 2 + 1];
+        this.failedAddress = NO_ADDRESS;
+        for (FunctionLayout function : functions) {
+            functionAt[function.getEntry()] = function;
+        }
+    }
+
+    /**
+     * Height of the expression stack before each instruction of the function, indexed from its entry
+     * and -1 where unreachable, or {@code null} if the function is rejected.
+     */
+    public int[] stackDepths(FunctionLayout function) {
+        int entry = function.getEntry();
+        int start = function.getBodyStart();
+        int[] depths = new int[function.getEnd() - entry];
+        Arrays.fill(depths, -1);
+        failedAddress = NO_ADDRESS;
+        if (function.getLocalCount() < 0 || function.getParameterCount() < 0 || start >= function.getEnd()) {
+            return fail(entry);
+        }
+
+        Deque<Integer> pending = new ArrayDeque<>();
+        depths[start - entry] = 0;
+        pending.push(start);
+        while (!pending.isEmpty()) {
+            int address = pending.pop();
+            int depth = depths[address - entry];
+            int operation = code[address << 1];
+            int operand = code[(address << 1) + 1];
+            int next = address + 1;
+            int target = -1;
+
+            switch (operation) {
+                case OP_PUSH, OP_GLOAD -> depth++;
+                case OP_LOAD -> {
+                    if (function.variableIndex(operand) < 0) {
+                        return fail(address);
+                    }
+                    depth++;
+                }
+                case OP_STORE -> {
+                    if (function.variableIndex(operand) < 0) {
+                        return fail(address);
+                    }
+                    depth--;
+                }
+                case OP_GSTORE, OP_POP, OP_PRINT_STR -> depth--;
+                case OP_DUP -> {
+                    if (depth < 1) {
+                        return fail(address);
+                    }
+                    depth++;
+                }
+                case OP_ADD, OP_SUB, OP_MUL, OP_DIV, OP_CMP_EQ, OP_CMP_NEQ, OP_CMP_GT, OP_CMP_LT, OP_CMP_GTE, OP_CMP_LTE -> {
+                    if (depth < 2) {
+                        return fail(address);
+                    }
+                    depth--;
+                }
+                case OP_NEG, OP_PRINT -> {
+                    if (depth < 1) {
+                        return fail(address);
+                    }
+                }
+                case OP_LEAVE -> depth = 0;
+                case OP_NOP -> {
+                }
+                case OP_JMP -> {
+                    target = operand;
+                    next = -1;
+                }
+                case OP_JZ, OP_JNZ -> {
+                    depth--;
+                    target = operand;
+                }
+                case OP_CALL -> {
+                    FunctionLayout callee = functionAt(operand);
+                    if (callee == null || callee.getParameterCount() < 0 || depth < callee.getParameterCount()) {
+                        return fail(address);
+                    }
+                    depth = depth - callee.getParameterCount() + 1;
+                }
+                case OP_RET -> {
+                    if (depth < 1 || operand != function.getParameterCount() || function.isPrologue()) {
+                        return fail(address);
+                    }
+                    next = -1;
+                }
+                case OP_HALT -> {
+                    if (!function.isPrologue()) {
+                        return fail(address);
+                    }
+                    next = -1;
+                }
+                default -> {
+                    return fail(address);
+                }
+            }
+            if (depth < 0) {
+                return fail(address);
+            }
+            if (!reach(function, depths, pending, next, depth) || !reach(function, depths, pending, target, depth)) {
+                return fail(address);
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Instruction at which the last {@link #stackDepths} rejected its function, or {@link #NO_ADDRESS}.
+     */
+    public int getFailedAddress() {
+        return failedAddress;
+    }
+
+    /**
+     * The function starting at {@code address}, or {@code null}.
+     */
+    public FunctionLayout functionAt(int address) {
+        return address >= 0 && address < functionAt.length ? functionAt[address] : null;
+    }
+
+    public static int maxDepth(int[] depths) {
+        int maxDepth = 0;
+        for (int depth : depths) {
+            maxDepth = Math.max(maxDepth, depth);
+        }
+        return maxDepth;
+    }
+
+    private int[] fail(int address) {
+        failedAddress = address;
+        return null;
+    }
+
+    private static boolean reach(FunctionLayout function, int[] depths, Deque<Integer> pending, int address, int depth) {
+        if (address < 0) {
+            return true;
+        }
+        if (address < function.getBodyStart() || address >= function.getEnd()) {
+            return false;
+        }
+        int index = address - function.getEntry();
+        if (depths[index] < 0) {
+            depths[index] = depth;
+            pending.push(address);
+            return true;
+        }
+        return depths[index] == depth;
+    }
+}
@@ -0,0 +1,190 @@
+package pl.peth.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a class file with a constant pool, fields and methods, and nothing else. The file uses
+ * version 49 (Java 5), which is verified by type inference and therefore needs no stack map frames;
+ * any code whose operand stack has the same height on every path to an instruction verifies.
+ */
+public class ClassFileWriter implements IJvmOpcodes {
+    public static final int VERSION = 49;
+
+    private static final int CONSTANT_UTF8 = 1;
+    private static final int CONSTANT_INTEGER = 3;
+    private static final int CONSTANT_CLASS = 7;
+    private static final int CONSTANT_STRING = 8;
+    private static final int CONSTANT_FIELDREF = 9;
+    private static final int CONSTANT_METHODREF = 10;
+    private static final int CONSTANT_INTERFACE_METHODREF = 11;
+    private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+    private final ByteArrayOutputStream pool;
+    private final DataOutputStream poolOut;
+    private final Map<String, Integer> poolIndices;
+    private int poolCount;
+
+    private final int access;
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    private final List<byte[]> fields;
+    private final List<MethodWriter> methods;
+
+    /**
+     * @param name internal name of the class, e.g. {@code pl/peth/Program}
+     */
+    public ClassFileWriter(int access, String name, String superName, String... interfaceNames) {
+        this.pool = new ByteArrayOutputStream();
+        this.poolOut = new DataOutputStream(pool);
+        this.poolIndices = new HashMap<>();
+        this.poolCount = 1;
+        this.access = access;
+        this.thisClass = classConstant(name);
+        this.superClass = classConstant(superName);
+        this.interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            this.interfaces[i] = classConstant(interfaceNames[i]);
+        }
+        this.fields = new ArrayList<>();
+        this.methods = new ArrayList<>();
+    }
+
+    public void addField(int access, String name, String descriptor) {
+        ByteArrayOutputStream field = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(field);
+        try {
+            out.writeShort(access);
+            out.writeShort(utf8Constant(name));
+            out.writeShort(utf8Constant(descriptor));
+            out.writeShort(0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        fields.add(field.toByteArray());
+    }
+
+    public MethodWriter addMethod(int access, String name, String descriptor) {
+        MethodWriter method = new MethodWriter(this, access, utf8Constant(name), utf8Constant(descriptor));
+        methods.add(method);
+        return method;
+    }
+
+    public byte[] toByteArray() {
+        int codeName = utf8Constant("Code");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            poolOut.flush();
+            pool.writeTo(out);
+
+            out.writeShort(access);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces) {
+                out.writeShort(index);
+            }
+            out.writeShort(fields.size());
+            for (byte[] field : fields) {
+                out.write(field);
+            }
+            out.writeShort(methods.size());
+            for (MethodWriter method : methods) {
+                method.writeTo(out, codeName);
+            }
+            out.writeShort(0);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    // === Constant Pool ===
+
+    public int utf8Constant(String value) {
+        return constant("U" + value, out -> {
+            out.writeByte(CONSTANT_UTF8);
+            out.writeUTF(value);
+        });
+    }
+
+    public int intConstant(int value) {
+        return constant("I" + value, out -> {
+            out.writeByte(CONSTANT_INTEGER);
+            out.writeInt(value);
+        });
+    }
+
+    public int stringConstant(String value) {
+        int utf8 = utf8Constant(value);
+        return constant("S" + value, out -> {
+            out.writeByte(CONSTANT_STRING);
+            out.writeShort(utf8);
+        });
+    }
+
+    public int classConstant(String name) {
+        int utf8 = utf8Constant(name);
+        return constant("C" + name, out -> {
+            out.writeByte(CONSTANT_CLASS);
+            out.writeShort(utf8);
+        });
+    }
+
+    public int fieldConstant(String owner, String name, String descriptor) {
+        return memberConstant(CONSTANT_FIELDREF, owner, name, descriptor);
+    }
+
+    public int methodConstant(String owner, String name, String descriptor, boolean isInterface) {
+        return memberConstant(isInterface ? CONSTANT_INTERFACE_METHODREF : CONSTANT_METHODREF, owner, name, descriptor);
+    }
+
+    private int memberConstant(int tag, String owner, String name, String descriptor) {
+        int ownerIndex = classConstant(owner);
+        int nameIndex = utf8Constant(name);
+        int descriptorIndex = utf8Constant(descriptor);
+        int nameAndType = constant("N" + name + ":" + descriptor, out -> {
+            out.writeByte(CONSTANT_NAME_AND_TYPE);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+        return constant(tag + owner + "." + name + ":" + descriptor, out -> {
+            out.writeByte(tag);
+            out.writeShort(ownerIndex);
+            out.writeShort(nameAndType);
+        });
+    }
+
+    private int constant(String key, PoolEntry entry) {
+        Integer index = poolIndices.get(key);
+        if (index != null) {
+            return index;
+        }
+        if (poolCount >= 0xffff) {
+            throw new IllegalStateException("Constant pool overflow");
+        }
+        try {
+            entry.writeTo(poolOut);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        poolIndices.put(key, poolCount);
+        return poolCount++;
+    }
+
+    private interface PoolEntry {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+}
@@ -0,0 +1,175 @@
+package pl.peth.jvm;
+
+import java.util.List;
+
+import pl.peth.generator.FunctionLayout;
+import pl.peth.generator.IOperationCodes;
+import pl.peth.generator.StackAnalyzer;
+
+/**
+ * Translates functions of a packed program into JVM methods. Parameters and locals become JVM locals
+ * and the expression stack becomes the JVM operand stack, so every instruction maps to one or a few
+ * bytecodes. How globals, calls and output are reached depends on where the code runs and is left to
+ * subclasses.
+ * <p>
+ * A function can only be translated if the {@link StackAnalyzer} accepts it: the JVM verifier demands
+ * one stack height on every path to an instruction as well. {@code LEAVE} only becomes pops where the
+ * frame holds no locals or globals, since values pushed after it would overwrite those in the VM.
+ */
+public abstract class FunctionTranslator implements IOperationCodes, IJvmOpcodes {
+    /**
+     * Most operand stack slots a hook may need beyond the expression stack.
+     */
+    private static final int EXTRA_STACK = 6;
+
+    private final int[] code;
+    private final StackAnalyzer analyzer;
+
+    /**
+     * @param code      packed code, two ints per instruction
+     * @param functions the functions calls may target
+     */
+    protected FunctionTranslator(int[] code, List<FunctionLayout> functions) {
+        this.code = code;
+        this.analyzer = new StackAnalyzer(code, functions);
+    }
+
+    /**
+     * Height of the expression stack before each instruction of the function, or {@code null} if the
+     * function cannot be translated; see {@link StackAnalyzer#stackDepths}.
+     */
+    public int[] stackDepths(FunctionLayout function) {
+        int[] depths = analyzer.stackDepths(function);
+        if (depths == null || function.getBodyStart() == function.getEntry() || code[(function.getEntry() << 1) + 1] == 0) {
+            return depths;
+        }
+        for (int address = function.getBodyStart(); address < function.getEnd(); address++) {
+            if (code[address << 1] == OP_LEAVE && depths[address - function.getEntry()] >= 0) {
+                return null;
+            }
+        }
+        return depths;
+    }
+
+    /**
+     * Emits the body of {@code function} and sets the limits of {@code method}. Parameters and locals
+     * are expected in consecutive JVM locals from {@code firstVariableSlot} on and have to be
+     * initialized by the caller; the slots after them are used as temporaries.
+     *
+     * @param depths result of {@link #stackDepths} for the function
+     */
+    public void translate(MethodWriter method, FunctionLayout function, int[] depths, int firstVariableSlot) {
+        int entry = function.getEntry();
+        int firstTemporary = firstVariableSlot + function.getParameterCount() + function.getLocalCount();
+        int maxArguments = 0;
+
+        Label[] labels = new Label[depths.length];
+        for (int address = function.getBodyStart(); address < function.getEnd(); address++) {
+            int operation = code[address << 1];
+            if (depths[address - entry] >= 0 && (operation == OP_JMP || operation == OP_JZ || operation == OP_JNZ)) {
+                labels[code[(address << 1) + 1] - entry] = new Label();
+            }
+        }
+
+        for (int address = function.getBodyStart(); address < function.getEnd(); address++) {
+            int depth = depths[address - entry];
+            if (depth < 0) {
+                continue;
+            }
+            if (labels[address - entry] != null) {
+                method.mark(labels[address - entry]);
+            }
+
+            int operation = code[address << 1];
+            int operand = code[(address << 1) + 1];
+            switch (operation) {
+                case OP_PUSH -> method.pushInt(operand);
+                case OP_LOAD -> method.loadInt(firstVariableSlot + function.variableIndex(operand));
+                case OP_STORE -> method.storeInt(firstVariableSlot + function.variableIndex(operand));
+                case OP_GLOAD -> emitGlobalLoad(method, operand);
+                case OP_GSTORE -> emitGlobalStore(method, operand);
+                case OP_POP -> method.op(POP);
+                case OP_DUP -> method.op(DUP);
+                case OP_ADD -> method.op(IADD);
+                case OP_SUB -> method.op(ISUB);
+                case OP_MUL -> method.op(IMUL);
+                case OP_DIV -> method.op(IDIV);
+                case OP_NEG -> method.op(INEG);
+                case OP_CMP_EQ -> compare(method, IF_ICMPEQ);
+                case OP_CMP_NEQ -> compare(method, IF_ICMPNE);
+                case OP_CMP_GT -> compare(method, IF_ICMPGT);
+                case OP_CMP_LT -> compare(method, IF_ICMPLT);
+                case OP_CMP_GTE -> compare(method, IF_ICMPGE);
+                case OP_CMP_LTE -> compare(method, IF_ICMPLE);
+                case OP_JMP -> method.jump(GOTO, labels[operand - entry]);
+                case OP_JZ -> method.jump(IFEQ, labels[operand - entry]);
+                case OP_JNZ -> method.jump(IFNE, labels[operand - entry]);
+                case OP_CALL -> {
+                    FunctionLayout callee = analyzer.functionAt(operand);
+                    maxArguments = Math.max(maxArguments, callee.getParameterCount());
+                    emitCall(method, callee, function.getLocalCount() + depth, firstTemporary);
+                }
+                case OP_LEAVE -> {
+                    for (int i = 0; i < depth; i++) {
+                        method.op(POP);
+                    }
+                }
+                case OP_RET -> method.op(IRETURN);
+                case OP_HALT -> {
+                    if (depth == 0) {
+                        method.op(ICONST_0);
+                    }
+                    method.op(IRETURN);
+                }
+                case OP_PRINT -> emitPrint(method);
+                case OP_PRINT_STR -> emitPrintString(method);
+                default -> {
+                }
+            }
+        }
+        method.setMaxs(StackAnalyzer.maxDepth(depths) + EXTRA_STACK, firstTemporary + maxArguments);
+    }
+
+    /**
+     * Pushes the global at {@code offset}.
+     */
+    protected abstract void emitGlobalLoad(MethodWriter method, int offset);
+
+    /**
+     * Pops the top of the stack into the global at {@code offset}.
+     */
+    protected abstract void emitGlobalStore(MethodWriter method, int offset);
+
+    /**
+     * Replaces the arguments on top of the stack by the result of {@code callee}.
+     *
+     * @param frameHeight    words the interpreter would have above the frame pointer at the call:
+     *                       the locals and the expression stack, arguments included
+     * @param firstTemporary first JVM local free for temporaries; as many as the callee has parameters
+     */
+    protected abstract void emitCall(MethodWriter method, FunctionLayout callee, int frameHeight, int firstTemporary);
+
+    /**
+     * Prints the top of the stack and leaves it there.
+     */
+    protected abstract void emitPrint(MethodWriter method);
+
+    /**
+     * Pops a string index and prints that string.
+     */
+    protected abstract void emitPrintString(MethodWriter method);
+
+    /**
+     * Pushes 1 if the comparison holds for the two topmost values, 0 otherwise.
+     */
+    private static void compare(MethodWriter method, int branch) {
+        Label holds = new Label();
+        Label done = new Label();
+        method.jump(branch, holds);
+        method.op(ICONST_0);
+        method.jump(GOTO, done);
+        method.mark(holds);
+        method.pushInt(1);
+        method.mark(done);
+    }
+}
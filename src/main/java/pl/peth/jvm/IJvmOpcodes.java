@@ -0,0 +1,79 @@
+package pl.peth.jvm;
+
+/**
+ * JVM instructions used by the code generators, with their opcode as defined in chapter 6 of the
+ * Java Virtual Machine Specification.
+ */
+public interface IJvmOpcodes {
+    // == Constants ==
+    int NOP = 0x00;
+    int ACONST_NULL = 0x01;
+    int ICONST_M1 = 0x02;
+    int ICONST_0 = 0x03;
+    int BIPUSH = 0x10;
+    int SIPUSH = 0x11;
+    int LDC = 0x12;
+    int LDC_W = 0x13;
+
+    // == Locals and Arrays ==
+    int ILOAD = 0x15;
+    int ALOAD = 0x19;
+    int IALOAD = 0x2e;
+    int AALOAD = 0x32;
+    int ISTORE = 0x36;
+    int ASTORE = 0x3a;
+    int IASTORE = 0x4f;
+    int AASTORE = 0x53;
+
+    // == Operand Stack ==
+    int POP = 0x57;
+    int DUP = 0x59;
+    int SWAP = 0x5f;
+
+    // == Arithmetic ==
+    int IADD = 0x60;
+    int ISUB = 0x64;
+    int IMUL = 0x68;
+    int IDIV = 0x6c;
+    int INEG = 0x74;
+    int I2L = 0x85;
+
+    // == Branches ==
+    int IFEQ = 0x99;
+    int IFNE = 0x9a;
+    int IFLT = 0x9b;
+    int IF_ICMPEQ = 0x9f;
+    int IF_ICMPNE = 0xa0;
+    int IF_ICMPLT = 0xa1;
+    int IF_ICMPGE = 0xa2;
+    int IF_ICMPGT = 0xa3;
+    int IF_ICMPLE = 0xa4;
+    int GOTO = 0xa7;
+
+    // == Methods and Objects ==
+    int IRETURN = 0xac;
+    int RETURN = 0xb1;
+    int GETSTATIC = 0xb2;
+    int PUTSTATIC = 0xb3;
+    int GETFIELD = 0xb4;
+    int INVOKEVIRTUAL = 0xb6;
+    int INVOKESPECIAL = 0xb7;
+    int INVOKESTATIC = 0xb8;
+    int INVOKEINTERFACE = 0xb9;
+    int NEW = 0xbb;
+    int NEWARRAY = 0xbc;
+    int ANEWARRAY = 0xbd;
+    int ARRAYLENGTH = 0xbe;
+    int WIDE = 0xc4;
+
+    // == Array Types of NEWARRAY ==
+    int T_INT = 10;
+
+    // == Access Flags ==
+    int ACC_PUBLIC = 0x0001;
+    int ACC_PRIVATE = 0x0002;
+    int ACC_STATIC = 0x0008;
+    int ACC_FINAL = 0x0010;
+    int ACC_SUPER = 0x0020;
+    int ACC_SYNTHETIC = 0x1000;
+}
@@ -0,0 +1,343 @@
+package pl.peth.jvm;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import pl.peth.generator.CompiledProgram;
+import pl.peth.generator.FunctionLayout;
+
+/**
+ * Compiles a packed program ahead of time into one class that runs without the VM. Every function
+ * becomes a static {@code int} method calling the others directly, every global a static field, and
+ * the strings are loaded from the constant pool. The prologue becomes {@code run()}, which returns
+ * the result of {@code main}; {@code main(String[])} runs it and prints the result.
+ * <p>
+ * Output is printed like the VM prints it. Compiled programs are not limited by the size of the VM
+ * stack but by the Java stack, so {@code main} runs the program on a thread of its own with a
+ * {@link #DEFAULT_STACK_SIZE large stack}, which the {@value #STACK_SIZE_PROPERTY} system property
+ * overrides in bytes. That thread is started by a launcher class the jar contains next to the
+ * program; it reports running out of stack and division by zero like the VM does. Called directly,
+ * {@code run()} throws {@link StackOverflowError} and {@link ArithmeticException} instead.
+ */
+public class JvmCompiler {
+    public static final String DEFAULT_CLASS_NAME = "MarpProgram";
+    public static final String STACK_SIZE_PROPERTY = "marp.stackSize";
+    /**
+     * Stack of the thread running a compiled program, in bytes.
+     */
+    public static final int DEFAULT_STACK_SIZE = 256 << 20;
+
+    private static final String LAUNCHER_SUFFIX = "$Launcher";
+
+    private static final String METHOD_PREFIX = "fn_";
+    private static final String GLOBAL_PREFIX = "global";
+    private static final String STRINGS_FIELD = "strings";
+    private static final String PRINT_STREAM = "java/io/PrintStream";
+
+    private final String className;
+
+    public JvmCompiler() {
+        this(DEFAULT_CLASS_NAME);
+    }
+
+    /**
+     * @param className binary name of the generated class, e.g. {@code scripts.Report}
+     */
+    public JvmCompiler(String className) {
+        for (String part : className.split("\\.", -1)) {
+            if (part.isEmpty() || !Character.isJavaIdentifierStart(part.charAt(0))
+                    || !part.chars().allMatch(Character::isJavaIdentifierPart)) {
+                throw new IllegalArgumentException("Invalid class name: " + className);
+            }
+        }
+        this.className = className;
+    }
+
+    /**
+     * Returns the class file, or {@code null} if a function cannot be compiled.
+     */
+    public byte[] compile(CompiledProgram program) {
+        List<FunctionLayout> functions = FunctionLayout.findAll(program);
+        FunctionLayout prologue = FunctionLayout.prologue(program, functions);
+        if (prologue == null) {
+            error("Program has no main function or calls an undefined one");
+            return null;
+        }
+
+        String internalName = className.replace('.', '/');
+        ProgramTranslator translator = new ProgramTranslator(program, functions, internalName);
+        ClassFileWriter writer = new ClassFileWriter(ClassFileWriter.ACC_PUBLIC | ClassFileWriter.ACC_FINAL
+                | ClassFileWriter.ACC_SUPER, internalName, "java/lang/Object");
+        try {
+            translator.writeRuntime(writer);
+            for (FunctionLayout function : functions) {
+                if (!translator.writeFunction(writer, function)) {
+                    error("Cannot compile function " + function.getName() + ": the stack is not balanced or a LEAVE drops its locals");
+                    return null;
+                }
+            }
+            if (!translator.writeRun(writer, prologue)) {
+                error("Cannot compile the prologue: the stack is not balanced or a LEAVE drops the globals");
+                return null;
+            }
+            return writer.toByteArray();
+        } catch (IllegalStateException ex) {
+            error(ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Writes a jar that runs the program with {@code java -jar}. Returns {@code false} on failure.
+     */
+    public boolean writeJar(CompiledProgram program, Path jar) {
+        byte[] classFile = compile(program);
+        if (classFile == null) {
+            return false;
+        }
+
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, className);
+        String internalName = className.replace('.', '/');
+        try (OutputStream file = Files.newOutputStream(jar);
+             JarOutputStream out = new JarOutputStream(file, manifest)) {
+            out.putNextEntry(new JarEntry(internalName + ".class"));
+            out.write(classFile);
+            out.closeEntry();
+            out.putNextEntry(new JarEntry(internalName + LAUNCHER_SUFFIX + ".class"));
+            out.write(launcher(internalName));
+            out.closeEntry();
+        } catch (IOException ex) {
+            error("Cannot write " + jar + ": " + ex.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    public String getClassName() {
+        return className;
+    }
+
+    /**
+     * The {@link Runnable} that {@code main} of {@code owner} starts: it prints the result of
+     * {@code run()}. If the program runs out of stack or divides by zero, it prints the VM's error
+     * instead and 0 as the result, like the VM.
+     */
+    private static byte[] launcher(String owner) {
+        String name = owner + LAUNCHER_SUFFIX;
+        ClassFileWriter writer = new ClassFileWriter(ClassFileWriter.ACC_FINAL | ClassFileWriter.ACC_SUPER
+                | ClassFileWriter.ACC_SYNTHETIC, name, "java/lang/Object", "java/lang/Runnable");
+
+        MethodWriter constructor = writer.addMethod(ClassFileWriter.ACC_PUBLIC, "<init>", "()V");
+        constructor.loadReference(0);
+        constructor.invoke(IJvmOpcodes.INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        constructor.op(IJvmOpcodes.RETURN);
+        constructor.setMaxs(1, 1);
+
+        MethodWriter run = writer.addMethod(ClassFileWriter.ACC_PUBLIC, "run", "()V");
+        Label start = new Label();
+        Label end = new Label();
+        Label overflow = new Label();
+        Label division = new Label();
+        Label failed = new Label();
+        run.mark(start);
+        run.field(IJvmOpcodes.GETSTATIC, "java/lang/System", "out", "L" + PRINT_STREAM + ";");
+        run.pushString("RESULT: ");
+        run.invoke(IJvmOpcodes.INVOKESTATIC, owner, "run", "()I");
+        run.invoke(IJvmOpcodes.INVOKESTATIC, "java/lang/String", "valueOf", "(I)Ljava/lang/String;");
+        run.invoke(IJvmOpcodes.INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+        run.invoke(IJvmOpcodes.INVOKEVIRTUAL, PRINT_STREAM, "println", "(Ljava/lang/String;)V");
+        run.mark(end);
+        run.op(IJvmOpcodes.RETURN);
+        run.mark(overflow);
+        run.op(IJvmOpcodes.POP);
+        run.pushString("ERROR: Stack overflow");
+        run.jump(IJvmOpcodes.GOTO, failed);
+        run.mark(division);
+        run.op(IJvmOpcodes.POP);
+        run.pushString("ERROR: Division by zero");
+        run.mark(failed);
+        run.field(IJvmOpcodes.GETSTATIC, "java/lang/System", "err", "L" + PRINT_STREAM + ";");
+        run.op(IJvmOpcodes.SWAP);
+        run.invoke(IJvmOpcodes.INVOKEVIRTUAL, PRINT_STREAM, "println", "(Ljava/lang/String;)V");
+        run.field(IJvmOpcodes.GETSTATIC, "java/lang/System", "out", "L" + PRINT_STREAM + ";");
+        run.pushString("RESULT: 0");
+        run.invoke(IJvmOpcodes.INVOKEVIRTUAL, PRINT_STREAM, "println", "(Ljava/lang/String;)V");
+        run.op(IJvmOpcodes.RETURN);
+        run.addHandler(start, end, overflow, "java/lang/StackOverflowError");
+        run.addHandler(start, end, division, "java/lang/ArithmeticException");
+        run.setMaxs(3, 1);
+        return writer.toByteArray();
+    }
+
+    private void error(String message) {
+        System.err.println("JvmCompiler Error: " + message);
+    }
+
+    private static class ProgramTranslator extends FunctionTranslator {
+        private final CompiledProgram program;
+        private final String owner;
+        private final String[] methodNames;
+
+        private ProgramTranslator(CompiledProgram program, List<FunctionLayout> functions, String owner) {
+            super(program.getCode(), functions);
+            this.program = program;
+            this.owner = owner;
+            this.methodNames = new String[program.size()];
+
+            Set<String> used = new HashSet<>();
+            for (FunctionLayout function : functions) {
+                String name = METHOD_PREFIX + function.getName();
+                if (!function.getName().chars().allMatch(Character::isJavaIdentifierPart) || !used.add(name)) {
+                    name = METHOD_PREFIX + function.getEntry();
+                    used.add(name);
+                }
+                methodNames[function.getEntry()] = name;
+            }
+        }
+
+        /**
+         * Globals, the string table and the print helpers.
+         */
+        private void writeRuntime(ClassFileWriter writer) {
+            for (int i = 0; i < program.getGlobalVariableCount(); i++) {
+                writer.addField(ACC_PRIVATE | ACC_STATIC, GLOBAL_PREFIX + i, "I");
+            }
+            writer.addField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, STRINGS_FIELD, "[Ljava/lang/String;");
+
+            List<String> strings = program.getStringTable();
+            MethodWriter initializer = writer.addMethod(ACC_STATIC, "<clinit>", "()V");
+            initializer.pushInt(strings.size());
+            initializer.type(ANEWARRAY, "java/lang/String");
+            for (int i = 0; i < strings.size(); i++) {
+                initializer.op(DUP);
+                initializer.pushInt(i);
+                initializer.pushString(strings.get(i));
+                initializer.op(AASTORE);
+            }
+            initializer.field(PUTSTATIC, owner, STRINGS_FIELD, "[Ljava/lang/String;");
+            initializer.op(RETURN);
+            initializer.setMaxs(4, 0);
+
+            MethodWriter print = writer.addMethod(ACC_PRIVATE | ACC_STATIC, "print", "(I)V");
+            print.field(GETSTATIC, "java/lang/System", "out", "L" + PRINT_STREAM + ";");
+            print.pushString("OUTPUT: ");
+            print.loadInt(0);
+            print.invoke(INVOKESTATIC, "java/lang/String", "valueOf", "(I)Ljava/lang/String;");
+            print.invoke(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+            print.invoke(INVOKEVIRTUAL, PRINT_STREAM, "println", "(Ljava/lang/String;)V");
+            print.op(RETURN);
+            print.setMaxs(3, 1);
+
+            MethodWriter printString = writer.addMethod(ACC_PRIVATE | ACC_STATIC, "printString", "(I)V");
+            Label invalid = new Label();
+            printString.loadInt(0);
+            printString.jump(IFLT, invalid);
+            printString.loadInt(0);
+            printString.field(GETSTATIC, owner, STRINGS_FIELD, "[Ljava/lang/String;");
+            printString.op(ARRAYLENGTH);
+            printString.jump(IF_ICMPGE, invalid);
+            printString.field(GETSTATIC, "java/lang/System", "out", "L" + PRINT_STREAM + ";");
+            printString.pushString("OUTPUT: ");
+            printString.field(GETSTATIC, owner, STRINGS_FIELD, "[Ljava/lang/String;");
+            printString.loadInt(0);
+            printString.op(AALOAD);
+            printString.invoke(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+            printString.invoke(INVOKEVIRTUAL, PRINT_STREAM, "println", "(Ljava/lang/String;)V");
+            printString.op(RETURN);
+            printString.mark(invalid);
+            printString.field(GETSTATIC, "java/lang/System", "err", "L" + PRINT_STREAM + ";");
+            printString.pushString("ERROR: Invalid string index: ");
+            printString.loadInt(0);
+            printString.invoke(INVOKESTATIC, "java/lang/String", "valueOf", "(I)Ljava/lang/String;");
+            printString.invoke(INVOKEVIRTUAL, "java/lang/String", "concat", "(Ljava/lang/String;)Ljava/lang/String;");
+            printString.invoke(INVOKEVIRTUAL, PRINT_STREAM, "println", "(Ljava/lang/String;)V");
+            printString.op(RETURN);
+            printString.setMaxs(4, 1);
+
+            String launcher = owner + LAUNCHER_SUFFIX;
+            MethodWriter main = writer.addMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V");
+            main.type(NEW, "java/lang/Thread");
+            main.op(DUP);
+            main.op(ACONST_NULL);
+            main.type(NEW, launcher);
+            main.op(DUP);
+            main.invoke(INVOKESPECIAL, launcher, "<init>", "()V");
+            main.pushString("main");
+            main.pushString(STACK_SIZE_PROPERTY);
+            main.pushInt(DEFAULT_STACK_SIZE);
+            main.op(I2L);
+            main.invoke(INVOKESTATIC, "java/lang/Long", "getLong", "(Ljava/lang/String;J)Ljava/lang/Long;");
+            main.invoke(INVOKEVIRTUAL, "java/lang/Long", "longValue", "()J");
+            main.invoke(INVOKESPECIAL, "java/lang/Thread", "<init>",
+                    "(Ljava/lang/ThreadGroup;Ljava/lang/Runnable;Ljava/lang/String;J)V");
+            main.invoke(INVOKEVIRTUAL, "java/lang/Thread", "start", "()V");
+            main.op(RETURN);
+            main.setMaxs(8, 1);
+        }
+
+        private boolean writeFunction(ClassFileWriter writer, FunctionLayout function) {
+            int[] depths = stackDepths(function);
+            if (depths == null) {
+                return false;
+            }
+            MethodWriter method = writer.addMethod(ACC_PRIVATE | ACC_STATIC, methodNames[function.getEntry()],
+                    descriptor(function.getParameterCount()));
+            for (int i = 0; i < function.getLocalCount(); i++) {
+                method.op(ICONST_0);
+                method.storeInt(function.getParameterCount() + i);
+            }
+            translate(method, function, depths, 0);
+            return true;
+        }
+
+        private boolean writeRun(ClassFileWriter writer, FunctionLayout prologue) {
+            int[] depths = stackDepths(prologue);
+            if (depths == null) {
+                return false;
+            }
+            translate(writer.addMethod(ACC_PUBLIC | ACC_STATIC, "run", "()I"), prologue, depths, 0);
+            return true;
+        }
+
+        @Override
+        protected void emitGlobalLoad(MethodWriter method, int offset) {
+            method.field(GETSTATIC, owner, GLOBAL_PREFIX + offset, "I");
+        }
+
+        @Override
+        protected void emitGlobalStore(MethodWriter method, int offset) {
+            method.field(PUTSTATIC, owner, GLOBAL_PREFIX + offset, "I");
+        }
+
+        @Override
+        protected void emitCall(MethodWriter method, FunctionLayout callee, int frameHeight, int firstTemporary) {
+            method.invoke(INVOKESTATIC, owner, methodNames[callee.getEntry()], descriptor(callee.getParameterCount()));
+        }
+
+        @Override
+        protected void emitPrint(MethodWriter method) {
+            method.op(DUP);
+            method.invoke(INVOKESTATIC, owner, "print", "(I)V");
+        }
+
+        @Override
+        protected void emitPrintString(MethodWriter method) {
+            method.invoke(INVOKESTATIC, owner, "printString", "(I)V");
+        }
+
+        private static String descriptor(int parameterCount) {
+            return "(" + "I".repeat(parameterCount) + ")I";
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package pl.peth.jvm;
+
+/**
+ * A position in the code of a {@link MethodWriter}. Branches may refer to a label before it is placed.
+ */
+public final class Label {
+    int position = -1;
+
+    public boolean isPlaced() {
+        return position >= 0;
+    }
+}
@@ -0,0 +1,245 @@
+package pl.peth.jvm;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Assembles the code of one method of a {@link ClassFileWriter}. Branches use 16-bit offsets; a
+ * branch that does not fit throws {@link IllegalStateException}, as does code longer than the 64 KB
+ * the class file format allows.
+ */
+public class MethodWriter implements IJvmOpcodes {
+    private static final int MAX_CODE_LENGTH = 0xffff;
+
+    private final ClassFileWriter owner;
+    private final int access;
+    private final int name;
+    private final int descriptor;
+    private final ByteArrayOutputStream code;
+    private final List<Branch> branches;
+    private final List<Handler> handlers;
+    private int maxStack;
+    private int maxLocals;
+
+    MethodWriter(ClassFileWriter owner, int access, int name, int descriptor) {
+        this.owner = owner;
+        this.access = access;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.code = new ByteArrayOutputStream();
+        this.branches = new ArrayList<>();
+        this.handlers = new ArrayList<>();
+    }
+
+    /**
+     * Emits an instruction without operands.
+     */
+    public void op(int opcode) {
+        code.write(opcode);
+    }
+
+    public void pushInt(int value) {
+        if (value >= -1 && value <= 5) {
+            op(ICONST_0 + value);
+        } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+            op(BIPUSH);
+            code.write(value);
+        } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+            op(SIPUSH);
+            writeShort(value);
+        } else {
+            loadConstant(owner.intConstant(value));
+        }
+    }
+
+    public void pushString(String value) {
+        loadConstant(owner.stringConstant(value));
+    }
+
+    public void loadInt(int slot) {
+        local(ILOAD, slot);
+    }
+
+    public void storeInt(int slot) {
+        local(ISTORE, slot);
+    }
+
+    public void loadReference(int slot) {
+        local(ALOAD, slot);
+    }
+
+    public void storeReference(int slot) {
+        local(ASTORE, slot);
+    }
+
+    /**
+     * Emits an instruction taking a class, e.g. {@code ANEWARRAY}.
+     */
+    public void type(int opcode, String className) {
+        op(opcode);
+        writeShort(owner.classConstant(className));
+    }
+
+    public void field(int opcode, String owner, String name, String descriptor) {
+        op(opcode);
+        writeShort(this.owner.fieldConstant(owner, name, descriptor));
+    }
+
+    public void invoke(int opcode, String owner, String name, String descriptor) {
+        op(opcode);
+        writeShort(this.owner.methodConstant(owner, name, descriptor, opcode == INVOKEINTERFACE));
+        if (opcode == INVOKEINTERFACE) {
+            code.write(argumentSlots(descriptor) + 1);
+            code.write(0);
+        }
+    }
+
+    public void jump(int opcode, Label target) {
+        branches.add(new Branch(code.size(), target));
+        op(opcode);
+        writeShort(0);
+    }
+
+    public void mark(Label label) {
+        if (label.isPlaced()) {
+            throw new IllegalStateException("Label placed twice");
+        }
+        label.position = code.size();
+    }
+
+    /**
+     * Jumps to {@code handler} with the exception on the stack if an instance of {@code exceptionClass}
+     * is thrown between {@code start} and {@code end}.
+     */
+    public void addHandler(Label start, Label end, Label handler, String exceptionClass) {
+        handlers.add(new Handler(start, end, handler, owner.classConstant(exceptionClass)));
+    }
+
+    public void setMaxs(int maxStack, int maxLocals) {
+        this.maxStack = maxStack;
+        this.maxLocals = maxLocals;
+    }
+
+    /**
+     * Current length of the code in bytes.
+     */
+    public int size() {
+        return code.size();
+    }
+
+    void writeTo(DataOutputStream out, int codeName) throws IOException {
+        byte[] bytes = code.toByteArray();
+        if (bytes.length > MAX_CODE_LENGTH) {
+            throw new IllegalStateException("Method too large: " + bytes.length + " bytes");
+        }
+        for (Branch branch : branches) {
+            if (!branch.target.isPlaced()) {
+                throw new IllegalStateException("Branch to a label that was never placed");
+            }
+            int offset = branch.target.position - branch.position;
+            if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                throw new IllegalStateException("Branch offset out of range: " + offset);
+            }
+            bytes[branch.position + 1] = (byte) (offset >> 8);
+            bytes[branch.position + 2] = (byte) offset;
+        }
+
+        out.writeShort(access);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(codeName);
+        out.writeInt(12 + bytes.length + 8 * handlers.size());
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.writeShort(handlers.size());
+        for (Handler handler : handlers) {
+            if (!handler.start.isPlaced() || !handler.end.isPlaced() || !handler.handler.isPlaced()) {
+                throw new IllegalStateException("Handler with a label that was never placed");
+            }
+            out.writeShort(handler.start.position);
+            out.writeShort(handler.end.position);
+            out.writeShort(handler.handler.position);
+            out.writeShort(handler.type);
+        }
+        out.writeShort(0);
+    }
+
+    private void local(int opcode, int slot) {
+        if (slot > 0xff) {
+            op(WIDE);
+            op(opcode);
+            writeShort(slot);
+        } else {
+            op(opcode);
+            code.write(slot);
+        }
+    }
+
+    private void loadConstant(int index) {
+        if (index > 0xff) {
+            op(LDC_W);
+            writeShort(index);
+        } else {
+            op(LDC);
+            code.write(index);
+        }
+    }
+
+    private void writeShort(int value) {
+        code.write(value >> 8);
+        code.write(value);
+    }
+
+    /**
+     * Number of local slots the arguments of a method descriptor take; only {@code int}, arrays and
+     * objects are expected.
+     */
+    private static int argumentSlots(String descriptor) {
+        int slots = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char c = descriptor.charAt(i);
+            if (c == 'J' || c == 'D') {
+                slots += 2;
+                i++;
+                continue;
+            }
+            slots++;
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+        }
+        return slots;
+    }
+
+    private static class Handler {
+        private final Label start;
+        private final Label end;
+        private final Label handler;
+        private final int type;
+
+        private Handler(Label start, Label end, Label handler, int type) {
+            this.start = start;
+            this.end = end;
+            this.handler = handler;
+            this.type = type;
+        }
+    }
+
+    private static class Branch {
+        private final int position;
+        private final Label target;
+
+        private Branch(int position, Label target) {
+            this.position = position;
+            this.target = target;
+        }
+    }
+}
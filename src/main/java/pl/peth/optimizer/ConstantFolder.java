@@ -0,0 +1,561 @@
+package pl.peth.optimizer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.parser.SyntaxTreeVisitor;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Optimization pass between the {@code Parser} and the {@code CodeGenerator}. Arithmetic on numeric
+ * literals is computed at compile time, variables whose value is known are replaced by that value and
+ * {@code if}/{@code while} branches whose condition is a known constant are dropped or taken unconditionally.
+ * <p>
+ * Locals are tracked through each function in source order. A global is a constant if it has a constant
+ * initializer and is never assigned anywhere. Names are resolved the way the code generator resolves them:
+ * a name refers to a local once a parameter or declaration of that name has been generated in the function.
+ * Branches and loops that declare variables are never dropped, since that would change which names are
+ * locals. Division by zero is left to the machine. The input tree is not modified; unchanged subtrees are
+ * shared with the result.
+ */
+public class ConstantFolder implements ITokenWrapper {
+    private final Map<String, Integer> constantGlobals;
+    private final Set<String> assignedNames;
+    private final ExpressionFolder expressionFolder;
+    private Map<String, Integer> constants;
+    private Set<String> locals;
+    private int foldedOperations;
+    private int propagatedConstants;
+    private int removedBranches;
+
+    public ConstantFolder() {
+        this.constantGlobals = new HashMap<>();
+        this.assignedNames = new HashSet<>();
+        this.expressionFolder = new ExpressionFolder();
+        this.constants = new HashMap<>();
+        this.locals = new HashSet<>();
+    }
+
+    public SyntaxTree fold(SyntaxTree program) {
+        foldedOperations = 0;
+        propagatedConstants = 0;
+        removedBranches = 0;
+        constantGlobals.clear();
+        assignedNames.clear();
+        if (program == null || program.getType() != PROGRAM) {
+            return program;
+        }
+
+        program.walk(new SyntaxTreeVisitor() {
+            @Override
+            public boolean enter(SyntaxTree node) {
+                if (node.getType() == ASSIGNMENT && node.getAttribute("name") != null) {
+                    assignedNames.add(node.getAttribute("name"));
+                }
+                return true;
+            }
+        });
+
+        // Global initializers run before main, in order, and can only see the globals before them.
+        List<SyntaxTree> declarations = new ArrayList<>(program.getChildren());
+        Set<String> declaredGlobals = new HashSet<>();
+        constants = new HashMap<>();
+        locals = new HashSet<>();
+        for (int i = 0; i < declarations.size(); i++) {
+            SyntaxTree declaration = declarations.get(i);
+            if (declaration.getType() != VARIABLE_DECLARATION) {
+                continue;
+            }
+            String name = declaration.getAttribute("name");
+            SyntaxTree folded = declaration;
+            Integer value = 0;
+            if (declaration.getChildCount() > 0) {
+                SyntaxTree initializer = foldExpression(declaration.getChild(0));
+                folded = withChildren(declaration, List.of(initializer));
+                value = numericValue(initializer);
+            }
+            declarations.set(i, folded);
+
+            if (name == null || !declaredGlobals.add(name)) {
+                constantGlobals.remove(name);
+            } else if (value != null && !assignedNames.contains(name)) {
+                constantGlobals.put(name, value);
+            }
+        }
+
+        for (int i = 0; i < declarations.size(); i++) {
+            if (declarations.get(i).getType() == FUNCTION) {
+                declarations.set(i, foldFunction(declarations.get(i)));
+            }
+        }
+        return withChildren(program, declarations);
+    }
+
+    /**
+     * Number of operators computed at compile time by the last {@link #fold}.
+     */
+    public int getFoldedOperations() {
+        return foldedOperations;
+    }
+
+    /**
+     * Number of variable reads replaced by a constant by the last {@link #fold}.
+     */
+    public int getPropagatedConstants() {
+        return propagatedConstants;
+    }
+
+    /**
+     * Number of branches and loops removed by the last {@link #fold}.
+     */
+    public int getRemovedBranches() {
+        return removedBranches;
+    }
+
+    private SyntaxTree foldFunction(SyntaxTree function) {
+        // Generating a nested function switches the code generator to its scope, which is not modelled here.
+        if (containsNestedFunction(function)) {
+            return function;
+        }
+        constants = new HashMap<>();
+        locals = new HashSet<>();
+
+        List<SyntaxTree> children = new ArrayList<>(function.getChildren());
+        for (SyntaxTree child : children) {
+            if (child.getType() == PARAMETER_LIST) {
+                for (SyntaxTree parameter : child.getChildren()) {
+                    if (parameter.getType() == PARAMETER && parameter.getAttribute("name") != null) {
+                        locals.add(parameter.getAttribute("name"));
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < children.size(); i++) {
+            if (children.get(i).getType() == BLOCK) {
+                children.set(i, foldBlock(children.get(i)));
+            }
+        }
+        return withChildren(function, children);
+    }
+
+    private SyntaxTree foldBlock(SyntaxTree block) {
+        List<SyntaxTree> statements = new ArrayList<>();
+        for (SyntaxTree statement : block.getChildren()) {
+            foldStatement(statement, statements);
+        }
+        return withChildren(block, statements);
+    }
+
+    /**
+     * Appends the folded statement to {@code out}: nothing if it was removed, the statements of a branch
+     * that is always taken, or the statement itself.
+     */
+    private void foldStatement(SyntaxTree statement, List<SyntaxTree> out) {
+        switch (statement.getType()) {
+            case VARIABLE_DECLARATION -> out.add(foldDeclaration(statement));
+            case ASSIGNMENT -> out.add(foldAssignment(statement));
+            case IF -> foldIf(statement, out);
+            case WHILE -> foldWhile(statement, out);
+            case RETURN, PRINT -> out.add(foldOperands(statement));
+            case BLOCK -> out.add(foldBlock(statement));
+            case EXPRESSION, TERM, FACTOR, FUNCTION_CALL, NUMERIC, STRING, IDENTIFIER -> out.add(foldExpression(statement));
+            default -> {
+                forgetWrittenVariables(statement);
+                out.add(statement);
+            }
+        }
+    }
+
+    private SyntaxTree foldDeclaration(SyntaxTree declaration) {
+        String name = declaration.getAttribute("name");
+        if (name == null) {
+            return declaration;
+        }
+
+        // The code generator defines the local before its initializer, which therefore sees the new slot.
+        locals.add(name);
+        constants.remove(name);
+        if (declaration.getChildCount() == 0) {
+            constants.put(name, 0);
+            return declaration;
+        }
+
+        SyntaxTree initializer = foldExpression(declaration.getChild(0));
+        Integer value = numericValue(initializer);
+        if (value != null) {
+            constants.put(name, value);
+        }
+        return withChildren(declaration, List.of(initializer));
+    }
+
+    private SyntaxTree foldAssignment(SyntaxTree assignment) {
+        SyntaxTree folded = foldOperands(assignment);
+        String name = assignment.getAttribute("name");
+        if (name != null && locals.contains(name)) {
+            Integer value = folded.getChildCount() > 0 ? numericValue(folded.getChild(0)) : Integer.valueOf(0);
+            if (value != null) {
+                constants.put(name, value);
+            } else {
+                constants.remove(name);
+            }
+        }
+        return folded;
+    }
+
+    private void foldIf(SyntaxTree node, List<SyntaxTree> out) {
+        List<SyntaxTree> conditions = new ArrayList<>();
+        List<SyntaxTree> blocks = new ArrayList<>();
+        List<SyntaxTree> originals = new ArrayList<>();
+        SyntaxTree elseNode = null;
+
+        for (SyntaxTree child : node.getChildren()) {
+            byte type = child.getType();
+            if (type == CONDITION && conditions.isEmpty()) {
+                conditions.add(child);
+                originals.add(null);
+            } else if (type == BLOCK && blocks.isEmpty()) {
+                blocks.add(child);
+            } else if (type == ELSE_IF && child.getChildCount() == 2
+                    && child.getChild(0).getType() == CONDITION && child.getChild(1).getType() == BLOCK) {
+                conditions.add(child.getChild(0));
+                blocks.add(child.getChild(1));
+                originals.add(child);
+            } else if (type == ELSE) {
+                elseNode = child;
+            } else {
+                forgetWrittenVariables(node);
+                out.add(node);
+                return;
+            }
+        }
+        if (conditions.size() != blocks.size() || conditions.isEmpty()) {
+            forgetWrittenVariables(node);
+            out.add(node);
+            return;
+        }
+
+        Map<String, Integer> entry = constants;
+        List<Map<String, Integer>> exits = new ArrayList<>();
+        int branchCount = conditions.size();
+        int alwaysTaken = -1;
+        boolean[] keep = new boolean[branchCount];
+
+        for (int i = 0; i < branchCount; i++) {
+            constants = new HashMap<>(entry);
+            SyntaxTree condition = foldOperands(conditions.get(i));
+            Integer value = conditionValue(condition);
+            conditions.set(i, condition);
+            blocks.set(i, foldBlock(blocks.get(i)));
+
+            boolean reachable = alwaysTaken < 0;
+            boolean declares = declaresVariables(blocks.get(i));
+            keep[i] = declares || (reachable && (value == null || value != 0));
+            if (keep[i]) {
+                exits.add(constants);
+            } else {
+                removedBranches++;
+            }
+            if (reachable && value != null && value != 0) {
+                alwaysTaken = i;
+            }
+        }
+
+        SyntaxTree foldedElse = null;
+        if (elseNode != null) {
+            // The else part is folded on its own, its declarations do not leak into the rest of the function.
+            Set<String> outerLocals = locals;
+            constants = new HashMap<>(entry);
+            locals = new HashSet<>(outerLocals);
+            foldedElse = foldBlock(elseNode);
+            locals = outerLocals;
+            if (alwaysTaken < 0 || declaresVariables(foldedElse)) {
+                exits.add(constants);
+            } else {
+                foldedElse = null;
+                removedBranches++;
+            }
+        }
+
+        int firstKept = -1;
+        int keptCount = 0;
+        for (int i = 0; i < branchCount; i++) {
+            if (keep[i]) {
+                keptCount++;
+                if (firstKept < 0) {
+                    firstKept = i;
+                }
+            }
+        }
+
+        if (keptCount == 0 && foldedElse == null) {
+            constants = entry;
+            return;
+        }
+        if (keptCount == 1 && firstKept == alwaysTaken && foldedElse == null) {
+            constants = exits.get(0);
+            out.addAll(blocks.get(firstKept).getChildren());
+            return;
+        }
+        if (alwaysTaken < 0 && foldedElse == null) {
+            exits.add(entry);
+        }
+        constants = merge(exits);
+
+        if (keptCount == 0) {
+            // An else part needs a conditional branch to hang on.
+            out.add(withChildren(node, List.of(conditions.get(0), blocks.get(0), foldedElse)));
+            removedBranches--;
+            return;
+        }
+
+        List<SyntaxTree> children = new ArrayList<>();
+        for (int i = 0; i < branchCount; i++) {
+            if (!keep[i]) {
+                continue;
+            }
+            if (children.isEmpty()) {
+                children.add(conditions.get(i));
+                children.add(blocks.get(i));
+            } else {
+                SyntaxTree elseIf = originals.get(i) != null ? originals.get(i) : new SyntaxTree(ELSE_IF);
+                children.add(withChildren(elseIf, List.of(conditions.get(i), blocks.get(i))));
+            }
+        }
+        if (foldedElse != null) {
+            children.add(foldedElse);
+        }
+        out.add(withChildren(node, children));
+    }
+
+    private void foldWhile(SyntaxTree node, List<SyntaxTree> out) {
+        if (node.getChildCount() != 2 || node.getChild(0).getType() != CONDITION || node.getChild(1).getType() != BLOCK) {
+            forgetWrittenVariables(node);
+            out.add(node);
+            return;
+        }
+
+        // Variables written in the body are unknown at the top of every iteration.
+        SyntaxTree body = node.getChild(1);
+        forgetWrittenVariables(body);
+
+        SyntaxTree condition = foldOperands(node.getChild(0));
+        Integer value = conditionValue(condition);
+        if (value != null && value == 0 && !declaresVariables(body)) {
+            removedBranches++;
+            return;
+        }
+
+        Map<String, Integer> entry = constants;
+        constants = new HashMap<>(entry);
+        SyntaxTree foldedBody = foldBlock(body);
+        constants = entry;
+        out.add(withChildren(node, List.of(condition, foldedBody)));
+    }
+
+    private void forgetWrittenVariables(SyntaxTree node) {
+        node.walk(new SyntaxTreeVisitor() {
+            @Override
+            public boolean enter(SyntaxTree child) {
+                if (child.getType() == ASSIGNMENT || child.getType() == VARIABLE_DECLARATION) {
+                    constants.remove(child.getAttribute("name"));
+                }
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Folds every child of {@code node} as an expression.
+     */
+    private SyntaxTree foldOperands(SyntaxTree node) {
+        List<SyntaxTree> children = new ArrayList<>(node.getChildCount());
+        for (SyntaxTree child : node.getChildren()) {
+            children.add(foldExpression(child));
+        }
+        return withChildren(node, children);
+    }
+
+    private SyntaxTree foldExpression(SyntaxTree expression) {
+        expression.walk(expressionFolder);
+        return expressionFolder.results.pop();
+    }
+
+    private SyntaxTree resolve(SyntaxTree identifier) {
+        String name = identifier.getValue();
+        Integer value = locals.contains(name) ? constants.get(name) : constantGlobals.get(name);
+        if (value == null) {
+            return identifier;
+        }
+        propagatedConstants++;
+        return new SyntaxTree(NUMERIC, Integer.toString(value));
+    }
+
+    private SyntaxTree foldOperation(SyntaxTree node, SyntaxTree left, SyntaxTree right) {
+        Integer a = numericValue(left);
+        Integer b = numericValue(right);
+        String operator = node.getAttribute("operator");
+        if (a == null || b == null || operator == null) {
+            return null;
+        }
+
+        Integer result = switch (operator) {
+            case "+" -> a + b;
+            case "-" -> a - b;
+            case "*" -> a * b;
+            case "/" -> b != 0 ? a / b : null;
+            default -> null;
+        };
+        if (result == null) {
+            return null;
+        }
+        foldedOperations++;
+        return new SyntaxTree(NUMERIC, Integer.toString(result));
+    }
+
+    /**
+     * Value of a folded {@code CONDITION} as the machine computes it, or {@code null} if it is not constant.
+     */
+    private Integer conditionValue(SyntaxTree condition) {
+        if (condition.getChildCount() != 2) {
+            return null;
+        }
+        Integer a = numericValue(condition.getChild(0));
+        Integer b = numericValue(condition.getChild(1));
+        String operator = condition.getAttribute("operator");
+        if (a == null || b == null || operator == null) {
+            return null;
+        }
+
+        Boolean result = switch (operator) {
+            case "==" -> a.equals(b);
+            case "!=" -> !a.equals(b);
+            case "<" -> a < b;
+            case "<=" -> a <= b;
+            case ">" -> a > b;
+            case ">=" -> a >= b;
+            default -> null;
+        };
+        if (result == null) {
+            return null;
+        }
+        foldedOperations++;
+        return result ? 1 : 0;
+    }
+
+    private static Integer numericValue(SyntaxTree node) {
+        if (node == null || node.getType() != NUMERIC) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(node.getValue());
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static boolean containsNestedFunction(SyntaxTree function) {
+        boolean[] found = new boolean[1];
+        for (SyntaxTree child : function.getChildren()) {
+            child.walk(new SyntaxTreeVisitor() {
+                @Override
+                public boolean enter(SyntaxTree node) {
+                    found[0] |= node.getType() == FUNCTION;
+                    return !found[0];
+                }
+            });
+        }
+        return found[0];
+    }
+
+    private static boolean declaresVariables(SyntaxTree node) {
+        boolean[] found = new boolean[1];
+        node.walk(new SyntaxTreeVisitor() {
+            @Override
+            public boolean enter(SyntaxTree child) {
+                found[0] |= child.getType() == VARIABLE_DECLARATION;
+                return !found[0];
+            }
+        });
+        return found[0];
+    }
+
+    /**
+     * Constants that have the same value on every one of the given paths.
+     */
+    private static Map<String, Integer> merge(List<Map<String, Integer>> paths) {
+        Map<String, Integer> merged = new HashMap<>(paths.get(0));
+        for (int i = 1; i < paths.size(); i++) {
+            Map<String, Integer> path = paths.get(i);
+            merged.entrySet().removeIf(entry -> !entry.getValue().equals(path.get(entry.getKey())));
+        }
+        return merged;
+    }
+
+    /**
+     * Returns {@code node} itself if {@code children} are its children, otherwise a copy with {@code children}.
+     */
+    private static SyntaxTree withChildren(SyntaxTree node, List<SyntaxTree> children) {
+        List<SyntaxTree> current = node.getChildren();
+        if (current.size() == children.size()) {
+            boolean same = true;
+            for (int i = 0; i < children.size() && same; i++) {
+                same = current.get(i) == children.get(i);
+            }
+            if (same) {
+                return node;
+            }
+        }
+
+        SyntaxTree copy = node.copyNode();
+        for (SyntaxTree child : children) {
+            copy.addChild(child);
+        }
+        return copy;
+    }
+
+    /**
+     * Folds an expression bottom-up on an explicit stack: operands are folded on the way down, an
+     * operator is computed on the way up once both of its operands are constants.
+     */
+    private class ExpressionFolder implements SyntaxTreeVisitor {
+        private final Deque<SyntaxTree> results = new ArrayDeque<>();
+
+        @Override
+        public boolean enter(SyntaxTree node) {
+            switch (node.getType()) {
+                case EXPRESSION, TERM, FACTOR, FUNCTION_CALL, CONDITION -> {
+                    return true;
+                }
+                case IDENTIFIER -> results.push(resolve(node));
+                default -> results.push(node);
+            }
+            return false;
+        }
+
+        @Override
+        public void leave(SyntaxTree node) {
+            int count = node.getChildCount();
+            SyntaxTree[] operands = new SyntaxTree[count];
+            for (int i = count - 1; i >= 0; i--) {
+                operands[i] = results.pop();
+            }
+
+            byte type = node.getType();
+            if ((type == EXPRESSION || type == TERM) && count == 2) {
+                SyntaxTree folded = foldOperation(node, operands[0], operands[1]);
+                if (folded != null) {
+                    results.push(folded);
+                    return;
+                }
+            }
+            results.push(withChildren(node, List.of(operands)));
+        }
+    }
+}
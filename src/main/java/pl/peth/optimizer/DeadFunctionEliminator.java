@@ -0,0 +1,120 @@
+package pl.peth.optimizer;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.parser.SyntaxTreeVisitor;
+import pl.peth.common.tokens.ITokenWrapper;
+
+/**
+ * Removes top-level functions that can never be called. The call graph is followed from {@code main}
+ * and from the initializers of global variables; every function not reached that way is dropped before
+ * code generation. Calls are matched by name, like the linker does, so all definitions of a reachable
+ * name are kept. A program without {@code main} is returned as it is.
+ */
+public class DeadFunctionEliminator implements ITokenWrapper {
+    private static final String ENTRY_POINT = "main";
+
+    private final Set<String> reachable;
+    private int removedFunctions;
+
+    public DeadFunctionEliminator() {
+        this.reachable = new HashSet<>();
+    }
+
+    public SyntaxTree eliminate(SyntaxTree program) {
+        reachable.clear();
+        removedFunctions = 0;
+        if (program == null || program.getType() != PROGRAM) {
+            return program;
+        }
+
+        Map<String, List<SyntaxTree>> definitions = new HashMap<>();
+        for (SyntaxTree child : program.getChildren()) {
+            if (child.getType() == FUNCTION && child.getAttribute("name") != null) {
+                definitions.computeIfAbsent(child.getAttribute("name"), name -> new ArrayList<>()).add(child);
+            }
+        }
+        if (!definitions.containsKey(ENTRY_POINT)) {
+            return program;
+        }
+
+        Deque<String> pending = new ArrayDeque<>();
+        CallCollector collector = new CallCollector(definitions, pending);
+        markReachable(ENTRY_POINT, definitions, pending);
+        for (SyntaxTree child : program.getChildren()) {
+            if (child.getType() == VARIABLE_DECLARATION) {
+                child.walk(collector);
+            }
+        }
+        while (!pending.isEmpty()) {
+            for (SyntaxTree function : definitions.get(pending.pop())) {
+                function.walk(collector);
+            }
+        }
+
+        List<SyntaxTree> kept = new ArrayList<>(program.getChildCount());
+        for (SyntaxTree child : program.getChildren()) {
+            if (child.getType() == FUNCTION && child.getAttribute("name") != null
+                    && !reachable.contains(child.getAttribute("name"))) {
+                removedFunctions++;
+            } else {
+                kept.add(child);
+            }
+        }
+        if (removedFunctions == 0) {
+            return program;
+        }
+
+        SyntaxTree result = program.copyNode();
+        for (SyntaxTree child : kept) {
+            result.addChild(child);
+        }
+        return result;
+    }
+
+    /**
+     * Number of function definitions removed by the last {@link #eliminate}.
+     */
+    public int getRemovedFunctions() {
+        return removedFunctions;
+    }
+
+    /**
+     * Names of the functions kept by the last {@link #eliminate}.
+     */
+    public Set<String> getReachableFunctions() {
+        return reachable;
+    }
+
+    private void markReachable(String name, Map<String, List<SyntaxTree>> definitions, Deque<String> pending) {
+        if (definitions.containsKey(name) && reachable.add(name)) {
+            pending.push(name);
+        }
+    }
+
+    private class CallCollector implements SyntaxTreeVisitor {
+        private final Map<String, List<SyntaxTree>> definitions;
+        private final Deque<String> pending;
+
+        private CallCollector(Map<String, List<SyntaxTree>> definitions, Deque<String> pending) {
+            this.definitions = definitions;
+            this.pending = pending;
+        }
+
+        @Override
+        public boolean enter(SyntaxTree node) {
+            if (node.getType() == FUNCTION_CALL && node.getAttribute("name") != null) {
+                markReachable(node.getAttribute("name"), definitions, pending);
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package pl.peth.vm;
+
+import java.util.Arrays;
+import java.util.List;
+
+import pl.peth.generator.CompiledProgram;
+import pl.peth.generator.IOperationCodes;
+
+/**
+ * The interpreter loop of {@link FastStackMachine}, {@link TieredStackMachine} and the packed path of
+ * {@link StackMachine}. A program is checked
+ * by the {@link StackVerifier} once and then decoded into an array of its own: jump and call targets
+ * become array indices, so the program counter indexes the code directly. The loop is a single dense
+ * {@code switch} over the operation codes with the machine state in locals. As the program is verified,
+ * pushes and pops are not checked; only each {@code CALL} checks that the callee's whole frame fits on
+ * the stack, and a division by zero is caught. The stack grows like the one of {@link StackMachine}'s list
+ * path, up to the same limit, so a program overflows at the same call on every engine. Every interpreted
+ * instruction is counted in a local, which costs one add per step.
+ * <p>
+ * A profiling subclass is told about every call and backward jump and may run a callee itself; see
+ * {@link #callCompiled} and {@link #loopIteration}. Without profiling these cost one test of a constant.
+ */
+abstract class DecodedInterpreter implements IExecutionEngine, IOperationCodes {
+    private static final int INITIAL_STACK_SIZE = 256;
+    /**
+     * Returned by {@link #callCompiled} if the callee has to be interpreted.
+     */
+    static final int NOT_COMPILED = -1;
+
+    private static final int GLOBAL_BASE = 0;
+    private static final int RETURN_TO_CALLER = -1;
+
+    int[] stack;
+    /**
+     * Instructions interpreted by the last run; code run by {@link #callCompiled} is not counted.
+     */
+    long executedInstructions;
+    private int maxStackSize;
+    private final boolean profiled;
+    private final StackVerifier verifier;
+    private CompiledProgram decodedProgram;
+    private boolean verified;
+    private int[] code;
+    private int[] frameSizes;
+    private List<String> stringTable;
+
+    DecodedInterpreter(boolean profiled) {
+        this.stack = new int[INITIAL_STACK_SIZE];
+        this.maxStackSize = StackMachine.DEFAULT_MAX_STACK_SIZE;
+        this.profiled = profiled;
+        this.verifier = new StackVerifier();
+    }
+
+    /**
+     * Limits the stack of the following executions to {@code words}, globals included.
+     */
+    public void setMaxStackSize(int words) {
+        if (words <= 0) {
+            throw new IllegalArgumentException("Invalid stack size: " + words);
+        }
+        this.maxStackSize = words;
+    }
+
+    public int getMaxStackSize() {
+        return maxStackSize;
+    }
+
+    /**
+     * Words currently allocated for the stack.
+     */
+    public int getStackCapacity() {
+        return stack.length;
+    }
+
+    /**
+     * Runs {@code program}. A program the {@link StackVerifier} rejects is not run and returns 0, as
+     * does a run stopped by an error.
+     */
+    @Override
+    public int execute(CompiledProgram program) {
+        executedInstructions = 0;
+        if (program != decodedProgram) {
+            decodedProgram = program;
+            verified = verifier.verify(program);
+            if (verified) {
+                code = decode(program);
+                frameSizes = verifier.getFrameSizes();
+                decoded(program);
+            }
+        }
+        if (!verified) {
+            return 0;
+        }
+        stringTable = program.getStringTable();
+
+        try {
+            reserve(verifier.getPrologueSize());
+            return interpret(0, 0, 0);
+        } catch (Stop stop) {
+            error(stop.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Called when a new program has been verified and decoded.
+     */
+    void decoded(CompiledProgram program) {
+    }
+
+    /**
+     * Called by profiling machines at every {@code CALL} before the frame is built. Returns the stack
+     * pointer after the call if the callee was run here, with its result in place of the arguments,
+     * or {@link #NOT_COMPILED} if it is to be interpreted.
+     *
+     * @param sp the stack pointer with the arguments pushed
+     */
+    int callCompiled(int address, int sp) {
+        return NOT_COMPILED;
+    }
+
+    /**
+     * Called by profiling machines at every backward jump, with the address of the jump.
+     */
+    void loopIteration(int address) {
+    }
+
+    /**
+     * Interprets the function at {@code address} until it returns, as if it was called with {@code sp}
+     * as stack pointer and the arguments below it.
+     */
+    final int interpretCall(int address, int sp) {
+        checkFrame(address, sp);
+        stack[sp] = RETURN_TO_CALLER;
+        stack[sp + 1] = 0;
+        return interpret(address << 1, sp + 2, sp + 2);
+    }
+
+    /**
+     * Makes room for a call of the function at {@code address} with stack pointer {@code sp}; the
+     * stack may be replaced by a larger one.
+     */
+    final void checkFrame(int address, int sp) {
+        if (sp + frameSizes[address] > stack.length) {
+            reserve(sp + frameSizes[address]);
+        }
+    }
+
+    void print(int value) {
+        System.out.println("OUTPUT: " + value);
+    }
+
+    void printString(int index) {
+        if (stringTable != null && index >= 0 && index < stringTable.size()) {
+            System.out.println("OUTPUT: " + stringTable.get(index));
+        } else {
+            error("ERROR: Invalid string index: " + index);
+        }
+    }
+
+    /**
+     * Runs from {@code pc} until {@code HALT}, or until a function called by {@link #interpretCall} returns.
+     */
+    private int interpret(int pc, int sp, int fp) {
+        final int[] code = this.code;
+        int[] stack = this.stack;
+        final int[] frameSizes = this.frameSizes;
+        final boolean profiled = this.profiled;
+        long executed = 0;
+
+        try {
+            for (;;) {
+                int operand = code[pc + 1];
+                executed++;
+                switch (code[pc]) {
+                    case OP_PUSH -> {
+                        stack[sp] = operand;
+                        sp++;
+                        pc += 2;
+                    }
+                    case OP_LOAD -> {
+                        stack[sp] = stack[fp + operand];
+                        sp++;
+                        pc += 2;
+                    }
+                    case OP_STORE -> {
+                        stack[fp + operand] = stack[sp - 1];
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_GLOAD -> {
+                        stack[sp] = stack[GLOBAL_BASE + operand];
+                        sp++;
+                        pc += 2;
+                    }
+                    case OP_GSTORE -> {
+                        stack[GLOBAL_BASE + operand] = stack[sp - 1];
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_POP -> {
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_DUP -> {
+                        stack[sp] = stack[sp - 1];
+                        sp++;
+                        pc += 2;
+                    }
+                    case OP_ADD -> {
+                        stack[sp - 2] = stack[sp - 2] + stack[sp - 1];
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_SUB -> {
+                        stack[sp - 2] = stack[sp - 2] - stack[sp - 1];
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_MUL -> {
+                        stack[sp - 2] = stack[sp - 2] * stack[sp - 1];
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_DIV -> {
+                        stack[sp - 2] = stack[sp - 2] / stack[sp - 1];
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_NEG -> {
+                        stack[sp - 1] = -stack[sp - 1];
+                        pc += 2;
+                    }
+                    case OP_CMP_EQ -> {
+                        stack[sp - 2] = stack[sp - 2] == stack[sp - 1] ? 1 : 0;
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_CMP_NEQ -> {
+                        stack[sp - 2] = stack[sp - 2] != stack[sp - 1] ? 1 : 0;
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_CMP_GT -> {
+                        stack[sp - 2] = stack[sp - 2] > stack[sp - 1] ? 1 : 0;
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_CMP_LT -> {
+                        stack[sp - 2] = stack[sp - 2] < stack[sp - 1] ? 1 : 0;
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_CMP_GTE -> {
+                        stack[sp - 2] = stack[sp - 2] >= stack[sp - 1] ? 1 : 0;
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_CMP_LTE -> {
+                        stack[sp - 2] = stack[sp - 2] <= stack[sp - 1] ? 1 : 0;
+                        sp--;
+                        pc += 2;
+                    }
+                    case OP_JMP -> {
+                        if (profiled && operand <= pc) {
+                            loopIteration(pc >> 1);
+                        }
+                        pc = operand;
+                    }
+                    case OP_JZ -> {
+                        pc = stack[sp - 1] == 0 ? operand : pc + 2;
+                        sp--;
+                    }
+                    case OP_JNZ -> {
+                        pc = stack[sp - 1] != 0 ? operand : pc + 2;
+                        sp--;
+                    }
+                    case OP_CALL -> {
+                        int after = profiled ? callCompiled(operand >> 1, sp) : NOT_COMPILED;
+                        if (after != NOT_COMPILED) {
+                            stack = this.stack;
+                            sp = after;
+                            pc += 2;
+                        } else {
+                            if (sp + frameSizes[operand >> 1] > stack.length) {
+                                reserve(sp + frameSizes[operand >> 1]);
+                                stack = this.stack;
+                            }
+                            stack[sp] = pc + 2;
+                            stack[sp + 1] = fp;
+                            sp += 2;
+                            fp = sp;
+                            pc = operand;
+                        }
+                    }
+                    case OP_RET -> {
+                        int returnValue = stack[sp - 1];
+                        int returnAddress = stack[fp - 2];
+                        sp = fp - 2 - operand;
+                        fp = stack[fp - 1];
+                        if (returnAddress == RETURN_TO_CALLER) {
+                            return returnValue;
+                        }
+                        stack[sp] = returnValue;
+                        sp++;
+                        pc = returnAddress;
+                    }
+                    case OP_ENTER -> {
+                        sp += operand;
+                        pc += 2;
+                    }
+                    case OP_LEAVE -> {
+                        sp = fp;
+                        pc += 2;
+                    }
+                    case OP_NOP -> pc += 2;
+                    case OP_HALT -> {
+                        return top(sp);
+                    }
+                    case OP_PRINT -> {
+                        print(stack[sp - 1]);
+                        pc += 2;
+                    }
+                    case OP_PRINT_STR -> {
+                        printString(stack[sp - 1]);
+                        sp--;
+                        pc += 2;
+                    }
+                    default -> throw new Stop("ERROR: Unknown operation code: " + CompiledProgram.decode(code[pc]));
+                }
+            }
+        } catch (ArithmeticException ex) {
+            throw new Stop("ERROR: Division by zero");
+        } finally {
+            executedInstructions += executed;
+        }
+    }
+
+    /**
+     * Grows the stack to at least {@code words}, doubling it to keep copies rare, or stops the machine
+     * with a stack overflow if {@code words} exceeds the maximum.
+     */
+    private void reserve(int words) {
+        if (words <= stack.length) {
+            return;
+        }
+        if (words > maxStackSize) {
+            throw new Stop("ERROR: Stack overflow");
+        }
+        stack = Arrays.copyOf(stack, Math.min(maxStackSize, Math.max(words, stack.length * 2)));
+    }
+
+    private int top(int sp) {
+        return sp > 0 ? stack[sp - 1] : 0;
+    }
+
+    /**
+     * Copies the packed code with targets turned into array indices and a closing {@code HALT}, which
+     * only an empty program reaches.
+     */
+    private static int[] decode(CompiledProgram program) {
+        int size = program.size();
+        int[] code = new int[2 * size + 2];
+        System.arraycopy(program.getCode(), 0, code, 0, 2 * size);
+        code[2 * size] = OP_HALT;
+        for (int i = 0; i < 2 * size; i += 2) {
+            int operation = code[i];
+            if (operation == OP_JMP || operation == OP_JZ || operation == OP_JNZ || operation == OP_CALL) {
+                code[i + 1] *= 2;
+            }
+        }
+        return code;
+    }
+
+    private void error(String message) {
+        System.err.println(message);
+    }
+
+    /**
+     * Ends the run with a machine error, from wherever in interpreted or compiled code it happened.
+     */
+    static final class Stop extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Stop(String message) {
+            super(message, null, false, false);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package pl.peth.vm;
+
+/**
+ * Interpreter engine for packed programs that does as little as possible per step: the loop of
+ * {@link DecodedInterpreter} without profiling. The program is verified once and runs without checks
+ * on push and pop.
+ * <p>
+ * Executed instructions are not reported and there is no debug mode; use {@link StackMachine} for that.
+ */
+public class FastStackMachine extends DecodedInterpreter {
+    public FastStackMachine() {
+        super(false);
+    }
+}
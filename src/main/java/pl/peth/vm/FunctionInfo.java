@@ -0,0 +1,20 @@
+package pl.peth.vm;
+
+import pl.peth.generator.FunctionLayout;
+
+/**
+ * What the {@link TieredStackMachine} knows about one function of a program: its layout, how often
+ * it ran and, once translated, its compiled code.
+ */
+final class FunctionInfo {
+    final FunctionLayout layout;
+
+    int hotness;
+    boolean compilable;
+    ICompiledFunction compiled;
+
+    FunctionInfo(FunctionLayout layout) {
+        this.layout = layout;
+        this.compilable = layout.getParameterCount() >= 0 && layout.getLocalCount() >= 0;
+    }
+}
@@ -0,0 +1,16 @@
+package pl.peth.vm;
+
+/**
+ * A function of a packed program translated to JVM code by the {@link TieredStackMachine}.
+ */
+public interface ICompiledFunction {
+    /**
+     * Runs the function and returns its result.
+     *
+     * @param stack        the machine stack, holding the globals and the arguments
+     * @param framePointer where the interpreter would have put the frame: the arguments lie below it as
+     *                     in an interpreted call, and calls from the function are placed above it, so
+     *                     the stack limit is enforced as in the interpreter
+     */
+    int invoke(TieredStackMachine machine, int[] stack, int framePointer);
+}
@@ -0,0 +1,17 @@
+package pl.peth.vm;
+
+import pl.peth.generator.CompiledProgram;
+
+/**
+ * A machine that runs packed programs. {@link StackMachine} checks every step and can trace it;
+ * {@link FastStackMachine} and {@link TieredStackMachine} trade that for speed. All of them produce the
+ * same output and results: they share one stack limit, so a program runs out of stack at the same call
+ * on each, and every run stopped by an error returns 0.
+ */
+public interface IExecutionEngine {
+    /**
+     * Runs {@code program} from address 0 and returns the value on top of the stack, or 0 if it is
+     * empty or the run stopped with an error.
+     */
+    int execute(CompiledProgram program);
+}
@@ -0,0 +1,155 @@
+package pl.peth.vm;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.List;
+
+import pl.peth.generator.FunctionLayout;
+import pl.peth.jvm.ClassFileWriter;
+import pl.peth.jvm.FunctionTranslator;
+import pl.peth.jvm.MethodWriter;
+
+/**
+ * Translates one function of a packed program into a hidden class implementing {@link ICompiledFunction}.
+ * Arguments are passed on the machine stack, where the interpreter would have them, and calls go back
+ * through {@link TieredStackMachine#call(int, int)}, which decides between the compiled and the
+ * interpreted callee. Globals are read from the machine stack as well. Functions the
+ * {@link FunctionTranslator} cannot handle stay in the interpreter.
+ */
+final class JitCompiler extends FunctionTranslator {
+    private static final String CLASS_NAME = "pl/peth/vm/JitFunction";
+    private static final String FUNCTION_INTERFACE = "pl/peth/vm/ICompiledFunction";
+    private static final String MACHINE_CLASS = "pl/peth/vm/TieredStackMachine";
+    private static final String INVOKE_DESCRIPTOR = "(Lpl/peth/vm/TieredStackMachine;[II)I";
+
+    private static final int MACHINE_SLOT = 1;
+    private static final int STACK_SLOT = 2;
+    private static final int FRAME_POINTER_SLOT = 3;
+    private static final int FIRST_VARIABLE_SLOT = 4;
+
+    private final MethodHandles.Lookup lookup;
+
+    /**
+     * @param code decoded program, two ints per instruction
+     */
+    JitCompiler(int[] code, List<FunctionLayout> functions) {
+        super(code, functions);
+        this.lookup = MethodHandles.lookup();
+    }
+
+    /**
+     * Compiles {@code function} and stores the result in it. Returns {@code false} if the function
+     * cannot be translated; it is then marked so it is not tried again.
+     */
+    boolean compile(FunctionInfo function) {
+        function.compilable = false;
+        FunctionLayout layout = function.layout;
+        int[] depths = stackDepths(layout);
+        if (depths == null) {
+            return false;
+        }
+
+        try {
+            MethodHandles.Lookup hidden = lookup.defineHiddenClass(translate(layout, depths), true);
+            function.compiled = (ICompiledFunction) hidden.findConstructor(hidden.lookupClass(),
+                    MethodType.methodType(void.class)).invoke();
+        } catch (Throwable ex) {
+            error("Cannot compile " + layout.getName() + ": " + ex);
+            return false;
+        }
+        return true;
+    }
+
+    private byte[] translate(FunctionLayout function, int[] depths) {
+        ClassFileWriter writer = new ClassFileWriter(ACC_FINAL | ACC_SUPER | ACC_SYNTHETIC, CLASS_NAME,
+                "java/lang/Object", FUNCTION_INTERFACE);
+
+        MethodWriter constructor = writer.addMethod(ACC_PUBLIC, "<init>", "()V");
+        constructor.loadReference(0);
+        constructor.invoke(INVOKESPECIAL, "java/lang/Object", "<init>", "()V");
+        constructor.op(RETURN);
+        constructor.setMaxs(1, 1);
+
+        MethodWriter method = writer.addMethod(ACC_PUBLIC, "invoke", INVOKE_DESCRIPTOR);
+        int parameters = function.getParameterCount();
+        for (int i = 0; i < parameters; i++) {
+            method.loadReference(STACK_SLOT);
+            method.loadInt(FRAME_POINTER_SLOT);
+            method.pushInt(i - parameters - StackVerifier.CALL_OVERHEAD);
+            method.op(IADD);
+            method.op(IALOAD);
+            method.storeInt(FIRST_VARIABLE_SLOT + i);
+        }
+        for (int i = 0; i < function.getLocalCount(); i++) {
+            method.op(ICONST_0);
+            method.storeInt(FIRST_VARIABLE_SLOT + parameters + i);
+        }
+        translate(method, function, depths, FIRST_VARIABLE_SLOT);
+        return writer.toByteArray();
+    }
+
+    @Override
+    protected void emitGlobalLoad(MethodWriter method, int offset) {
+        method.loadReference(STACK_SLOT);
+        method.pushInt(offset);
+        method.op(IALOAD);
+    }
+
+    @Override
+    protected void emitGlobalStore(MethodWriter method, int offset) {
+        method.loadReference(STACK_SLOT);
+        method.op(SWAP);
+        method.pushInt(offset);
+        method.op(SWAP);
+        method.op(IASTORE);
+    }
+
+    /**
+     * Moves the arguments to the machine stack, where the interpreter would have pushed them, and
+     * calls the machine with the stack pointer the interpreter would have at this call. The call may
+     * have grown the stack, so it is loaded again.
+     */
+    @Override
+    protected void emitCall(MethodWriter method, FunctionLayout callee, int frameHeight, int firstTemporary) {
+        int arguments = callee.getParameterCount();
+        for (int i = arguments - 1; i >= 0; i--) {
+            method.storeInt(firstTemporary + i);
+        }
+        for (int i = 0; i < arguments; i++) {
+            method.loadReference(STACK_SLOT);
+            method.loadInt(FRAME_POINTER_SLOT);
+            method.pushInt(frameHeight - arguments + i);
+            method.op(IADD);
+            method.loadInt(firstTemporary + i);
+            method.op(IASTORE);
+        }
+        method.loadReference(MACHINE_SLOT);
+        method.pushInt(callee.getEntry());
+        method.loadInt(FRAME_POINTER_SLOT);
+        method.pushInt(frameHeight);
+        method.op(IADD);
+        method.invoke(INVOKEVIRTUAL, MACHINE_CLASS, "call", "(II)I");
+        method.loadReference(MACHINE_SLOT);
+        method.field(GETFIELD, MACHINE_CLASS, "stack", "[I");
+        method.storeReference(STACK_SLOT);
+    }
+
+    @Override
+    protected void emitPrint(MethodWriter method) {
+        method.op(DUP);
+        method.loadReference(MACHINE_SLOT);
+        method.op(SWAP);
+        method.invoke(INVOKEVIRTUAL, MACHINE_CLASS, "print", "(I)V");
+    }
+
+    @Override
+    protected void emitPrintString(MethodWriter method) {
+        method.loadReference(MACHINE_SLOT);
+        method.op(SWAP);
+        method.invoke(INVOKEVIRTUAL, MACHINE_CLASS, "printString", "(I)V");
+    }
+
+    private static void error(String message) {
+        System.err.println("JIT Error: " + message);
+    }
+}
@@ -1,30 +1,42 @@
 package pl.peth.vm;
 
+import java.util.Arrays;
 import java.util.List;
 
+import pl.peth.generator.CompiledProgram;
 import pl.peth.generator.Instruction;
 import pl.peth.generator.OperationCode;
 
-public class StackMachine {
-    private static final int STACK_SIZE = 1024;
+/**
+ * Interpreter for generated code. Globals, frames and operands share one stack that starts small and
+ * grows on demand up to {@link #setMaxStackSize a configurable maximum}; a program that needs more
+ * stops with a stack overflow at the same point no matter how far the stack had grown before. A run
+ * stopped by an error returns 0.
+ * <p>
+ * Packed programs run in the loop of {@link DecodedInterpreter}, like on {@link FastStackMachine};
+ * this machine adds the count of executed instructions and a traced debug mode.
+ */
+public class StackMachine extends DecodedInterpreter {
+    public static final int DEFAULT_MAX_STACK_SIZE = 1 << 20;
     private static final int GLOBAL_BASE = 0;
 
-    private final int[] stack;
     private List<String> stringTable;
     private int stackPointer;
     private int framePointer;
     private int programCounter;
     private int globalCounter;
     private boolean isRunning;
+    private boolean failed;
     private boolean isDebugMode;
 
     public StackMachine() {
-        this.stack = new int[STACK_SIZE];
+        super(false);
         this.stackPointer = 0;
         this.framePointer = 0;
         this.programCounter = 0;
         this.globalCounter = 0;
         this.isRunning = false;
+        this.failed = false;
         this.isDebugMode = false;
     }
     
@@ -36,7 +48,9 @@ public class StackMachine {
         this.programCounter = 0;
         this.stackPointer = 0;
         this.framePointer = 0;
+        this.executedInstructions = 0;
         this.isRunning = true;
+        this.failed = false;
 
         if(this.isDebugMode) {
             System.out.println("DEBUG::Starting Stack Machine");
@@ -51,6 +65,7 @@ public class StackMachine {
            }
 
            executeInstruction(instruction);
+           this.executedInstructions++;
         }
 
         if(this.isDebugMode) {
@@ -61,7 +76,23 @@ public class StackMachine {
             }
         }
 
-        return stackPointer > 0 ? stack[stackPointer - 1] : 0;
+        return !failed && stackPointer > 0 ? stack[stackPointer - 1] : 0;
+    }
+
+    /**
+     * Runs a packed program in the loop of {@link DecodedInterpreter}: it is verified and decoded once and
+     * then runs without checks on push and pop. An error stops the machine and 0 is returned. In debug
+     * mode the program is traced through {@link #execute(List)} instead.
+     */
+    @Override
+    public int execute(CompiledProgram program) {
+        this.stringTable = program.getStringTable();
+        this.globalCounter = program.getGlobalVariableCount();
+        if (this.isDebugMode) {
+            return execute(program.toInstructions());
+        }
+        this.stackPointer = 0;
+        return super.execute(program);
     }
 
     private void executeInstruction(Instruction instruction) {
@@ -109,8 +140,7 @@ public class StackMachine {
                 int b = pop();
                 int a = pop();
                 if(b == 0) {
-                    error("ERROR: Division by zero");
-                    isRunning = false;
+                    fail("ERROR: Division by zero");
                     return;
                 }else {
                     push(a / b);
@@ -198,6 +228,10 @@ public class StackMachine {
                 push(returnValue);
             }
             case ENTER -> {
+                if (!reserve(stackPointer + operand)) {
+                    fail("ERROR: Stack overflow");
+                    return;
+                }
                 stackPointer += operand;
                 programCounter++;
             }
@@ -209,6 +243,10 @@ public class StackMachine {
                 pop();
                 programCounter++;
             }
+            case DUP -> {
+                push(peek());
+                programCounter++;
+            }
             case NOP -> {
                 programCounter++;
             }
@@ -232,24 +270,37 @@ public class StackMachine {
                 programCounter++;
             }
             default -> {
-                error("ERROR: Unknown operation code: " + opCode);
-                isRunning = false;
+                fail("ERROR: Unknown operation code: " + opCode);
             }
         }
     }
 
     private void push(int value) {
-        if(stackPointer >= STACK_SIZE) {
-            error("ERROR: Stack overflow");
-            isRunning = false;
+        if(stackPointer >= stack.length && !reserve(stackPointer + 1)) {
+            fail("ERROR: Stack overflow");
+            return;
         }
         stack[stackPointer++] = value;
     }
 
+    /**
+     * Grows the stack to at least {@code words}, doubling it to keep copies rare. Returns {@code false}
+     * if {@code words} exceeds the maximum.
+     */
+    private boolean reserve(int words) {
+        if (words <= stack.length) {
+            return true;
+        }
+        if (words > getMaxStackSize()) {
+            return false;
+        }
+        stack = Arrays.copyOf(stack, Math.min(getMaxStackSize(), Math.max(words, stack.length * 2)));
+        return true;
+    }
+
     private int pop() {
         if(stackPointer <= 0) {
-            error("ERROR: Stack underflow");
-            isRunning = false;
+            fail("ERROR: Stack underflow");
             return 0;
         }
         return stack[--stackPointer];
@@ -257,8 +308,7 @@ public class StackMachine {
 
     private int peek() {
         if(stackPointer <= 0) {
-            error("ERROR: Stack underflow on peek");
-            isRunning = false;
+            fail("ERROR: Stack underflow on peek");
             return 0;
         }
         return stack[stackPointer - 1];
@@ -281,6 +331,9 @@ public class StackMachine {
         System.out.println("]");
     }
 
+    /**
+     * Prints the stack as left by the last run of {@link #execute(List)}.
+     */
     public void printStack(){
         System.out.print("Stack (SP=" + stackPointer + "): [");
         for (int i = 0; i < stackPointer; i++) {
@@ -294,6 +347,13 @@ public class StackMachine {
         System.out.println("]");
     }
 
+    /**
+     * Number of instructions executed by the last run, packed or not.
+     */
+    public long getExecutedInstructions() {
+        return executedInstructions;
+    }
+
     public void setGlobalVariableCounter(int count) {
         this.globalCounter = count;
     }
@@ -302,6 +362,15 @@ public class StackMachine {
         this.stringTable = table;
     }
 
+    /**
+     * Reports {@code message} and stops the machine; the run returns 0.
+     */
+    private void fail(String message) {
+        error(message);
+        isRunning = false;
+        failed = true;
+    }
+
     private void error(String message) {
         System.err.println(message);
     }
@@ -0,0 +1,116 @@
+package pl.peth.vm;
+
+import java.util.List;
+
+import pl.peth.generator.CompiledProgram;
+import pl.peth.generator.FunctionLayout;
+import pl.peth.generator.IOperationCodes;
+import pl.peth.generator.StackAnalyzer;
+
+/**
+ * Checks a packed program before it runs. Every function, and the prologue, has to pass the
+ * {@link StackAnalyzer}, and every {@code GLOAD}/{@code GSTORE} has to address a global the prologue
+ * reserves. A verified program cannot underflow its stack, jump out of a function or read outside
+ * its frame, and each function needs a fixed number of words: the return address and saved frame
+ * pointer, its locals and the exact maximum height of its expression stack.
+ * <p>
+ * The only checks left to the machine are the frame size at each {@code CALL}, division by zero and
+ * string indices.
+ */
+public class StackVerifier implements IOperationCodes {
+    /**
+     * Words a {@code CALL} pushes before the callee's {@code ENTER}: return address and frame pointer.
+     */
+    public static final int CALL_OVERHEAD = 2;
+
+    private int[] frameSizes;
+    private int[] maxDepths;
+    private int prologueSize;
+
+    public StackVerifier() {
+        this.frameSizes = new int[0];
+        this.maxDepths = new int[0];
+    }
+
+    /**
+     * Returns {@code false} and reports the first offending instruction if {@code program} is rejected.
+     */
+    public boolean verify(CompiledProgram program) {
+        int size = program.size();
+        frameSizes = new int[size + 1];
+        maxDepths = new int[size + 1];
+        prologueSize = 0;
+        if (size == 0) {
+            return true;
+        }
+
+        List<FunctionLayout> functions = FunctionLayout.findAll(program);
+        FunctionLayout prologue = FunctionLayout.prologue(program, functions);
+        if (prologue == null) {
+            error("Address 0000 is called like a function");
+            return false;
+        }
+
+        int[] code = program.getCode();
+        int globals = code[0] == OP_ENTER ? code[1] : 0;
+        for (int address = 0; address < size; address++) {
+            int operation = code[address << 1];
+            int operand = code[(address << 1) + 1];
+            if ((operation == OP_GLOAD || operation == OP_GSTORE) && (operand < 0 || operand >= globals)) {
+                error(String.format("Global %d out of range at %04d", operand, address));
+                return false;
+            }
+        }
+
+        StackAnalyzer analyzer = new StackAnalyzer(code, functions);
+        int[] depths = analyzer.stackDepths(prologue);
+        if (depths == null) {
+            return reject(program, prologue, analyzer);
+        }
+        prologueSize = globals + StackAnalyzer.maxDepth(depths);
+
+        for (FunctionLayout function : functions) {
+            depths = analyzer.stackDepths(function);
+            if (depths == null) {
+                return reject(program, function, analyzer);
+            }
+            int entry = function.getEntry();
+            maxDepths[entry] = StackAnalyzer.maxDepth(depths);
+            frameSizes[entry] = CALL_OVERHEAD + function.getLocalCount() + maxDepths[entry];
+        }
+        return true;
+    }
+
+    /**
+     * Words a call to the function at {@code entry} needs above the arguments, indexed by address and
+     * 0 where no function starts; a {@code CALL} fits if {@code sp + frameSizes[target]} stays within the stack.
+     */
+    int[] getFrameSizes() {
+        return frameSizes;
+    }
+
+    /**
+     * Highest expression stack of the function at {@code entry} in the last verified program.
+     */
+    public int getMaxDepth(int entry) {
+        return entry >= 0 && entry < maxDepths.length ? maxDepths[entry] : 0;
+    }
+
+    /**
+     * Words the prologue needs: the globals and its own expression stack.
+     */
+    public int getPrologueSize() {
+        return prologueSize;
+    }
+
+    private boolean reject(CompiledProgram program, FunctionLayout function, StackAnalyzer analyzer) {
+        int address = analyzer.getFailedAddress();
+        error(String.format("Cannot verify %s at %04d (%s)", function.getName(), address,
+                CompiledProgram.decode(program.getCode()[address << 1])));
+        return false;
+    }
+
+    private void error(String message) {
+        System.err.println("Verifier Error: " + message);
+    }
+}
@@ -0,0 +1,140 @@
+package pl.peth.vm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import pl.peth.generator.CompiledProgram;
+import pl.peth.generator.FunctionLayout;
+
+/**
+ * Execution engine with two tiers. Programs start in the interpreter shared with {@link FastStackMachine},
+ * which here counts, per function, calls and backward jumps, i.e. loop iterations. Once a function reaches
+ * the threshold it is translated to JVM bytecode by the {@link JitCompiler}, and every later call of
+ * it, from interpreted or compiled code, runs the compiled version; the running activation finishes
+ * in the interpreter. Functions are found as described in {@link FunctionLayout}.
+ * <p>
+ * Compiled frames keep the stack layout of the interpreter in mind: a call is only made if the frame
+ * the interpreter would build fits on the machine stack, and calls out of compiled code continue
+ * above that frame. Results and stack overflows are therefore the same as in {@link StackMachine}.
+ * The stack may grow during any call, so compiled code reads it from the machine again afterwards.
+ * Compiled frames also live on the Java stack; beyond {@link #MAX_COMPILED_DEPTH} nested compiled
+ * calls the callee is interpreted instead, which keeps deep recursion off the Java stack.
+ */
+public class TieredStackMachine extends DecodedInterpreter {
+    public static final int DEFAULT_THRESHOLD = 1000;
+    /**
+     * Compiled calls that may be active at once before callees are interpreted.
+     */
+    public static final int MAX_COMPILED_DEPTH = 256;
+
+    private final int threshold;
+    private FunctionInfo[] functions;
+    private FunctionInfo[] functionAt;
+    private FunctionInfo[] owners;
+    private JitCompiler compiler;
+    private int compiledDepth;
+
+    public TieredStackMachine() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param threshold calls plus loop iterations after which a function is compiled
+     */
+    public TieredStackMachine(int threshold) {
+        super(true);
+        if (threshold <= 0) {
+            throw new IllegalArgumentException("Invalid threshold: " + threshold);
+        }
+        this.threshold = threshold;
+    }
+
+    /**
+     * Names of the functions compiled so far; compiled code is kept for later runs of the same program.
+     */
+    public List<String> getCompiledFunctions() {
+        List<String> names = new ArrayList<>();
+        if (functions != null) {
+            for (FunctionInfo function : functions) {
+                if (function.compiled != null) {
+                    names.add(function.layout.getName());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Calls the function at {@code address} from compiled code. {@code sp} is where the interpreter's
+     * stack pointer would be, with the arguments pushed.
+     */
+    int call(int address, int sp) {
+        FunctionInfo function = functionAt[address];
+        heat(function);
+        if (function.compiled == null || compiledDepth >= MAX_COMPILED_DEPTH) {
+            return interpretCall(address, sp);
+        }
+        checkFrame(address, sp);
+        return invoke(function, sp);
+    }
+
+    @Override
+    int callCompiled(int address, int sp) {
+        FunctionInfo function = functionAt[address];
+        heat(function);
+        if (function.compiled == null || compiledDepth >= MAX_COMPILED_DEPTH) {
+            return NOT_COMPILED;
+        }
+        checkFrame(address, sp);
+        int result = invoke(function, sp);
+        sp -= function.layout.getParameterCount();
+        stack[sp] = result;
+        return sp + 1;
+    }
+
+    @Override
+    void loopIteration(int address) {
+        FunctionInfo function = owners[address];
+        if (function != null) {
+            heat(function);
+        }
+    }
+
+    /**
+     * Looks up the functions of a new program; compiled code of the previous one is dropped.
+     */
+    @Override
+    void decoded(CompiledProgram program) {
+        int size = program.size();
+        List<FunctionLayout> layouts = FunctionLayout.findAll(program);
+        functions = new FunctionInfo[layouts.size()];
+        functionAt = new FunctionInfo[size + 1];
+        owners = new FunctionInfo[size + 1];
+        for (int i = 0; i < functions.length; i++) {
+            FunctionLayout layout = layouts.get(i);
+            functions[i] = new FunctionInfo(layout);
+            functionAt[layout.getEntry()] = functions[i];
+            Arrays.fill(owners, layout.getEntry(), layout.getEnd(), functions[i]);
+        }
+        compiler = new JitCompiler(program.getCode(), layouts);
+    }
+
+    private int invoke(FunctionInfo function, int sp) {
+        compiledDepth++;
+        try {
+            return function.compiled.invoke(this, stack, sp + 2);
+        } finally {
+            compiledDepth--;
+        }
+    }
+
+    /**
+     * Counts a call or loop iteration of {@code function} and compiles it once it is hot.
+     */
+    private void heat(FunctionInfo function) {
+        if (function.compiled == null && ++function.hotness >= threshold && function.compilable) {
+            compiler.compile(function);
+        }
+    }
+}
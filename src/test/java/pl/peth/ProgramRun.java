@@ -0,0 +1,187 @@
+package pl.peth;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import pl.peth.common.parser.Parser;
+import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.scanner.TableDrivenScanner;
+import pl.peth.common.scanner.TokenBuffer;
+import pl.peth.generator.CodeGenerator;
+import pl.peth.generator.CompiledProgram;
+import pl.peth.generator.Instruction;
+import pl.peth.vm.StackMachine;
+
+/**
+ * Compiles a program, optionally through optimization passes, and runs it on the packed
+ * {@link StackMachine}, keeping its result, its output and the number of executed instructions.
+ * Tests of a pass compare a run with the pass against one without it. Also holds what most tests
+ * share: the programs in {@code examples/} and a way to silence expected errors.
+ */
+public final class ProgramRun {
+    /**
+     * Names of the programs in {@code examples/}, without the extension.
+     */
+    public static final List<String> EXAMPLES = List.of("add", "complex", "condition", "divide", "loop",
+            "multiply", "variable");
+
+    private final int result;
+    private final String output;
+    private final long executedInstructions;
+    private final int codeSize;
+
+    private ProgramRun(int result, String output, long executedInstructions, int codeSize) {
+        this.result = result;
+        this.output = output;
+        this.executedInstructions = executedInstructions;
+        this.codeSize = codeSize;
+    }
+
+    public static ProgramRun of(String source) {
+        return of(source, UnaryOperator.identity(), UnaryOperator.identity());
+    }
+
+    /**
+     * @param treePass applied to the parsed program before code generation
+     * @param codePass applied to the generated instructions before they are packed
+     */
+    public static ProgramRun of(String source, UnaryOperator<SyntaxTree> treePass,
+            UnaryOperator<List<Instruction>> codePass) {
+        return of(compile(source, treePass, codePass));
+    }
+
+    /**
+     * Runs an already compiled program.
+     */
+    public static ProgramRun of(CompiledProgram program) {
+        StackMachine machine = new StackMachine();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(output, true));
+        int result;
+        try {
+            result = machine.execute(program);
+        } finally {
+            System.setOut(out);
+        }
+        return new ProgramRun(result, output.toString(), machine.getExecutedInstructions(), program.size());
+    }
+
+    /**
+     * Compiles {@code source} without optimizations, for tests that run it on other engines.
+     */
+    public static CompiledProgram compile(String source) {
+        return compile(source, UnaryOperator.identity(), UnaryOperator.identity());
+    }
+
+    private static CompiledProgram compile(String source, UnaryOperator<SyntaxTree> treePass,
+            UnaryOperator<List<Instruction>> codePass) {
+        TableDrivenScanner scanner = new TableDrivenScanner();
+        scanner.setInput(source);
+        TokenBuffer buffer = scanner.scanToBuffer();
+        SyntaxTree tree = buffer == null ? null : new Parser().parse(buffer);
+        if (tree == null) {
+            throw new IllegalArgumentException("Cannot parse:\n" + source);
+        }
+
+        CodeGenerator generator = new CodeGenerator(buffer.getSymbolTable());
+        generator.setDebugInfo(false);
+        List<Instruction> instructions = generator.generate(treePass.apply(tree));
+        if (instructions == null) {
+            throw new IllegalArgumentException("Cannot generate:\n" + source);
+        }
+        return CompiledProgram.compile(codePass.apply(instructions), generator.getStringTable(),
+                generator.getGlobalVariableCounter());
+    }
+
+    /**
+     * Source of the example program {@code name}.
+     */
+    public static String example(String name) {
+        try {
+            return Files.readString(Path.of("examples", name + ".mp"));
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * A program of {@code count} functions, each calling the one defined after it, with loops, a
+     * global and strings, some shared between functions. Large enough to be split into many parts.
+     */
+    public static String manyFunctions(int count) {
+        StringBuilder source = new StringBuilder("var calls: int = 0\n\n");
+        source.append("fn main() -> int {\n    print(\"start\")\n    return f0(1)\n}\n");
+        for (int i = 0; i < count; i++) {
+            source.append("\nfn f").append(i).append("(n: int) -> int {\n");
+            source.append("    var i: int = 0\n");
+            source.append("    calls = calls + 1\n");
+            source.append("    while (i < ").append(i % 4).append(") {\n");
+            source.append("        n = n + i\n");
+            source.append("        i = i + 1\n");
+            source.append("    }\n");
+            source.append("    if (n > ").append(i * 3).append(") {\n");
+            source.append("        print(\"").append(i % 3 == 0 ? "shared" : "own " + i).append("\")\n");
+            source.append("    }\n");
+            source.append(i + 1 < count ? "    return f" + (i + 1) + "(n - 1)\n" : "    return n + calls\n");
+            source.append("}\n");
+        }
+        return source.toString();
+    }
+
+    /**
+     * Asserts that every example prints and returns the same with the passes as without them.
+     */
+    public static void assertExamplesKeepTheirResults(UnaryOperator<SyntaxTree> treePass,
+            UnaryOperator<List<Instruction>> codePass) {
+        for (String example : EXAMPLES) {
+            String source = example(example);
+            ProgramRun plain = of(source);
+            ProgramRun passed = of(source, treePass, codePass);
+            assertEquals(plain.getResult(), passed.getResult(), example);
+            assertEquals(plain.getOutput(), passed.getOutput(), example);
+        }
+    }
+
+    public interface Action<T> {
+        T run();
+    }
+
+    /**
+     * Runs {@code action} with stderr suppressed, for errors a test expects.
+     */
+    public static <T> T quietly(Action<T> action) {
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return action.run();
+        } finally {
+            System.setErr(err);
+        }
+    }
+
+    public int getResult() {
+        return result;
+    }
+
+    public String getOutput() {
+        return output;
+    }
+
+    public long getExecutedInstructions() {
+        return executedInstructions;
+    }
+
+    public int getCodeSize() {
+        return codeSize;
+    }
+}
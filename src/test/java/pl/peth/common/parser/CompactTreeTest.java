@@ -0,0 +1,54 @@
+package pl.peth.common.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static pl.peth.common.parser.SyntaxTreeAssertions.assertTreesEqual;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.scanner.TableDrivenScanner;
+import pl.peth.common.scanner.TokenBuffer;
+import pl.peth.generator.CodeGenerator;
+import pl.peth.vm.StackMachine;
+
+class CompactTreeTest {
+    @Test
+    void inflatedDeclarationsEqualParsedTree() {
+        for (String example : ProgramRun.EXAMPLES) {
+            TableDrivenScanner scanner = new TableDrivenScanner();
+            scanner.setInput(ProgramRun.example(example));
+            TokenBuffer buffer = scanner.scanToBuffer();
+            SyntaxTree parsed = new Parser().parse(buffer);
+            CompactTree compact = new Parser().parseCompact(buffer);
+            assertNotNull(compact, example);
+
+            int declaration = compact.getFirstChild(compact.getRoot());
+            for (SyntaxTree expected : parsed.getChildren()) {
+                assertTreesEqual(expected, compact.toSyntaxTree(declaration), example);
+                declaration = compact.getNextSibling(declaration);
+            }
+            assertEquals(CompactTree.NO_NODE, declaration, example);
+        }
+    }
+
+    @Test
+    void deeplyNestedExpressionCompactsAndGenerates() {
+        int operands = 20000;
+        StringBuilder source = new StringBuilder("fn main() -> int {\n    return 1");
+        for (int i = 1; i < operands; i++) {
+            source.append(" + 1");
+        }
+        source.append("\n}\n");
+
+        TableDrivenScanner scanner = new TableDrivenScanner();
+        scanner.setInput(source.toString());
+        TokenBuffer buffer = scanner.scanToBuffer();
+        CompactTree compact = new Parser().parseCompact(buffer);
+        assertNotNull(compact);
+
+        CodeGenerator generator = new CodeGenerator(buffer.getSymbolTable());
+        generator.generate(compact);
+        assertEquals(operands, new StackMachine().execute(generator.compile()));
+    }
+}
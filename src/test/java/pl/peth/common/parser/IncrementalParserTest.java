@@ -0,0 +1,117 @@
+package pl.peth.common.parser;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.peth.common.parser.SyntaxTreeAssertions.assertTreesEqual;
+
+import static pl.peth.ProgramRun.EXAMPLES;
+import static pl.peth.ProgramRun.quietly;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.SymbolTable;
+import pl.peth.common.scanner.TableDrivenScanner;
+import pl.peth.common.scanner.TokenBuffer;
+
+class IncrementalParserTest {
+    private static final String FRAGMENTS = "ab1 \n+*-(),;";
+    private static final int EDITS_PER_FILE = 1000;
+
+    @Test
+    void randomEditsMatchFullParse() {
+        Random random = new Random(42);
+        int checked = 0;
+        int reused = 0;
+        for (String example : EXAMPLES) {
+            String source = ProgramRun.example(example);
+            SymbolTable symbols = new SymbolTable();
+            IncrementalParser incremental = new IncrementalParser();
+            TokenBuffer buffer = scan(symbols, source);
+            assertNotNull(quietly(() -> incremental.parse(buffer)), example);
+
+            for (int i = 0; i < EDITS_PER_FILE; i++) {
+                String edited = random.nextInt(4) == 0 ? moveDeclaration(random, source) : editText(random, source);
+                TokenBuffer tokens = scan(symbols, edited);
+                if (tokens == null) {
+                    continue;
+                }
+
+                SyntaxTree expected = quietly(() -> new Parser().parse(tokens));
+                SyntaxTree actual = quietly(() -> incremental.parse(tokens));
+                if (expected == null) {
+                    assertNull(actual, edited);
+                    continue;
+                }
+                assertNotNull(actual, edited);
+                assertTreesEqual(expected, actual, "after edit to\n" + edited);
+                reused += incremental.getReusedCount();
+                source = edited;
+                checked++;
+            }
+        }
+        assertTrue(checked > EXAMPLES.size() * EDITS_PER_FILE / 4, "too few parseable edits: " + checked);
+        assertTrue(reused > checked, "declarations were hardly reused: " + reused);
+    }
+
+    private static String editText(Random random, String source) {
+        int offset = random.nextInt(source.length() + 1);
+        int removed = Math.min(random.nextInt(3), source.length() - offset);
+        StringBuilder inserted = new StringBuilder();
+        for (int n = random.nextInt(3); n > 0; n--) {
+            inserted.append(FRAGMENTS.charAt(random.nextInt(FRAGMENTS.length())));
+        }
+        return source.substring(0, offset) + inserted + source.substring(offset + removed);
+    }
+
+    /**
+     * Cuts a random top-level function and pastes it before another, or copies it there; the rest of
+     * the text keeps its tokens.
+     */
+    private static String moveDeclaration(Random random, String source) {
+        List<Integer> starts = declarationStarts(source);
+        if (starts.size() < 3) {
+            return source;
+        }
+        int index = random.nextInt(starts.size() - 1);
+        String declaration = source.substring(starts.get(index), starts.get(index + 1));
+        if (!declaration.endsWith("\n")) {
+            declaration += "\n";
+        }
+        String rest = random.nextBoolean()
+                ? source
+                : source.substring(0, starts.get(index)) + source.substring(starts.get(index + 1));
+        List<Integer> targets = declarationStarts(rest);
+        int at = targets.get(random.nextInt(targets.size()));
+        return rest.substring(0, at) + declaration + rest.substring(at);
+    }
+
+    /**
+     * Offsets of the lines starting with {@code fn}, followed by the length of {@code source}.
+     */
+    private static List<Integer> declarationStarts(String source) {
+        List<Integer> starts = new ArrayList<>();
+        if (source.startsWith("fn ")) {
+            starts.add(0);
+        }
+        for (int at = source.indexOf("\nfn "); at >= 0; at = source.indexOf("\nfn ", at + 1)) {
+            starts.add(at + 1);
+        }
+        starts.add(source.length());
+        return starts;
+    }
+
+    /**
+     * Tokens of {@code source} scanned into {@code symbols}, or {@code null} if it cannot be scanned.
+     */
+    private static TokenBuffer scan(SymbolTable symbols, String source) {
+        TableDrivenScanner scanner = new TableDrivenScanner(symbols);
+        scanner.setInput(source);
+        return quietly(scanner::scanToBuffer);
+    }
+}
@@ -0,0 +1,98 @@
+package pl.peth.common.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.peth.common.parser.SyntaxTreeAssertions.assertTreesEqual;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.scanner.TableDrivenScanner;
+import pl.peth.common.scanner.TokenBuffer;
+
+class ParallelParserTest {
+    private static final int MINIMUM_RANGE = 16;
+    private static final int FUNCTIONS = 60;
+
+    @Test
+    void parallelParseEqualsSequential() {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (String example : ProgramRun.EXAMPLES) {
+            sources.put(example, ProgramRun.example(example));
+        }
+        sources.put("manyFunctions", ProgramRun.manyFunctions(FUNCTIONS));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ParallelParser parser = new ParallelParser(pool, MINIMUM_RANGE);
+            for (Map.Entry<String, String> entry : sources.entrySet()) {
+                TokenBuffer buffer = scan(entry.getValue());
+                SyntaxTree expected = new Parser().parse(buffer);
+                SyntaxTree actual = parser.parse(buffer);
+                assertNotNull(expected, entry.getKey());
+                assertNotNull(actual, entry.getKey());
+                assertTreesEqual(expected, actual, entry.getKey());
+            }
+
+            int[] bounds = parser.split(scan(sources.get("manyFunctions")));
+            assertNotNull(bounds);
+            assertTrue(bounds.length > 4, bounds.length - 1 + " ranges");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void errorInAMiddleRangeFallsBackToTheSequentialParser() {
+        String middle = "fn f" + FUNCTIONS / 2 + "(n: int) -> int {\n";
+        String source = ProgramRun.manyFunctions(FUNCTIONS).replace(middle, middle + "    n = * 2\n");
+        int broken = source.indexOf("n = * 2");
+        assertTrue(broken > source.length() / 3 && broken < source.length() * 2 / 3, "error not in the middle");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ParallelParser parser = new ParallelParser(pool, MINIMUM_RANGE);
+            TokenBuffer buffer = scan(source);
+            int[] bounds = parser.split(buffer);
+            assertNotNull(bounds);
+            assertTrue(bounds.length > 4, bounds.length - 1 + " ranges");
+
+            String expected = errors(() -> assertNull(new Parser().parse(buffer)));
+            String actual = errors(() -> assertNull(parser.parse(buffer)));
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs {@code action} and returns what it printed to stderr.
+     */
+    private static String errors(Runnable action) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(output, true));
+        try {
+            action.run();
+        } finally {
+            System.setErr(err);
+        }
+        return output.toString();
+    }
+
+    private static TokenBuffer scan(String source) {
+        TableDrivenScanner scanner = new TableDrivenScanner();
+        scanner.setInput(source);
+        return scanner.scanToBuffer();
+    }
+}
@@ -0,0 +1,37 @@
+package pl.peth.common.parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * Structural comparison of syntax trees: types, values, symbols, attributes and children in order.
+ * Walks with an explicit stack, so it works for trees of any depth.
+ */
+public final class SyntaxTreeAssertions {
+    private static final String[] ATTRIBUTES = {"name", "operator", "type", "returnType"};
+
+    private SyntaxTreeAssertions() {
+    }
+
+    public static void assertTreesEqual(SyntaxTree expected, SyntaxTree actual, String context) {
+        Deque<SyntaxTree[]> pending = new ArrayDeque<>();
+        pending.push(new SyntaxTree[] {expected, actual});
+        while (!pending.isEmpty()) {
+            SyntaxTree[] pair = pending.pop();
+            SyntaxTree e = pair[0];
+            SyntaxTree a = pair[1];
+            assertEquals(e.getType(), a.getType(), context);
+            assertEquals(e.getValue(), a.getValue(), context);
+            assertEquals(e.getSymbol(), a.getSymbol(), () -> context + ": symbol of " + e);
+            for (String attribute : ATTRIBUTES) {
+                assertEquals(e.getAttribute(attribute), a.getAttribute(attribute), () -> context + ": " + attribute);
+            }
+            assertEquals(e.getChildCount(), a.getChildCount(), () -> context + ": children of " + e);
+            for (int i = 0; i < e.getChildCount(); i++) {
+                pending.push(new SyntaxTree[] {e.getChild(i), a.getChild(i)});
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package pl.peth.common.scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import static pl.peth.ProgramRun.EXAMPLES;
+import static pl.peth.ProgramRun.quietly;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+
+class IncrementalScannerTest {
+    private static final String FRAGMENTS = "ab1 \n\"/=->!(){}+fnx\\";
+    private static final int EDITS_PER_FILE = 3000;
+
+    @Test
+    void randomEditsMatchFullScan() {
+        Random random = new Random(42);
+        int checked = 0;
+        for (String example : EXAMPLES) {
+            String source = ProgramRun.example(example);
+            SymbolTable symbols = new SymbolTable();
+            TableDrivenScanner full = new TableDrivenScanner(symbols);
+            IncrementalScanner incremental = new IncrementalScanner(symbols);
+            List<Token> tokens = scan(full, source);
+            assertNotNull(tokens, example);
+
+            for (int i = 0; i < EDITS_PER_FILE; i++) {
+                TextEdit edit = randomEdit(random, source);
+                String edited = edit.applyTo(source);
+                List<Token> expected = scan(full, edited);
+                if (expected == null) {
+                    continue;
+                }
+
+                List<Token> previous = tokens;
+                TokenDelta delta = quietly(() -> incremental.relex(previous, edited, edit));
+                assertNotNull(delta, edit.toString());
+                assertTokensEqual(expected, delta.applyTo(tokens), edit + " on\n" + source);
+                source = edited;
+                tokens = expected;
+                checked++;
+            }
+        }
+        assertTrue(checked > EXAMPLES.size() * EDITS_PER_FILE / 2, "too few scannable edits: " + checked);
+    }
+
+    private static TextEdit randomEdit(Random random, String source) {
+        int offset = random.nextInt(source.length() + 1);
+        int removed = Math.min(random.nextInt(4), source.length() - offset);
+        StringBuilder inserted = new StringBuilder();
+        for (int n = random.nextInt(4); n > 0; n--) {
+            inserted.append(FRAGMENTS.charAt(random.nextInt(FRAGMENTS.length())));
+        }
+        return new TextEdit(offset, removed, inserted.toString());
+    }
+
+    /**
+     * Tokens of a full scan, or {@code null} if the text cannot be scanned.
+     */
+    private static List<Token> scan(TableDrivenScanner scanner, String source) {
+        scanner.setInput(source);
+        return quietly(() -> scanner.scan() ? new ArrayList<>(scanner.getTokens()) : null);
+    }
+
+    private static void assertTokensEqual(List<Token> expected, List<Token> actual, String context) {
+        assertEquals(expected.size(), actual.size(), context);
+        for (int i = 0; i < expected.size(); i++) {
+            Token e = expected.get(i);
+            Token a = actual.get(i);
+            String message = "token " + i + " after " + context;
+            assertEquals(e.getType(), a.getType(), message);
+            assertEquals(e.getLexeme(), a.getLexeme(), message);
+            assertEquals(e.getLine(), a.getLine(), message);
+            assertEquals(e.getPosition(), a.getPosition(), message);
+            assertEquals(e.getSymbol(), a.getSymbol(), message);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package pl.peth.common.scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.SymbolTable;
+
+class ParallelScannerTest {
+    private static final int CHUNK_SIZE = 64;
+    private static final int FUNCTIONS = 40;
+
+    @Test
+    void chunksEqualTableDrivenScanner() {
+        assertSameTokens(ProgramRun.manyFunctions(FUNCTIONS), "manyFunctions");
+        for (String example : ProgramRun.EXAMPLES) {
+            assertSameTokens(ProgramRun.example(example), example);
+        }
+    }
+
+    @Test
+    void escapedNewlinesAreNeverChunkBoundaries() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < CHUNK_SIZE; i++) {
+            text.append("line ").append(i).append("\\\n");
+        }
+        String function = "fn f" + FUNCTIONS / 2 + "(n: int) -> int {\n";
+        String source = ProgramRun.manyFunctions(FUNCTIONS)
+                .replace(function, function + "    print(\"" + text + "end\")\n");
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            int[] bounds = new ParallelScanner(new SymbolTable(), pool, CHUNK_SIZE).split(source);
+            assertTrue(bounds.length > 4, bounds.length - 1 + " chunks");
+            for (int i = 1; i < bounds.length - 1; i++) {
+                assertEquals('\n', source.charAt(bounds[i] - 1));
+                assertNotEquals('\\', source.charAt(bounds[i] - 2), "chunk " + i + " starts inside a string");
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertSameTokens(source, "escaped newlines");
+    }
+
+    @Test
+    void errorInOneChunkIsReportedLikeTheSequentialScan() {
+        String function = "fn f" + FUNCTIONS / 2 + "(n: int) -> int {\n";
+        String source = ProgramRun.manyFunctions(FUNCTIONS).replace(function, function + "    n = n @ 2\n");
+
+        TableDrivenScanner sequential = new TableDrivenScanner();
+        sequential.setInput(source);
+        String expected = errors(() -> assertNull(sequential.scanToBuffer()));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            ParallelScanner parallel = new ParallelScanner(new SymbolTable(), pool, CHUNK_SIZE);
+            String actual = errors(() -> assertNull(parallel.scan(source)));
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, actual);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertSameTokens(String source, String context) {
+        TableDrivenScanner sequential = new TableDrivenScanner();
+        sequential.setInput(source);
+        TokenBuffer expected = sequential.scanToBuffer();
+        assertNotNull(expected, context);
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        TokenBuffer actual;
+        try {
+            ParallelScanner parallel = new ParallelScanner(new SymbolTable(), pool, CHUNK_SIZE);
+            actual = parallel.scan(source);
+        } finally {
+            pool.shutdown();
+        }
+        assertNotNull(actual, context);
+
+        assertEquals(expected.size(), actual.size(), context);
+        for (int i = 0; i < expected.size(); i++) {
+            String message = "token " + i + " of " + context;
+            assertEquals(expected.getType(i), actual.getType(i), message);
+            assertEquals(expected.getLexeme(i), actual.getLexeme(i), message);
+            assertEquals(expected.getLine(i), actual.getLine(i), message);
+            assertEquals(expected.getPosition(i), actual.getPosition(i), message);
+            assertEquals(expected.getSymbol(i), actual.getSymbol(i), message);
+        }
+
+        SymbolTable expectedSymbols = expected.getSymbolTable();
+        SymbolTable actualSymbols = actual.getSymbolTable();
+        assertEquals(expectedSymbols.size(), actualSymbols.size(), context);
+        for (int id = 0; id < expectedSymbols.size(); id++) {
+            assertEquals(expectedSymbols.getName(id), actualSymbols.getName(id), context);
+        }
+    }
+
+    /**
+     * Runs {@code action} and returns what it printed to stderr.
+     */
+    private static String errors(Runnable action) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(output, true));
+        try {
+            action.run();
+        } finally {
+            System.setErr(err);
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package pl.peth.common.scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.peth.common.parser.SyntaxTreeAssertions.assertTreesEqual;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.SymbolTable;
+import pl.peth.common.Token;
+import pl.peth.common.parser.Parser;
+import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.tokens.ITokenWrapper;
+
+class PipelinedTokenSourceTest {
+    private static final int WINDOW_SIZE = 16;
+    private static final int BATCH_SIZE = 3;
+    private static final int CAPACITY = 2;
+
+    @Test
+    void pipelinedStreamingParseEqualsBufferParse() {
+        List<String> sources = new ArrayList<>();
+        for (String example : ProgramRun.EXAMPLES) {
+            sources.add(ProgramRun.example(example));
+        }
+        sources.add(ProgramRun.manyFunctions(200));
+
+        for (String source : sources) {
+            SyntaxTree expected = new Parser().parse(scan(source, new SymbolTable()));
+            assertNotNull(expected, source);
+            SyntaxTree actual;
+            try (PipelinedTokenSource tokens = new PipelinedTokenSource(
+                    new StreamingTokenSource(streaming(source)), BATCH_SIZE, CAPACITY)) {
+                actual = new Parser().parse(tokens);
+            }
+            assertNotNull(actual, source);
+            assertTreesEqual(expected, actual, source);
+        }
+    }
+
+    @Test
+    void tokensWithForeignSymbolsAreInternedAgain() {
+        SymbolTable scanned = new SymbolTable();
+        for (int i = 0; i < 5; i++) {
+            scanned.intern("unrelated" + i);
+        }
+        List<Token> tokens = scan(ProgramRun.manyFunctions(3), scanned).toTokens();
+
+        SyntaxTree direct = new Parser().parse(new TokenListSource(tokens, new SymbolTable(), false));
+        SymbolTable symbols = new SymbolTable();
+        SyntaxTree piped;
+        try (PipelinedTokenSource source = new PipelinedTokenSource(new TokenListSource(tokens, symbols, false),
+                BATCH_SIZE, CAPACITY)) {
+            piped = new Parser().parse(source);
+        }
+        assertNotNull(direct);
+        assertNotNull(piped);
+        assertTreesEqual(direct, piped, "pipelined list");
+        assertEquals(-1, symbols.find("unrelated0"));
+    }
+
+    @Test
+    void closeStopsTheProducerMidStream() {
+        String source = ProgramRun.manyFunctions(500);
+        PipelinedTokenSource tokens = new PipelinedTokenSource(new StreamingTokenSource(streaming(source)),
+                BATCH_SIZE, CAPACITY);
+        for (int i = 0; i < 10; i++) {
+            tokens.advance();
+        }
+        assertTimeoutPreemptively(Duration.ofSeconds(10), tokens::close);
+
+        SymbolTable symbols = tokens.getSymbolTable();
+        int interned = symbols.size();
+        int remaining = 0;
+        while (tokens.getType() != ITokenWrapper.EOF_TOKEN) {
+            tokens.advance();
+            remaining++;
+        }
+        assertTrue(remaining <= BATCH_SIZE * (CAPACITY + 1), remaining + " tokens after close");
+        assertTrue(tokens.hasFailed());
+        assertEquals(interned, symbols.size());
+    }
+
+    private static TokenBuffer scan(String source, SymbolTable symbols) {
+        TableDrivenScanner scanner = new TableDrivenScanner(symbols);
+        scanner.setInput(source);
+        return scanner.scanToBuffer();
+    }
+
+    private static StreamingScanner streaming(String source) {
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        return new StreamingScanner(Channels.newChannel(new ByteArrayInputStream(bytes)), WINDOW_SIZE);
+    }
+}
@@ -0,0 +1,87 @@
+package pl.peth.common.scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.Token;
+
+class StreamingScannerTest {
+    private static final int[] WINDOW_SIZES = {16, 17};
+
+    /**
+     * Two-, three- and four-byte characters in identifiers, strings and comments; the identifier and
+     * the string are several windows long.
+     */
+    private static final String NAME = "\u017C\u00F3\u0142w".repeat(8);
+    private static final String TEXT = "za\u017C\u00F3\u0142\u0107 \u2603 \uD834\uDD1E ".repeat(4);
+    private static final String UNICODE = "var \u0105\u0105\u0105: int = 1\n"
+            + "// \u0142\u0105ka \u2603 \uD834\uDD1E \u0119\u015B\u0107\n"
+            + "fn " + NAME + "() -> int {\n"
+            + "    print(\"" + TEXT + "\")\n"
+            + "    return \u0105\u0105\u0105 // " + TEXT + "\n"
+            + "}\n\n"
+            + "fn main() -> int {\n"
+            + "    return " + NAME + "()\n"
+            + "}\n";
+
+    @Test
+    void smallWindowsEqualTableDrivenScanner() {
+        for (int windowSize : WINDOW_SIZES) {
+            for (String example : ProgramRun.EXAMPLES) {
+                String source = ProgramRun.example(example);
+                assertSameTokens(scan(source), streaming(source, windowSize), example + ", window " + windowSize);
+            }
+        }
+    }
+
+    @Test
+    void multiByteCharactersAcrossWindowBoundaries() {
+        for (int windowSize : WINDOW_SIZES) {
+            // every shift moves each character to another offset in its window
+            for (int shift = 0; shift <= windowSize; shift++) {
+                String source = " ".repeat(shift) + UNICODE;
+                assertSameTokens(scan(source), streaming(source, windowSize),
+                        "window " + windowSize + ", shift " + shift);
+            }
+        }
+    }
+
+    private static void assertSameTokens(List<Token> expected, List<Token> actual, String context) {
+        assertEquals(expected.size(), actual.size(), context);
+        for (int i = 0; i < expected.size(); i++) {
+            Token e = expected.get(i);
+            Token a = actual.get(i);
+            String message = "token " + i + " of " + context;
+            assertEquals(e.getType(), a.getType(), message);
+            assertEquals(e.getLexeme(), a.getLexeme(), message);
+            assertEquals(e.getLine(), a.getLine(), message);
+            assertEquals(e.getPosition(), a.getPosition(), message);
+            assertEquals(e.getSymbol(), a.getSymbol(), message);
+        }
+    }
+
+    private static List<Token> scan(String source) {
+        TableDrivenScanner scanner = new TableDrivenScanner();
+        scanner.setInput(source);
+        assertTrue(scanner.scan(), source);
+        return scanner.getTokens();
+    }
+
+    private static List<Token> streaming(String source, int windowSize) {
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+        StreamingScanner scanner = new StreamingScanner(Channels.newChannel(new ByteArrayInputStream(bytes)),
+                windowSize);
+        List<Token> tokens = new ArrayList<>();
+        assertTrue(scanner.scan(tokens::add), source);
+        return tokens;
+    }
+}
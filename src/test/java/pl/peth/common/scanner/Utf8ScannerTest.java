@@ -0,0 +1,69 @@
+package pl.peth.common.scanner;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.SymbolTable;
+
+class Utf8ScannerTest {
+    private static final String TEXT = "za\u017C\u00F3\u0142\u0107 \u2603 \uD834\uDD1E ";
+
+    /**
+     * Two-, three- and four-byte characters in identifiers, strings and comments, some comments
+     * longer than a vector of bytes.
+     */
+    private static final String UNICODE = "var \u0105\u0105\u0105: int = 1\n"
+            + "// \u0142\u0105ka " + TEXT.repeat(4) + "\n"
+            + "fn \u017C\u00F3\u0142w(\u0119: int) -> int {\n"
+            + "    print(\"" + TEXT + "\") // " + TEXT + "\n"
+            + "    return \u0105\u0105\u0105 + \u0119\n"
+            + "}\n\n"
+            + "fn main() -> int {\n"
+            + "    print(\"" + TEXT.repeat(3) + "\")\n"
+            + "    return \u017C\u00F3\u0142w(2)\n"
+            + "}\n";
+
+    @Test
+    void bytesScanLikeCharacters() {
+        assertSameTokens(UNICODE, "unicode");
+        assertSameTokens(ProgramRun.manyFunctions(20), "manyFunctions");
+        for (String example : ProgramRun.EXAMPLES) {
+            assertSameTokens(ProgramRun.example(example), example);
+        }
+    }
+
+    /**
+     * Types, lexemes, lines and symbol ids equal the char-based scan; positions are the byte offsets
+     * of the same places in the UTF-8 encoding.
+     */
+    private static void assertSameTokens(String source, String context) {
+        TableDrivenScanner chars = new TableDrivenScanner();
+        chars.setInput(source);
+        TokenBuffer expected = chars.scanToBuffer();
+        assertNotNull(expected, context);
+
+        for (boolean vectorized : new boolean[] {false, true}) {
+            Utf8Scanner bytes = new Utf8Scanner(new SymbolTable(), vectorized);
+            TokenBuffer actual = bytes.scan(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+            String name = context + (vectorized ? " (vectorized)" : "");
+            assertNotNull(actual, name);
+
+            assertEquals(expected.size(), actual.size(), name);
+            for (int i = 0; i < expected.size(); i++) {
+                String message = "token " + i + " of " + name;
+                assertEquals(expected.getType(i), actual.getType(i), message);
+                assertEquals(expected.getLexeme(i), actual.getLexeme(i), message);
+                assertEquals(expected.getLine(i), actual.getLine(i), message);
+                assertEquals(expected.getSymbol(i), actual.getSymbol(i), message);
+                int offset = source.substring(0, expected.getPosition(i)).getBytes(StandardCharsets.UTF_8).length;
+                assertEquals(offset, actual.getPosition(i), message);
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package pl.peth.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.peth.ProgramRun.quietly;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.parser.Parser;
+import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.scanner.TableDrivenScanner;
+import pl.peth.common.scanner.TokenBuffer;
+
+class CodeGeneratorTest {
+    private static final String UNDEFINED_CALL = "fn helper() -> int {\n    return missing(1)\n}\n\n"
+            + "fn main() -> int {\n    return helper() + missing(2)\n}\n";
+
+    @Test
+    void undefinedFunctionsFailGeneration() {
+        TokenBuffer buffer = scan(UNDEFINED_CALL);
+        SyntaxTree tree = new Parser().parse(buffer);
+        assertNotNull(tree);
+
+        CodeGenerator generator = new CodeGenerator(buffer.getSymbolTable());
+        assertNull(quietly(() -> generator.generate(tree)));
+        assertUnresolved(generator.getUnresolvedSymbols());
+
+        ParallelCodeGenerator parallel = new ParallelCodeGenerator(buffer.getSymbolTable(), new ForkJoinPool(2), 1);
+        assertNull(quietly(() -> parallel.generate(tree)));
+        assertUnresolved(parallel.getUnresolvedSymbols());
+    }
+
+    @Test
+    void definedFunctionsLink() {
+        TokenBuffer buffer = scan(UNDEFINED_CALL.replace("missing", "helper2")
+                + "\nfn helper2(x: int) -> int {\n    return x\n}\n");
+        CodeGenerator generator = new CodeGenerator(buffer.getSymbolTable());
+        assertNotNull(generator.generate(new Parser().parse(buffer)));
+        assertTrue(generator.getUnresolvedSymbols().isEmpty());
+    }
+
+    @Test
+    void parallelGenerationEqualsSequential() {
+        Map<String, String> sources = new LinkedHashMap<>();
+        for (String example : ProgramRun.EXAMPLES) {
+            sources.put(example, ProgramRun.example(example));
+        }
+        sources.put("manyFunctions", ProgramRun.manyFunctions(100));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            for (Map.Entry<String, String> entry : sources.entrySet()) {
+                for (boolean debugInfo : new boolean[] {false, true}) {
+                    String name = entry.getKey() + (debugInfo ? " (debug)" : "");
+                    TokenBuffer buffer = scan(entry.getValue());
+                    SyntaxTree tree = new Parser().parse(buffer);
+                    CodeGenerator sequential = new CodeGenerator(buffer.getSymbolTable());
+                    sequential.setDebugInfo(debugInfo);
+                    ParallelCodeGenerator parallel = new ParallelCodeGenerator(buffer.getSymbolTable(), pool, 1);
+                    parallel.setDebugInfo(debugInfo);
+
+                    List<Instruction> expected = sequential.generate(tree);
+                    List<Instruction> actual = parallel.generate(tree);
+                    assertNotNull(expected, name);
+                    assertNotNull(actual, name);
+                    assertInstructionsEqual(expected, actual, name);
+                    assertEquals(sequential.getStringTable(), parallel.getStringTable(), name);
+                    assertEquals(sequential.getGlobalVariableCounter(), parallel.getGlobalVariableCounter(), name);
+
+                    ProgramRun expectedRun = ProgramRun.of(sequential.compile());
+                    ProgramRun actualRun = ProgramRun.of(CompiledProgram.compile(actual, parallel.getStringTable(),
+                            parallel.getGlobalVariableCounter()));
+                    assertEquals(expectedRun.getResult(), actualRun.getResult(), name);
+                    assertEquals(expectedRun.getOutput(), actualRun.getOutput(), name);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static void assertInstructionsEqual(List<Instruction> expected, List<Instruction> actual, String name) {
+        assertEquals(expected.size(), actual.size(), name);
+        for (int i = 0; i < expected.size(); i++) {
+            Instruction e = expected.get(i);
+            Instruction a = actual.get(i);
+            String message = "instruction " + i + " of " + name;
+            assertEquals(e.getOpCode(), a.getOpCode(), message);
+            assertEquals(e.getOperand(), a.getOperand(), message);
+            assertEquals(e.getLabel(), a.getLabel(), message);
+            assertEquals(e.toString(), a.toString(), message);
+        }
+    }
+
+    private static void assertUnresolved(List<Relocation> unresolved) {
+        assertEquals(2, unresolved.size());
+        for (Relocation relocation : unresolved) {
+            assertEquals("missing", relocation.getName());
+        }
+    }
+
+    private static TokenBuffer scan(String source) {
+        TableDrivenScanner scanner = new TableDrivenScanner();
+        scanner.setInput(source);
+        return scanner.scanToBuffer();
+    }
+}
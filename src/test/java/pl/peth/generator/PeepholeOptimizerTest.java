@@ -0,0 +1,92 @@
+package pl.peth.generator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.EnumSet;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.generator.PeepholeOptimizer.Rule;
+
+class PeepholeOptimizerTest {
+    /**
+     * Globals, strings, calls to functions defined later, an expression statement whose value is
+     * dropped, returns followed by unreachable code and an {@code if} at the end of a loop body, whose
+     * jumps to its end lead on to the jump back to the loop condition.
+     */
+    private static final String PROGRAM = """
+            var g: int = 5
+
+            fn main() -> int {
+                var total: int = 0
+                var i: int = 0
+                while (i < 6) {
+                    bump(i)
+                    g
+                    i = i + 1
+                    if (i > 3) {
+                        total = total + classify(i)
+                    } elseif (i > 1) {
+                        total = total - 1
+                    }
+                }
+                print("done")
+                print(total)
+                return total + g
+            }
+
+            fn bump(n: int) -> int {
+                g = g + n
+                return g
+            }
+
+            fn classify(x: int) -> int {
+                if (x > 4) {
+                    return 10
+                }
+                return 20
+            }
+            """;
+
+    @Test
+    void examplesKeepTheirResults() {
+        ProgramRun.assertExamplesKeepTheirResults(UnaryOperator.identity(), new PeepholeOptimizer()::optimize);
+    }
+
+    @Test
+    void everyRuleKeepsTheResult() {
+        ProgramRun plain = ProgramRun.of(PROGRAM);
+        for (Rule rule : Rule.values()) {
+            PeepholeOptimizer optimizer = new PeepholeOptimizer(EnumSet.of(rule));
+            assertSameRun(PROGRAM, plain, optimizer);
+            assertTrue(optimizer.getHits(rule) > 0, rule + " never applied");
+        }
+    }
+
+    @Test
+    void allRulesExecuteFewerInstructions() {
+        ProgramRun plain = ProgramRun.of(PROGRAM);
+        ProgramRun optimized = assertSameRun(PROGRAM, plain, new PeepholeOptimizer());
+        assertTrue(optimized.getCodeSize() < plain.getCodeSize());
+        assertTrue(optimized.getExecutedInstructions() < plain.getExecutedInstructions(),
+                optimized.getExecutedInstructions() + " >= " + plain.getExecutedInstructions());
+    }
+
+    @Test
+    void noRulesChangeNothing() {
+        ProgramRun plain = ProgramRun.of(PROGRAM);
+        ProgramRun optimized = assertSameRun(PROGRAM, plain, new PeepholeOptimizer(EnumSet.noneOf(Rule.class)));
+        assertEquals(plain.getCodeSize(), optimized.getCodeSize());
+        assertEquals(plain.getExecutedInstructions(), optimized.getExecutedInstructions());
+    }
+
+    private static ProgramRun assertSameRun(String source, ProgramRun plain, PeepholeOptimizer optimizer) {
+        ProgramRun optimized = ProgramRun.of(source, UnaryOperator.identity(), optimizer::optimize);
+        assertEquals(plain.getResult(), optimized.getResult(), source);
+        assertEquals(plain.getOutput(), optimized.getOutput(), source);
+        return optimized;
+    }
+}
@@ -0,0 +1,124 @@
+package pl.peth.jvm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import pl.peth.ProgramRun;
+import pl.peth.generator.CompiledProgram;
+
+class JvmCompilerTest {
+    private static final String DEPTH = """
+            fn depth(n: int) -> int {
+                if (n == 0) {
+                    return 0
+                }
+                return 1 + depth(n - 1)
+            }
+
+            fn main() -> int {
+                print("deep")
+                return depth(50000)
+            }
+            """;
+
+    private static final String ENDLESS = """
+            fn down(n: int) -> int {
+                return down(n + 1)
+            }
+
+            fn main() -> int {
+                print(1)
+                return down(0)
+            }
+            """;
+
+    private static final String DIVISION = """
+            fn main() -> int {
+                var z: int = 0
+                print(2)
+                return 5 / z
+            }
+            """;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void examplesRunLikeTheMachine() throws Exception {
+        for (String example : ProgramRun.EXAMPLES) {
+            String source = ProgramRun.example(example);
+            ProgramRun expected = ProgramRun.of(source);
+            Path jar = writeJar(source, example);
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            PrintStream out = System.out;
+            System.setOut(new PrintStream(output, true));
+            int result;
+            try (URLClassLoader loader = new URLClassLoader(new URL[] {jar.toUri().toURL()}, null)) {
+                Method run = loader.loadClass(JvmCompiler.DEFAULT_CLASS_NAME).getMethod("run");
+                result = (Integer) run.invoke(null);
+            } finally {
+                System.setOut(out);
+            }
+            assertEquals(expected.getResult(), result, example);
+            assertEquals(expected.getOutput(), output.toString(), example);
+        }
+    }
+
+    @Test
+    void deepRecursionRunsOnTheLargeStack() throws Exception {
+        ProgramRun expected = ProgramRun.of(DEPTH);
+        assertEquals(50000, expected.getResult());
+        List<String> lines = runJar(writeJar(DEPTH, "depth"));
+        assertEquals(lines(expected.getOutput() + "RESULT: 50000"), lines);
+    }
+
+    @Test
+    void errorsArePrintedLikeTheMachine() throws Exception {
+        assertEquals(List.of("OUTPUT: 1", "ERROR: Stack overflow", "RESULT: 0"),
+                runJar(writeJar(ENDLESS, "endless"), "-D" + JvmCompiler.STACK_SIZE_PROPERTY + "=262144"));
+        assertEquals(0, ProgramRun.quietly(() -> ProgramRun.of(DIVISION)).getResult());
+        assertEquals(List.of("OUTPUT: 2", "ERROR: Division by zero", "RESULT: 0"),
+                runJar(writeJar(DIVISION, "division")));
+    }
+
+    private Path writeJar(String source, String name) {
+        CompiledProgram program = ProgramRun.compile(source);
+        Path jar = directory.resolve(name + ".jar");
+        assertTrue(new JvmCompiler().writeJar(program, jar), name);
+        return jar;
+    }
+
+    /**
+     * Runs {@code jar} with {@code java -jar} and returns what it printed, stderr merged into stdout.
+     */
+    private static List<String> runJar(Path jar, String... options) throws IOException, InterruptedException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        command.addAll(List.of(options));
+        command.add("-jar");
+        command.add(jar.toString());
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(0, process.waitFor(), output);
+        return lines(output);
+    }
+
+    private static List<String> lines(String text) {
+        return text.lines().toList();
+    }
+}
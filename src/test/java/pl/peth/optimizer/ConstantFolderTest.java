@@ -0,0 +1,136 @@
+package pl.peth.optimizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+
+class ConstantFolderTest {
+    @Test
+    void examplesKeepTheirResults() {
+        ProgramRun.assertExamplesKeepTheirResults(tree -> new ConstantFolder().fold(tree), UnaryOperator.identity());
+    }
+
+    @Test
+    void constantBranchesArePruned() {
+        ConstantFolder folder = new ConstantFolder();
+        assertFewerInstructions(folder, """
+                fn pick(x: int) -> int {
+                    var r: int = 0
+                    if (1 == 2) {
+                        r = 100
+                    } elseif (x > 3) {
+                        r = 1
+                    } elseif (2 > 1) {
+                        r = 2
+                    } else {
+                        r = 4
+                    }
+                    if (0 > 1) {
+                        r = r + 50
+                    } else {
+                        r = r + 7
+                    }
+                    while (r < 0) {
+                        print(r)
+                    }
+                    return r
+                }
+
+                fn main() -> int {
+                    return pick(5) * 100 + pick(1)
+                }
+                """);
+        assertTrue(folder.getRemovedBranches() > 0);
+    }
+
+    @Test
+    void onlyUnassignedGlobalsArePropagated() {
+        ConstantFolder folder = new ConstantFolder();
+        assertFewerInstructions(folder, """
+                var scale: int = 4
+                var offset: int = scale * 2 + 1
+                var counter: int = 0
+
+                fn step(n: int) -> int {
+                    counter = counter + 1
+                    return n * scale + offset
+                }
+
+                fn main() -> int {
+                    var total: int = step(1) + step(2)
+                    if (scale == 4) {
+                        print(counter)
+                    }
+                    return total + counter
+                }
+                """);
+        assertTrue(folder.getPropagatedConstants() > 0);
+    }
+
+    @Test
+    void variablesAssignedInLoopsStayVariable() {
+        assertFewerInstructions(new ConstantFolder(), """
+                fn main() -> int {
+                    var total: int = 0
+                    var i: int = 0
+                    var factor: int = 2 * 3
+                    while (i < 5) {
+                        total = total + i * factor
+                        i = i + 1
+                    }
+                    print(total)
+                    print(i)
+                    return total + i
+                }
+                """);
+    }
+
+    @Test
+    void forwardCallsSeeFoldedGlobals() {
+        assertFewerInstructions(new ConstantFolder(), """
+                var base: int = 10 * 4
+
+                fn main() -> int {
+                    return twice(base) + 2
+                }
+
+                fn twice(x: int) -> int {
+                    return x * 2 + base - 40
+                }
+                """);
+    }
+
+    @Test
+    void divisionByZeroIsLeftToTheMachine() {
+        ProgramRun.quietly(() -> assertSameRun("""
+                fn main() -> int {
+                    var z: int = 0
+                    var x: int = 5 / z
+                    print(x)
+                    return 3
+                }
+                """));
+    }
+
+    private static void assertFewerInstructions(ConstantFolder folder, String source) {
+        ProgramRun plain = ProgramRun.of(source);
+        ProgramRun folded = ProgramRun.of(source, folder::fold, UnaryOperator.identity());
+        assertEquals(plain.getResult(), folded.getResult(), source);
+        assertEquals(plain.getOutput(), folded.getOutput(), source);
+        assertTrue(folded.getExecutedInstructions() < plain.getExecutedInstructions(),
+                folded.getExecutedInstructions() + " >= " + plain.getExecutedInstructions() + " for\n" + source);
+    }
+
+    private static ProgramRun assertSameRun(String source) {
+        ProgramRun plain = ProgramRun.of(source);
+        ProgramRun folded = ProgramRun.of(source, new ConstantFolder()::fold, UnaryOperator.identity());
+        assertEquals(plain.getResult(), folded.getResult(), source);
+        assertEquals(plain.getOutput(), folded.getOutput(), source);
+        return folded;
+    }
+}
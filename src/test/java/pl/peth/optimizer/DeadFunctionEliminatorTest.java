@@ -0,0 +1,84 @@
+package pl.peth.optimizer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.common.parser.Parser;
+import pl.peth.common.parser.SyntaxTree;
+import pl.peth.common.scanner.TableDrivenScanner;
+
+class DeadFunctionEliminatorTest {
+    /**
+     * {@code main} reaches {@code twice} and {@code fib} only through calls to functions defined after
+     * it, {@code offset} only through a global initializer; {@code unused} and {@code cycle} call each
+     * other but nothing reachable calls them.
+     */
+    private static final String PROGRAM = """
+            var base: int = offset(3)
+
+            fn unused(n: int) -> int {
+                return cycle(n) + 1
+            }
+
+            fn main() -> int {
+                print("start")
+                return twice(base) + fib(8)
+            }
+
+            fn cycle(n: int) -> int {
+                return unused(n - 1)
+            }
+
+            fn twice(x: int) -> int {
+                return x * 2
+            }
+
+            fn fib(n: int) -> int {
+                if (n < 2) {
+                    return n
+                }
+                return fib(n - 1) + fib(n - 2)
+            }
+
+            fn offset(x: int) -> int {
+                return x + 10
+            }
+            """;
+
+    @Test
+    void unreachableFunctionsAreRemoved() {
+        DeadFunctionEliminator eliminator = new DeadFunctionEliminator();
+        ProgramRun plain = ProgramRun.of(PROGRAM);
+        ProgramRun shaken = ProgramRun.of(PROGRAM, eliminator::eliminate, UnaryOperator.identity());
+
+        assertEquals(plain.getResult(), shaken.getResult());
+        assertEquals(plain.getOutput(), shaken.getOutput());
+        assertEquals(2, eliminator.getRemovedFunctions());
+        assertEquals(Set.of("main", "twice", "fib", "offset"), eliminator.getReachableFunctions());
+        assertTrue(shaken.getCodeSize() < plain.getCodeSize());
+        assertEquals(plain.getExecutedInstructions(), shaken.getExecutedInstructions());
+    }
+
+    @Test
+    void examplesKeepTheirResults() {
+        ProgramRun.assertExamplesKeepTheirResults(tree -> new DeadFunctionEliminator().eliminate(tree),
+                UnaryOperator.identity());
+    }
+
+    @Test
+    void programWithoutMainIsKept() {
+        TableDrivenScanner scanner = new TableDrivenScanner();
+        scanner.setInput("fn helper() -> int {\n    return 1\n}\n");
+        SyntaxTree tree = new Parser().parse(scanner.scanToBuffer());
+        DeadFunctionEliminator eliminator = new DeadFunctionEliminator();
+        assertSame(tree, eliminator.eliminate(tree));
+        assertEquals(0, eliminator.getRemovedFunctions());
+    }
+}
@@ -0,0 +1,110 @@
+package pl.peth.vm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.ProgramRun;
+import pl.peth.generator.CompiledProgram;
+
+class ExecutionEngineTest {
+    private static final String DEPTH = """
+            fn depth(n: int) -> int {
+                if (n == 0) {
+                    return 0
+                }
+                return 1 + depth(n - 1)
+            }
+
+            fn main() -> int {
+                return depth(20000)
+            }
+            """;
+
+    private static final String ENDLESS = """
+            fn down(n: int) -> int {
+                print(n)
+                return down(n + 1)
+            }
+
+            fn main() -> int {
+                return down(0)
+            }
+            """;
+
+    @Test
+    void deepRecursionGrowsTheStack() {
+        CompiledProgram program = ProgramRun.compile(DEPTH);
+        for (IExecutionEngine engine : engines()) {
+            assertEquals(20000, engine.execute(program), engine.getClass().getSimpleName());
+            assertEquals(20000, engine.execute(program), engine.getClass().getSimpleName() + ", second run");
+        }
+    }
+
+    @Test
+    void packedRunCountsLikeTheListRun() {
+        for (String example : ProgramRun.EXAMPLES) {
+            CompiledProgram program = ProgramRun.compile(ProgramRun.example(example));
+            StackMachine packed = new StackMachine();
+            StackMachine list = new StackMachine();
+            list.setStringTable(program.getStringTable());
+            list.setGlobalVariableCounter(program.getGlobalVariableCount());
+            assertEquals(list.execute(program.toInstructions()), packed.execute(program), example);
+            assertTrue(packed.getExecutedInstructions() > 0, example);
+            assertEquals(list.getExecutedInstructions(), packed.getExecutedInstructions(), example);
+        }
+
+        StackMachine reference = new StackMachine();
+        reference.setMaxStackSize(4096);
+        runFailing(reference, ProgramRun.compile(ENDLESS));
+        long overflowed = reference.getExecutedInstructions();
+        runFailing(reference, ProgramRun.compile(ENDLESS));
+        assertEquals(overflowed, reference.getExecutedInstructions(), "second run");
+    }
+
+    @Test
+    void everyEngineOverflowsAtTheSameCall() {
+        CompiledProgram program = ProgramRun.compile(ENDLESS);
+        StackMachine reference = new StackMachine();
+        reference.setMaxStackSize(4096);
+        String expected = runFailing(reference, program);
+        assertTrue(expected.contains("OUTPUT: 100" + System.lineSeparator()));
+
+        FastStackMachine fast = new FastStackMachine();
+        fast.setMaxStackSize(4096);
+        assertEquals(expected, runFailing(fast, program), "fast");
+        TieredStackMachine tiered = new TieredStackMachine(1);
+        tiered.setMaxStackSize(4096);
+        assertEquals(expected, runFailing(tiered, program), "tiered");
+        assertEquals(expected, runFailing(tiered, program), "tiered, compiled");
+    }
+
+    private static IExecutionEngine[] engines() {
+        return new IExecutionEngine[] {
+                new StackMachine(), new FastStackMachine(), new TieredStackMachine(1), new TieredStackMachine()
+        };
+    }
+
+    /**
+     * Runs {@code program}, which has to fail and return 0, with stderr suppressed and returns its output.
+     */
+    private static String runFailing(IExecutionEngine engine, CompiledProgram program) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        System.setOut(new PrintStream(output, true));
+        System.setErr(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            assertEquals(0, engine.execute(program), engine.getClass().getSimpleName());
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        return output.toString();
+    }
+}
@@ -0,0 +1,81 @@
+package pl.peth.vm;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static pl.peth.ProgramRun.quietly;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import pl.peth.generator.CompiledProgram;
+import pl.peth.generator.Instruction;
+import pl.peth.generator.OperationCode;
+import pl.peth.jvm.JvmCompiler;
+
+class StackVerifierTest {
+    @Test
+    void leaveEmptiesTheExpressionStack() {
+        CompiledProgram program = program(0,
+                new Instruction(OperationCode.PUSH, 5),
+                new Instruction(OperationCode.PUSH, 6),
+                new Instruction(OperationCode.LEAVE),
+                new Instruction(OperationCode.PUSH, 7),
+                new Instruction(OperationCode.RET, 0));
+        assertTrue(new StackVerifier().verify(program));
+        assertEveryEngineReturns(7, program);
+        assertNotNull(new JvmCompiler().compile(program));
+    }
+
+    @Test
+    void leaveDropsTheLocals() {
+        CompiledProgram program = program(1,
+                new Instruction(OperationCode.PUSH, 3),
+                new Instruction(OperationCode.STORE, 0),
+                new Instruction(OperationCode.PUSH, 9),
+                new Instruction(OperationCode.LEAVE),
+                new Instruction(OperationCode.PUSH, 4),
+                new Instruction(OperationCode.LOAD, 0),
+                new Instruction(OperationCode.ADD),
+                new Instruction(OperationCode.RET, 0));
+        assertTrue(new StackVerifier().verify(program));
+        assertEveryEngineReturns(8, program);
+        assertNull(quietly(() -> new JvmCompiler().compile(program)));
+    }
+
+    @Test
+    void popAfterLeaveIsRejected() {
+        CompiledProgram program = program(0,
+                new Instruction(OperationCode.PUSH, 5),
+                new Instruction(OperationCode.LEAVE),
+                new Instruction(OperationCode.POP),
+                new Instruction(OperationCode.PUSH, 1),
+                new Instruction(OperationCode.RET, 0));
+        assertFalse(quietly(() -> new StackVerifier().verify(program)));
+    }
+
+    /**
+     * A prologue calling one function with no parameters, {@code locals} locals and {@code body}.
+     */
+    private static CompiledProgram program(int locals, Instruction... body) {
+        List<Instruction> code = new ArrayList<>();
+        code.add(new Instruction(OperationCode.CALL, 2));
+        code.add(new Instruction(OperationCode.HALT));
+        code.add(new Instruction(OperationCode.ENTER, locals).withLabel("f"));
+        code.addAll(List.of(body));
+        return CompiledProgram.compile(code, List.of(), 0);
+    }
+
+    private static void assertEveryEngineReturns(int expected, CompiledProgram program) {
+        assertEquals(expected, new StackMachine().execute(program.toInstructions()), "list");
+        assertEquals(expected, new StackMachine().execute(program), "packed");
+        assertEquals(expected, new FastStackMachine().execute(program), "fast");
+        TieredStackMachine tiered = new TieredStackMachine(1);
+        assertEquals(expected, tiered.execute(program), "tiered");
+        assertEquals(expected, tiered.execute(program), "tiered, compiled");
+    }
+}
@@ -0,0 +1,110 @@
+package pl.peth.common.scanner;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Whitespace and comment skipping for {@link Utf8Scanner} with the incubating Vector API, examining
+ * a whole vector of bytes per step. It uses the JDK 17 version of the incubator API and is only
+ * compiled with {@code -PvectorSkipper}; {@link Utf8Scanner} loads it by name and falls back to the
+ * scalar path if it is missing or the JVM runs without {@code --add-modules jdk.incubator.vector}.
+ */
+final class VectorSkipper implements IWhitespaceSkipper {
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+    private static final int SCALAR_PREFIX = 16;
+
+    VectorSkipper() {
+        if (SPECIES.length() < 2) {
+            throw new UnsupportedOperationException("No vector shape wider than one byte");
+        }
+    }
+
+    @Override
+    public long skipWhitespace(ByteBuffer bytes, int from, int limit) {
+        int index = from;
+        int newlines = 0;
+
+        // Most runs are a single space or an indentation, too short to pay for loading a vector.
+        int scalarEnd = Math.min(limit, from + SCALAR_PREFIX);
+        for (; index < scalarEnd; index++) {
+            byte b = bytes.get(index);
+            if (!isWhitespace(b)) {
+                return pack(index, newlines);
+            }
+            if (b == '\n') {
+                newlines++;
+            }
+        }
+
+        int bound = index + SPECIES.loopBound(limit - index);
+        for (; index < bound; index += SPECIES.length()) {
+            ByteVector chunk = ByteVector.fromByteBuffer(SPECIES, bytes, index, ByteOrder.nativeOrder());
+            VectorMask<Byte> whitespace = isWhitespace(chunk);
+            VectorMask<Byte> newline = chunk.compare(VectorOperators.EQ, (byte) '\n');
+
+            if (!whitespace.allTrue()) {
+                int first = whitespace.not().firstTrue();
+                newlines += newline.and(SPECIES.indexInRange(0, first)).trueCount();
+                return pack(index + first, newlines);
+            }
+            newlines += newline.trueCount();
+        }
+
+        for (; index < limit; index++) {
+            byte b = bytes.get(index);
+            if (!isWhitespace(b)) {
+                break;
+            }
+            if (b == '\n') {
+                newlines++;
+            }
+        }
+        return pack(index, newlines);
+    }
+
+    @Override
+    public int findNewline(ByteBuffer bytes, int from, int limit) {
+        int index = from;
+        int bound = from + SPECIES.loopBound(limit - from);
+
+        for (; index < bound; index += SPECIES.length()) {
+            ByteVector chunk = ByteVector.fromByteBuffer(SPECIES, bytes, index, ByteOrder.nativeOrder());
+            VectorMask<Byte> newline = chunk.compare(VectorOperators.EQ, (byte) '\n');
+            if (newline.anyTrue()) {
+                return index + newline.firstTrue();
+            }
+        }
+
+        for (; index < limit; index++) {
+            if (bytes.get(index) == '\n') {
+                return index;
+            }
+        }
+        return limit;
+    }
+
+    /**
+     * Matches the ASCII chars {@link Character#isWhitespace(char)} accepts: {@code \t} to {@code \r},
+     * the separators {@code 0x1C} to {@code 0x1F} and the space.
+     */
+    private static VectorMask<Byte> isWhitespace(ByteVector chunk) {
+        VectorMask<Byte> control = chunk.compare(VectorOperators.GE, (byte) '\t')
+                .and(chunk.compare(VectorOperators.LE, (byte) '\r'));
+        VectorMask<Byte> separators = chunk.compare(VectorOperators.GE, (byte) 0x1C)
+                .and(chunk.compare(VectorOperators.LE, (byte) ' '));
+        return control.or(separators);
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b >= 0 && (LexerTables.CHAR_CLASS[b] == LexerTables.CLASS_WHITESPACE || b == '\n');
+    }
+
+    private static long pack(int offset, int newlines) {
+        return ((long) newlines << 32) | offset;
+    }
+}